@@ -0,0 +1,93 @@
+package com.gemnasium.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.apache.maven.artifact.Artifact;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Construction of the JSON dependencies of a whole reactor, with and without the {@link ArtifactTable}.
+ * Modules take their dependencies from a common pool of artifacts, with dependency trails
+ * that vary from one module to another.
+ * The heap retained by the dependencies of all the modules is printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+public class ArtifactTableBenchmark {
+
+    private static final int POOL = 400;
+    private static final int DEPENDENCIES = 150;
+    // Number of distinct dependency trails for the same artifact
+    private static final int TRAILS = 8;
+
+    @Param({ "200", "2000" })
+    public int modules;
+
+    @Param({ "false", "true" })
+    public boolean table;
+
+    private SyntheticProject[] pools;
+    private List<List<Artifact>> reactor;
+
+    // Dependencies of the last reactor built, kept until their heap is measured
+    private List<ArrayNode> built;
+
+    @Setup
+    public void setUp() {
+        pools = new SyntheticProject[TRAILS];
+        for (int i = 0; i < TRAILS; i++) {
+            pools[i] = new SyntheticProject(POOL, 6, i);
+        }
+        reactor = new ArrayList<List<Artifact>>(modules);
+        for (int i = 0; i < modules; i++) {
+            int offset = (i * 37) % (POOL - DEPENDENCIES);
+            reactor.add(pools[i % TRAILS].getArtifacts().subList(offset, offset + DEPENDENCIES));
+        }
+    }
+
+    @Benchmark
+    public List<ArrayNode> buildReactor() {
+        ArtifactTable artifactTable = table ? new ArtifactTable() : null;
+        DependencyTrails trails = new DependencyTrails();
+        List<ArrayNode> dependencies = new ArrayList<ArrayNode>(modules);
+        for (int i = 0; i < modules; i++) {
+            dependencies.add(ProjectsUtils.getJsonDependencies(reactor.get(i),
+                    pools[i % TRAILS].getDirectDependencies(), trails, null, artifactTable, false));
+        }
+        return dependencies;
+    }
+
+    @TearDown(Level.Trial)
+    public void printRetainedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        memory.gc();
+        long before = memory.getHeapMemoryUsage().getUsed();
+        built = buildReactor();
+        memory.gc();
+        long after = memory.getHeapMemoryUsage().getUsed();
+        System.out.printf("Retained heap of %d modules (table: %b): %.1f MB%n", built.size(), table,
+                (after - before) / (1024.0 * 1024.0));
+        built = null;
+    }
+}
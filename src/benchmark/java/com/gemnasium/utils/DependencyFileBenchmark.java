@@ -0,0 +1,81 @@
+package com.gemnasium.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.apache.maven.artifact.Artifact;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput and allocations of each stage of the dependency file generation,
+ * over synthetic dependency graphs with deep dependency trails.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DependencyFileBenchmark {
+
+    @Param({ "100", "1000", "10000", "50000" })
+    public int artifacts;
+
+    private SyntheticProject project;
+    private Set<String> ignoredScopes;
+    private ArrayNode jsonDependencies;
+
+    @Setup
+    public void setUp() {
+        project = new SyntheticProject(artifacts, 12, 42);
+        ignoredScopes = ProjectsUtils.getIgnoredScopes("test, provided");
+        jsonDependencies = ProjectsUtils.getJsonDependencies(project.getArtifacts(), project.getDirectDependencies());
+    }
+
+    @Benchmark
+    public List<Artifact> filterDependencies() {
+        return ProjectsUtils.getFilteredDependencies(project.getArtifacts(), ignoredScopes);
+    }
+
+    @Benchmark
+    public ArrayNode getJsonDependencies() {
+        return ProjectsUtils.getJsonDependencies(project.getArtifacts(), project.getDirectDependencies());
+    }
+
+    @Benchmark
+    public long writeDependencyFileContent() throws IOException {
+        CountingOutputStream os = new CountingOutputStream();
+        ProjectsUtils.writeDependencyFileContent(jsonDependencies, os);
+        return os.count;
+    }
+
+    // Discards the content, the upload isn't measured
+    private static class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.gemnasium.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.artifact.Artifact;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parents of all the dependencies of a project computed from their trails, by {@link DependencyTrails}
+ * and by the previous implementation splitting every trail, for comparison.
+ * Divide gc.alloc.rate.norm by the number of artifacts to get the allocations per artifact.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DependencyTrailsBenchmark {
+
+    @Param({ "100", "1000", "10000", "50000" })
+    public int artifacts;
+
+    private List<Artifact> dependencies;
+
+    @Setup
+    public void setUp() {
+        dependencies = new SyntheticProject(artifacts, 12, 42).getArtifacts();
+    }
+
+    @Benchmark
+    public void dependencyTrails(Blackhole blackhole) {
+        DependencyTrails trails = new DependencyTrails();
+        for (Artifact art : dependencies) {
+            blackhole.consume(trails.getParents(art.getDependencyTrail()));
+        }
+    }
+
+    @Benchmark
+    public void splitTrails(Blackhole blackhole) {
+        for (Artifact art : dependencies) {
+            blackhole.consume(getDependencyParents(new ArrayList<String>(art.getDependencyTrail())));
+        }
+    }
+
+    // The implementation replaced by DependencyTrails
+    private static List<String> getDependencyParents(List<String> trail) {
+        List<String> parents = new ArrayList<String>();
+        try {
+            trail = trail.subList(1, trail.size() - 1);
+        } catch (IndexOutOfBoundsException e) {
+            return parents;
+        }
+
+        for (String gav : trail) {
+            String[] items = gav.split(":");
+            parents.add(items[0] + ":" + items[1]);
+        }
+        return parents;
+    }
+}
@@ -0,0 +1,49 @@
+package com.gemnasium.utils;
+
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sequential and parallel construction of the JSON dependency nodes around the parallel threshold
+ * of {@link ProjectsUtils}: the crossover point is the smallest number of artifacts
+ * from which the parallel construction is faster. It depends on the number of CPUs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelJsonBenchmark {
+
+    @Param({ "250", "500", "1000", "2000", "4000", "8000", "16000" })
+    public int artifacts;
+
+    @Param({ "false", "true" })
+    public boolean parallel;
+
+    private SyntheticProject project;
+
+    @Setup
+    public void setUp() {
+        project = new SyntheticProject(artifacts, 12, 42);
+    }
+
+    @Benchmark
+    public ArrayNode getJsonDependencies() {
+        return ProjectsUtils.getJsonDependencies(project.getArtifacts(), project.getDirectDependencies(),
+                new DependencyTrails(), null, null, parallel);
+    }
+}
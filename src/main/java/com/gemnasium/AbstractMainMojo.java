@@ -1,28 +1,76 @@
 package com.gemnasium;
 
+import com.gemnasium.utils.ApiClient;
+import com.gemnasium.utils.ArtifactTable;
+import com.gemnasium.utils.AuthUtils;
+import com.gemnasium.utils.CircuitBreaker;
+import com.gemnasium.utils.DependencyGraph;
+import com.gemnasium.utils.DependencyTrails;
+import com.gemnasium.utils.Metrics;
+import com.gemnasium.utils.MetricsReport;
 import com.gemnasium.utils.ProjectsUtils;
+import com.gemnasium.utils.ReactorCountdown;
+import com.gemnasium.utils.RetryPolicy;
+import com.gemnasium.utils.SessionUtils;
+import com.gemnasium.utils.UploadSpool;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.DefaultProjectBuildingRequest;
 import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.apache.maven.shared.dependency.graph.DependencyGraphBuilder;
+import org.apache.maven.shared.dependency.graph.DependencyGraphBuilderException;
 
 /**
  * Main Mojo holding common stuff
  */
 public abstract class AbstractMainMojo extends AbstractMojo {
 
+    private static final String SYMBOLS_KEY = AbstractMainMojo.class.getName() + ".symbols";
+
     protected Config config;
 
     @Parameter(defaultValue = "${project}", readonly = true, required = true)
     protected MavenProject project;
 
+    @Parameter(defaultValue = "${session}", readonly = true, required = true)
+    protected MavenSession session;
+
+    @Parameter(defaultValue = "${mojoExecution}", readonly = true, required = true)
+    private MojoExecution mojoExecution;
+
+    @Component(hint = "default")
+    private DependencyGraphBuilder dependencyGraphBuilder;
+
     @Parameter(property = "basedir", defaultValue = "${basedir}", required = true)
     private File baseDir;
 
@@ -45,9 +93,109 @@ public abstract class AbstractMainMojo extends AbstractMojo {
     @Parameter(property = "ignoredScopes")
     private String ignoredScopes;
 
+    // Local cache of the plugin (last uploads, ...)
+    @Parameter(property = "cacheDir", defaultValue = "${user.home}/.m2/gemnasium")
+    protected File cacheDir;
+
+    // HTTP client configuration, timeouts are in ms
+    @Parameter(property = "connectTimeout", defaultValue = "10000")
+    private int connectTimeout;
+
+    @Parameter(property = "readTimeout", defaultValue = "60000")
+    private int readTimeout;
+
+    @Parameter(property = "compressRequests", defaultValue = "false")
+    private boolean compressRequests;
+
+    // Retries of failed API calls, with exponential backoff (in ms)
+    @Parameter(property = "maxRetries", defaultValue = "3")
+    private int maxRetries;
+
+    @Parameter(property = "retryBackoff", defaultValue = "500")
+    private long retryBackoff;
+
+    @Parameter(property = "maxRetryBackoff", defaultValue = "30000")
+    private long maxRetryBackoff;
+
+    // API calls of the whole build are suspended after this number of consecutive failures, 0 to disable
+    @Parameter(property = "circuitBreakerThreshold", defaultValue = "5")
+    private int circuitBreakerThreshold;
+
+    @Parameter(property = "circuitBreakerDuration", defaultValue = "60000")
+    private long circuitBreakerDuration;
+
+    // Maximum number of spooled uploads sent concurrently
+    @Parameter(property = "flushThreads", defaultValue = "4")
+    private int flushThreads;
+
+    // Writes timings and counters of the goals to target/gemnasium-metrics, and a summary of the reactor
+    @Parameter(property = "metrics", defaultValue = "false")
+    private boolean metrics;
+
     public void execute() throws MojoExecutionException {
         printHeader();
-        loadConfig();
+        Metrics executionMetrics = metrics
+                ? new Metrics(mojoExecution.getGoal(), project.getGroupId() + ":" + project.getArtifactId())
+                : null;
+        Metrics previous = Metrics.attach(executionMetrics);
+        try {
+            Metrics.enter("config");
+            try {
+                loadConfig();
+            } finally {
+                Metrics.exit();
+            }
+            executeGoal();
+        } finally {
+            Metrics.detach(previous);
+            if (executionMetrics != null) {
+                executionMetrics.finish();
+                reportMetrics(executionMetrics);
+            }
+        }
+    }
+
+    /**
+     * Runs the goal, once the configuration is loaded.
+     * @throws MojoExecutionException if the goal fails
+     */
+    protected abstract void executeGoal() throws MojoExecutionException;
+
+    /**
+     * Writes the metrics of the goal execution into the module build directory, then the summary
+     * of the whole build into the build directory of the execution root. The reactor summary is
+     * also logged once the goal ran for all the modules.
+     */
+    private void reportMetrics(Metrics executionMetrics) throws MojoExecutionException {
+        MetricsReport report = SessionUtils.getOrCreate(session, MetricsReport.SESSION_KEY,
+                new Callable<MetricsReport>() {
+                    public MetricsReport call() {
+                        return new MetricsReport();
+                    }
+                });
+        report.add(executionMetrics);
+        String goal = executionMetrics.getGoal();
+        File moduleReport = new File(project.getBuild().getDirectory(), "gemnasium-metrics/" + goal + ".json");
+        File summaryReport = new File(session.getExecutionRootDirectory(), "target/gemnasium-metrics/summary.json");
+        try {
+            MetricsReport.write(executionMetrics.toJson(), moduleReport);
+            report.write(summaryReport);
+        } catch (IOException e) {
+            getLog().warn("Can't write metrics report: " + e.getMessage());
+            return;
+        }
+
+        if (mojoExecution.getMojoDescriptor().isAggregator()
+                || report.getExecutions(goal) == session.getProjects().size()) {
+            MetricsReport.Summary summary = report.summarize().get(goal);
+            StringBuilder phases = new StringBuilder();
+            for (Map.Entry<String, Double> phase : summary.getPhases().entrySet()) {
+                phases.append(phases.length() == 0 ? "" : ", ").append(phase.getKey()).append(' ')
+                        .append(Math.round(phase.getValue())).append(" ms");
+            }
+            getLog().info("Gemnasium " + goal + ": " + summary.getExecutions() + " execution(s) in "
+                    + Math.round(summary.getDuration()) + " ms (" + phases + "), see " + summaryReport);
+        }
     }
 
     /**
@@ -55,7 +203,277 @@ public abstract class AbstractMainMojo extends AbstractMojo {
      * @throws MojoExecutionException if config can't be loaded
      */
     protected void loadConfig() throws MojoExecutionException {
-        this.config = new Config(baseDir, baseUrl, apiKey, projectBranch, projectSlug, projectRevision, ignoredScopes);
+        this.config = getConfig(baseDir);
+    }
+
+    /**
+     * Gets the configuration of a module of the reactor, with the plugin configuration of this execution.
+     * @param moduleBaseDir The module baseDir.
+     * @return the module configuration
+     * @throws MojoExecutionException if config can't be loaded
+     */
+    protected Config getConfig(File moduleBaseDir) throws MojoExecutionException {
+        return getConfigRegistry().get(moduleBaseDir, baseUrl, apiKey, projectBranch, projectSlug, projectRevision,
+                ignoredScopes);
+    }
+
+    /**
+     * Updates the properties file of the project and forgets the configurations loaded from it.
+     * @param properties The properties to add or replace.
+     * @throws Exception if the properties file can't be updated
+     */
+    protected void updateConfigProperties(Properties properties) throws Exception {
+        updateConfigProperties(config, properties);
+    }
+
+    /**
+     * Updates the properties file of a module and forgets the configurations loaded from it.
+     * @param moduleConfig The module configuration, see {@link #getConfig(File)}.
+     * @param properties The properties to add or replace.
+     * @throws Exception if the properties file can't be updated
+     */
+    protected void updateConfigProperties(Config moduleConfig, Properties properties) throws Exception {
+        try {
+            moduleConfig.updateConfigProperties(properties);
+        } finally {
+            getConfigRegistry().invalidate(moduleConfig.getBaseDir());
+        }
+    }
+
+    private ConfigRegistry getConfigRegistry() throws MojoExecutionException {
+        return SessionUtils.getOrCreate(session, ConfigRegistry.SESSION_KEY, new Callable<ConfigRegistry>() {
+            public ConfigRegistry call() {
+                return new ConfigRegistry();
+            }
+        });
+    }
+
+    /**
+     * Gets the API client shared by all the goals of the build using the same configuration.
+     * @param authenticated Whether requests must be authenticated with the API key.
+     * @return the API client
+     * @throws MojoExecutionException if authentication is required but no API key is configured
+     */
+    protected ApiClient getApiClient(boolean authenticated) throws MojoExecutionException {
+        return getApiClient(config.getApiBaseUrl(), authenticated ? getAuthorization(config) : null);
+    }
+
+    /**
+     * @param moduleConfig The configuration holding the API key.
+     * @return the Authorization header value of authenticated API calls
+     * @throws MojoExecutionException if no API key is configured
+     */
+    protected String getAuthorization(Config moduleConfig) throws MojoExecutionException {
+        return "Basic " + AuthUtils.getEncodedBasicToken(moduleConfig.getApiKey());
+    }
+
+    /**
+     * Gets the API client shared by all the goals of the build for an API and credentials.
+     * @param apiBaseUrl The base URL of the API.
+     * @param authorization The Authorization header value, null for anonymous requests.
+     * @return the API client
+     * @throws MojoExecutionException if the client can't be created
+     */
+    protected ApiClient getApiClient(final String apiBaseUrl, final String authorization)
+            throws MojoExecutionException {
+        String key = ApiClient.class.getName() + ":" + apiBaseUrl + ":" + authorization + ":" + connectTimeout + ":"
+                + readTimeout + ":" + compressRequests + ":" + maxRetries + ":" + retryBackoff + ":" + maxRetryBackoff;
+        final CircuitBreaker circuitBreaker = SessionUtils.getOrCreate(session,
+                CircuitBreaker.class.getName() + ":" + apiBaseUrl, new Callable<CircuitBreaker>() {
+                    public CircuitBreaker call() {
+                        return new CircuitBreaker(circuitBreakerThreshold, circuitBreakerDuration);
+                    }
+                });
+        return SessionUtils.getOrCreate(session, key, new Callable<ApiClient>() {
+            public ApiClient call() {
+                return new ApiClient(apiBaseUrl, authorization, connectTimeout, readTimeout, compressRequests,
+                        new RetryPolicy(maxRetries, retryBackoff, maxRetryBackoff), circuitBreaker, getLog());
+            }
+        });
+    }
+
+    /**
+     * Gets a countdown of the executions of the current goal in the reactor, shared by the whole build.
+     * Every project runs the goal when it's invoked from the command line, otherwise only the projects
+     * binding it in their build do.
+     * @param key The session key of the countdown.
+     * @param missed What isn't done if the countdown isn't reached, logged at the end of the build.
+     * @return the countdown
+     * @throws MojoExecutionException if the countdown can't be initialized
+     */
+    protected ReactorCountdown getReactorCountdown(String key, String missed) throws MojoExecutionException {
+        ReactorCountdown countdown = SessionUtils.getOrCreate(session, key, new Callable<ReactorCountdown>() {
+            public ReactorCountdown call() {
+                String pluginKey = mojoExecution.getMojoDescriptor().getPluginDescriptor().getPluginLookupKey();
+                String goal = mojoExecution.getGoal();
+                Map<String, Integer> expected = new LinkedHashMap<String, Integer>();
+                for (MavenProject module : session.getProjects()) {
+                    int executions = 0;
+                    Plugin plugin = module.getPlugin(pluginKey);
+                    if (mojoExecution.getSource() == MojoExecution.Source.CLI) {
+                        executions = 1;
+                    } else if (plugin != null) {
+                        for (PluginExecution execution : plugin.getExecutions()) {
+                            if (execution.getGoals().contains(goal)) {
+                                executions++;
+                            }
+                        }
+                    }
+                    if (executions > 0 || module == project) {
+                        expected.put(module.getId(), Math.max(1, executions));
+                    }
+                }
+                return new ReactorCountdown(goal, expected);
+            }
+        });
+        countdown.listen(session, getLog(), missed);
+        return countdown;
+    }
+
+    /**
+     * @return the upload spool of the cache directory, shared by the whole build
+     * @throws MojoExecutionException if the spool can't be initialized
+     */
+    protected UploadSpool getUploadSpool() throws MojoExecutionException {
+        final File spoolDir = new File(cacheDir, "spool").getAbsoluteFile();
+        return SessionUtils.getOrCreate(session, UploadSpool.class.getName() + ":" + spoolDir,
+                new Callable<UploadSpool>() {
+                    public UploadSpool call() {
+                        return new UploadSpool(spoolDir);
+                    }
+                });
+    }
+
+    /**
+     * Sends the spooled uploads, the newest one of each project branch only, with at most flushThreads at a time.
+     * Uploads that fail again are left in the spool.
+     * @param sentAt Times of the uploads already sent by this build, indexed by project branch key
+     * (see {@link UploadSpool#key(String, String, String)}); older spooled uploads of these branches are dropped.
+     * @return the number of uploads still spooled
+     * @throws MojoExecutionException if the spool can't be read or updated
+     */
+    protected int flushSpool(Map<String, Long> sentAt) throws MojoExecutionException {
+        long start = System.currentTimeMillis();
+        UploadSpool spool = getUploadSpool();
+        UploadSpool.Drain drain;
+        try {
+            drain = spool.drain();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Can't read the upload spool: " + e.getMessage(), e);
+        }
+
+        int dropped = drain.getSuperseded();
+        List<UploadSpool.Entry> entries = new ArrayList<UploadSpool.Entry>();
+        for (UploadSpool.Entry entry : drain.getEntries()) {
+            Long sent = sentAt.get(entry.getKey());
+            if (sent != null && sent >= entry.getTime()) {
+                dropped++;
+            } else {
+                entries.add(entry);
+            }
+        }
+
+        Map<UploadSpool.Entry, Future<String>> uploads = new LinkedHashMap<UploadSpool.Entry, Future<String>>();
+        if (!entries.isEmpty()) {
+            final String authorization;
+            try {
+                authorization = getAuthorization(config);
+            } catch (MojoExecutionException e) {
+                drain.close();
+                throw e;
+            }
+            final Metrics metrics = Metrics.current();
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(flushThreads, entries.size())));
+            try {
+                for (final UploadSpool.Entry entry : entries) {
+                    uploads.put(entry, executor.submit(new Callable<String>() {
+                        public String call() throws IOException, MojoExecutionException {
+                            Metrics previous = Metrics.attach(metrics);
+                            try {
+                                return sendSpooled(getApiClient(entry.getApiBaseUrl(), authorization), entry);
+                            } finally {
+                                Metrics.detach(previous);
+                            }
+                        }
+                    }));
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        List<UploadSpool.Entry> failed = new ArrayList<UploadSpool.Entry>();
+        for (Map.Entry<UploadSpool.Entry, Future<String>> upload : uploads.entrySet()) {
+            UploadSpool.Entry entry = upload.getKey();
+            String name = entry.getProjectSlug() + (entry.getBranch() != null ? " (" + entry.getBranch() + ")" : "");
+            try {
+                getLog().info("Spooled dependencies of " + name + " sent, commit " + upload.getValue().get());
+            } catch (ExecutionException e) {
+                getLog().warn("Spooled dependencies of " + name + " can't be sent, they stay in the spool: "
+                        + e.getCause().getMessage());
+                failed.add(entry);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                drain.close();
+                throw new MojoExecutionException("Interrupted while sending spooled dependencies", e);
+            }
+        }
+
+        try {
+            drain.complete(failed);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Can't update the upload spool: " + e.getMessage(), e);
+        }
+        Metrics.count("spool-sent", entries.size() - failed.size());
+        if (!entries.isEmpty() || dropped > 0) {
+            getLog().info((entries.size() - failed.size()) + " spooled upload(s) sent, " + dropped
+                    + " superseded upload(s) dropped, " + failed.size() + " left in the spool in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        }
+        return failed.size();
+    }
+
+    // Posts a spooled upload and returns the sha of the created commit
+    private String sendSpooled(ApiClient client, final UploadSpool.Entry entry) throws IOException {
+        Map<String, String> headers = new HashMap<String, String>();
+        if (entry.getBranch() != null && !entry.getBranch().isEmpty()) {
+            headers.put("X-Gms-Branch", entry.getBranch());
+        }
+        if (entry.getRevision() != null && !entry.getRevision().isEmpty()) {
+            headers.put("X-Gms-Revision", entry.getRevision());
+        }
+        JsonNode node = client.execute("POST", entry.getPath(), headers, new ApiClient.RequestBody() {
+            public long getLength() {
+                return entry.getBody().length;
+            }
+
+            public void writeTo(OutputStream os) throws IOException {
+                os.write(entry.getBody());
+            }
+        }).getBody();
+        if (node == null || node.path("commit_sha").asText().isEmpty()) {
+            throw new IOException("no new commit was returned by the API");
+        }
+        return node.get("commit_sha").asText();
+    }
+
+    /**
+     * Converts a failed API call into a build failure.
+     * @param goal The name of the failing goal.
+     * @param e The API call failure.
+     * @return the exception to throw
+     */
+    protected MojoExecutionException getApiFailure(String goal, IOException e) {
+        if (e instanceof ApiClient.ApiException) {
+            return new MojoExecutionException(goal + " failed, API Error: " + e.getMessage(), e);
+        }
+        if (e instanceof JsonProcessingException) {
+            return new MojoExecutionException(goal + " failed, malformed API response", e);
+        }
+        if (e instanceof CircuitBreaker.OpenCircuitException) {
+            return new MojoExecutionException(goal + " failed, " + e.getMessage(), e);
+        }
+        return new MojoExecutionException(goal + " failed, can't connect to Gemnasium API", e);
     }
 
     /**
@@ -73,7 +491,59 @@ public abstract class AbstractMainMojo extends AbstractMojo {
     */
     protected List<Artifact> getAllDependencies() {
         return ProjectsUtils.getFilteredDependencies(new ArrayList<Artifact>(project.getArtifacts()),
-                config.getIgnoredScopes());
+                config.getIgnoredScopeSet());
+    }
+
+    /**
+     * Gets all project dependencies as JSON, see {@link #getAllDependencies()}.
+     * Dependency keys are interned in a symbol table shared by the whole build, and dependency nodes
+     * are shared by all the modules through the build {@link ArtifactTable}: they must not be modified.
+     * @return the project dependencies as JSON
+     * @throws MojoExecutionException if the build symbol table can't be initialized
+     */
+    protected ArrayNode getJsonDependencies() throws MojoExecutionException {
+        ConcurrentMap<String, String> symbols = SessionUtils.getOrCreate(session, SYMBOLS_KEY,
+                new Callable<ConcurrentMap<String, String>>() {
+                    public ConcurrentMap<String, String> call() {
+                        return new ConcurrentHashMap<String, String>();
+                    }
+                });
+        ArtifactTable table = SessionUtils.getOrCreate(session, ArtifactTable.SESSION_KEY,
+                new Callable<ArtifactTable>() {
+                    public ArtifactTable call() {
+                        return new ArtifactTable();
+                    }
+                });
+        DependencyTrails trails = new DependencyTrails(symbols);
+        DependencyGraph graph = getDependencyGraph(trails);
+        List<Artifact> dependencies = getAllDependencies();
+        Metrics.count("artifacts", dependencies.size());
+        Metrics.enter("dependency-json");
+        try {
+            return ProjectsUtils.getJsonDependencies(dependencies, getDirectDependencies(), trails, graph, table);
+        } finally {
+            Metrics.exit();
+        }
+    }
+
+    /**
+     * Builds the project dependency graph.
+     * @param trails Provides the symbol table of the build.
+     * @return the dependency graph, or null if it can't be built
+     */
+    protected DependencyGraph getDependencyGraph(DependencyTrails trails) {
+        ProjectBuildingRequest request = new DefaultProjectBuildingRequest(session.getProjectBuildingRequest());
+        request.setProject(project);
+        Metrics.enter("dependency-graph");
+        try {
+            return DependencyGraph.build(dependencyGraphBuilder.buildDependencyGraph(request, null), trails);
+        } catch (DependencyGraphBuilderException e) {
+            getLog().warn("Can't build the dependency graph, parents will be computed from dependency trails: "
+                    + e.getMessage());
+            return null;
+        } finally {
+            Metrics.exit();
+        }
     }
 
     /**
@@ -0,0 +1,88 @@
+package com.gemnasium;
+
+import java.io.IOException;
+
+import com.gemnasium.utils.UploadAgent;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Runs a local upload agent batching the dependencies sent by concurrent builds.
+ * Builds hand their dependencies over to the agent with the agentAddress option of the send-dependencies goal.
+ * The agent sends them with its own API base URL and key, and spools the ones it can't send.
+ */
+@Mojo(name = "agent", requiresProject = false, threadSafe = true)
+public class AgentMojo extends AbstractMainMojo {
+
+    // Loopback port the agent listens on
+    @Parameter(property = "agentPort", defaultValue = "9797")
+    private int agentPort;
+
+    // Time during which dependencies are collected before being sent, in ms
+    @Parameter(property = "agentBatchInterval", defaultValue = "2000")
+    private long agentBatchInterval;
+
+    // Maximum number of concurrent uploads
+    @Parameter(property = "agentUploadThreads", defaultValue = "4")
+    private int agentUploadThreads;
+
+    /**
+     * Time after which the agent sends the pending dependencies and stops, in ms.
+     * The agent runs until the build is interrupted when 0.
+     */
+    @Parameter(property = "agentDuration", defaultValue = "0")
+    private long agentDuration;
+
+    protected void executeGoal() throws MojoExecutionException {
+        runAgent();
+    }
+
+    private void runAgent() throws MojoExecutionException {
+        UploadAgent agent = new UploadAgent(agentPort, agentBatchInterval, agentUploadThreads, config.getApiBaseUrl(),
+                getApiClient(true), getUploadSpool(), cacheDir, getLog());
+        int port;
+        try {
+            port = agent.start();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Can't start the upload agent on port " + agentPort + ": "
+                    + e.getMessage(), e);
+        }
+        getLog().info("Upload agent listening on 127.0.0.1:" + port
+                + ", send dependencies with -DagentAddress=127.0.0.1:" + port);
+
+        if (agentDuration <= 0) {
+            // The build is stopped by a signal, the pending dependencies are sent on the way out
+            final UploadAgent runningAgent = agent;
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                public void run() {
+                    stopAgent(runningAgent);
+                }
+            }, "gemnasium-agent-shutdown"));
+            try {
+                Thread.currentThread().join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+
+        try {
+            Thread.sleep(agentDuration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        stopAgent(agent);
+    }
+
+    private void stopAgent(UploadAgent agent) {
+        try {
+            agent.stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            getLog().warn("Upload agent interrupted while sending pending dependencies");
+        }
+        getLog().info("Upload agent stopped: " + agent.getStatistics());
+    }
+}
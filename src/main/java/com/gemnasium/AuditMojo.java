@@ -0,0 +1,104 @@
+package com.gemnasium;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.gemnasium.utils.AdvisoryDatabase;
+import com.gemnasium.utils.Metrics;
+import com.gemnasium.utils.SessionUtils;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+/**
+ * Checks project's dependencies against a local advisory database, without calling Gemnasium.
+ */
+@Mojo(name = "audit", requiresDependencyResolution = ResolutionScope.TEST, threadSafe = true)
+public class AuditMojo extends AbstractMainMojo {
+
+    /**
+     * The advisory database: a JSON file, or a directory of JSON files, see {@link AdvisoryDatabase}.
+     * It's loaded once for the whole build.
+     */
+    @Parameter(property = "advisoryDb", required = true)
+    private File advisoryDb;
+
+    // Fails the build when a dependency is affected by an advisory
+    @Parameter(property = "failOnAdvisories", defaultValue = "true")
+    private boolean failOnAdvisories;
+
+    protected void executeGoal() throws MojoExecutionException {
+        audit();
+    }
+
+    private void audit() throws MojoExecutionException {
+        AdvisoryDatabase database = getAdvisoryDatabase();
+
+        long start = System.currentTimeMillis();
+        List<Artifact> dependencies = getAllDependencies();
+        int vulnerable = 0;
+        Metrics.enter("audit");
+        try {
+            for (Artifact artifact : dependencies) {
+                List<AdvisoryDatabase.Advisory> advisories = database.find(artifact.getGroupId(),
+                        artifact.getArtifactId(), artifact.getBaseVersion());
+                if (advisories.isEmpty()) {
+                    continue;
+                }
+                vulnerable++;
+                for (AdvisoryDatabase.Advisory advisory : advisories) {
+                    String fix = advisory.getFixedVersions().isEmpty() ? "no fixed version"
+                            : "fixed in " + advisory.getFixedVersions();
+                    getLog().warn(artifact.getGroupId() + ":" + artifact.getArtifactId() + ":"
+                            + artifact.getBaseVersion() + " (" + artifact.getScope() + ") is affected by "
+                            + advisory.getIdentifier() + ": " + advisory.getTitle() + ", " + fix);
+                    for (String url : advisory.getUrls()) {
+                        getLog().warn("\t" + url);
+                    }
+                }
+            }
+        } finally {
+            Metrics.exit();
+        }
+        Metrics.count("artifacts", dependencies.size());
+        Metrics.count("vulnerable-artifacts", vulnerable);
+
+        getLog().info("Audited " + dependencies.size() + " dependencies against " + database.size()
+                + " advisories in " + (System.currentTimeMillis() - start) + " ms: " + vulnerable + " affected");
+        if (vulnerable > 0 && failOnAdvisories) {
+            throw new MojoExecutionException("audit failed, " + vulnerable
+                    + " dependencies are affected by security advisories (use -DfailOnAdvisories=false to only report them)");
+        }
+    }
+
+    private AdvisoryDatabase getAdvisoryDatabase() throws MojoExecutionException {
+        final File location = advisoryDb.getAbsoluteFile();
+        return SessionUtils.getOrCreate(session, AdvisoryDatabase.class.getName() + ":" + location,
+                new Callable<AdvisoryDatabase>() {
+                    public AdvisoryDatabase call() throws MojoExecutionException {
+                        long start = System.currentTimeMillis();
+                        AdvisoryDatabase database;
+                        Metrics.enter("advisory-db");
+                        try {
+                            database = AdvisoryDatabase.load(location);
+                        } catch (IOException e) {
+                            throw new MojoExecutionException("audit failed, can't load the advisory database: "
+                                    + e.getMessage(), e);
+                        } finally {
+                            Metrics.exit();
+                        }
+                        for (String error : database.getErrors()) {
+                            getLog().warn(error);
+                        }
+                        getLog().info("Loaded " + database.size() + " advisories from " + location + " in "
+                                + (System.currentTimeMillis() - start) + " ms");
+                        return database;
+                    }
+                });
+    }
+}
@@ -0,0 +1,47 @@
+package com.gemnasium;
+
+import com.gemnasium.utils.SessionUtils;
+import com.gemnasium.utils.UploadTasks;
+
+import java.util.Map;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+
+/**
+ * Waits for the dependencies sent in the background by send-dependencies (async option)
+ * and fails the build if any upload failed.
+ */
+@Mojo(name = "await", threadSafe = true)
+public class AwaitMojo extends AbstractMainMojo {
+
+    protected void executeGoal() throws MojoExecutionException {
+        awaitUploads();
+    }
+
+    private void awaitUploads() throws MojoExecutionException {
+        UploadTasks tasks = SessionUtils.get(session, UploadTasks.SESSION_KEY);
+        if (tasks == null) {
+            getLog().info("No background upload to wait for.");
+            return;
+        }
+
+        Map<String, Throwable> failures;
+        try {
+            failures = tasks.awaitAll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("await failed, interrupted while waiting for uploads", e);
+        }
+
+        if (failures.isEmpty()) {
+            getLog().info("All background uploads completed.");
+            return;
+        }
+        for (Map.Entry<String, Throwable> failure : failures.entrySet()) {
+            getLog().error("Upload failed for " + failure.getKey() + ": " + failure.getValue().getMessage());
+        }
+        throw new MojoExecutionException("await failed, " + failures.size() + " background upload(s) failed",
+                failures.values().iterator().next());
+    }
+}
@@ -1,16 +1,19 @@
 package com.gemnasium;
 
+import com.gemnasium.utils.GitRepository;
+import com.gemnasium.utils.ProjectsUtils;
+import com.gemnasium.utils.PropertiesUtils;
+
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import org.apache.maven.plugin.MojoExecutionException;
 
 /**
- * Gemnasium Maven Plugin configuration
+ * Gemnasium Maven Plugin configuration, immutable.
+ * Instances are shared by the goals of a build through the {@link ConfigRegistry}.
  */
 public class Config {
 
@@ -18,17 +21,19 @@ public class Config {
     private static final String API_PREFIX = "/api/v2";
     private static final String GEMNASIUM_PROPERTIES_FILE_PATH = "/src/main/resources/gemnasium.properties";
 
-    private File baseDir;
+    private final File baseDir;
 
-    private String apiKey;
-    private String baseUrl;
-    private String projectBranch;
-    private String projectSlug;
-    private String projectRevision;
-    private String ignoredScopes;
+    private final String apiKey;
+    private final String baseUrl;
+    private final String projectBranch;
+    private final String projectSlug;
+    private final String projectRevision;
+    private final String ignoredScopes;
+    private final Set<String> ignoredScopeSet;
 
     /**
      * Initializes a the plugin configuration with the following ascending priority:
+     *  - git repository (branch and revision only)
      *  - properties file (gemnasium.properties)
      *  - plugin configuration (within pom.xml)
      *  - env variables
@@ -39,10 +44,11 @@ public class Config {
      * @param projectSlug The project identifier on Gemnasium.
      * @param projectRevision Current revision
      * @param ignoredScopes Comma separated list of Maven dependency scopes to ignore.
+     * @param gitRepository The git repository of the project, may be null.
      * @throws MojoExecutionException if properties configuration can't be loaded.
      */
     public Config(File baseDir, String baseUrl, String apiKey, String projectBranch, String projectSlug,
-            String projectRevision, String ignoredScopes) throws MojoExecutionException {
+            String projectRevision, String ignoredScopes, GitRepository gitRepository) throws MojoExecutionException {
         this.baseDir = baseDir;
         Properties configProperties;
         try {
@@ -51,23 +57,34 @@ public class Config {
             throw new MojoExecutionException("Can't load configuration file.", e);
         }
 
-        this.baseUrl = getFirstNotEmpty(System.getenv().get("GEMNASIUM_BASE_URL"), baseUrl,
+        Map<String, String> env = System.getenv();
+        String resolvedBaseUrl = getFirstNotEmpty(env.get("GEMNASIUM_BASE_URL"), baseUrl,
                 configProperties.getProperty("baseUrl"));
         // Set default baseUrl if none provided
-        if (this.baseUrl == null || this.baseUrl.isEmpty()) {
-            this.baseUrl = DEFAULT_BASE_URL;
+        if (resolvedBaseUrl == null || resolvedBaseUrl.isEmpty()) {
+            resolvedBaseUrl = DEFAULT_BASE_URL;
         }
+        this.baseUrl = resolvedBaseUrl;
 
-        this.apiKey = getFirstNotEmpty(System.getenv().get("GEMNASIUM_API_KEY"), apiKey,
+        this.apiKey = getFirstNotEmpty(env.get("GEMNASIUM_API_KEY"), apiKey,
                 configProperties.getProperty("apiKey"));
-        this.projectBranch = getFirstNotEmpty(System.getenv().get("GEMNASIUM_PROJECT_BRANCH"), projectBranch,
+        String resolvedBranch = getFirstNotEmpty(env.get("GEMNASIUM_PROJECT_BRANCH"), projectBranch,
                 configProperties.getProperty("projectBranch"));
-        this.projectSlug = getFirstNotEmpty(System.getenv().get("GEMNASIUM_PROJECT_SLUG"), projectSlug,
+        if ((resolvedBranch == null || resolvedBranch.isEmpty()) && gitRepository != null) {
+            resolvedBranch = gitRepository.getBranch();
+        }
+        this.projectBranch = resolvedBranch;
+        this.projectSlug = getFirstNotEmpty(env.get("GEMNASIUM_PROJECT_SLUG"), projectSlug,
                 configProperties.getProperty("projectSlug"));
-        this.projectRevision = getFirstNotEmpty(System.getenv().get("GEMNASIUM_PROJECT_REVISION"), projectRevision,
+        String resolvedRevision = getFirstNotEmpty(env.get("GEMNASIUM_PROJECT_REVISION"), projectRevision,
                 configProperties.getProperty("projectRevision"));
-        this.ignoredScopes = getFirstNotEmpty(System.getenv().get("GEMNASIUM_IGNORED_SCOPES"), ignoredScopes,
+        if ((resolvedRevision == null || resolvedRevision.isEmpty()) && gitRepository != null) {
+            resolvedRevision = gitRepository.getRevision();
+        }
+        this.projectRevision = resolvedRevision;
+        this.ignoredScopes = getFirstNotEmpty(env.get("GEMNASIUM_IGNORED_SCOPES"), ignoredScopes,
                 configProperties.getProperty("ignoredScopes"));
+        this.ignoredScopeSet = ProjectsUtils.getIgnoredScopes(this.ignoredScopes);
     }
 
     private String getFirstNotEmpty(String envVarConfig, String pluginConfig, String propertyConfig) {
@@ -82,23 +99,26 @@ public class Config {
         return propertyConfig;
     }
 
+    /**
+     * @param baseDir The maven project baseDir.
+     * @return the properties file (gemnasium.properties) of the project
+     */
+    public static File getConfigPropertiesFile(File baseDir) {
+        return new File(baseDir + GEMNASIUM_PROPERTIES_FILE_PATH);
+    }
+
     public Properties loadConfigProperties() throws Exception {
-        Properties properties = new Properties();
-        File file = new File(baseDir + GEMNASIUM_PROPERTIES_FILE_PATH);
-        if (!file.exists()) {
-            return properties;
-        }
-        InputStream is = new FileInputStream(file);
-        properties.load(is);
-        return properties;
+        return PropertiesUtils.load(getConfigPropertiesFile(baseDir));
     }
 
+    /**
+     * Adds or replaces properties of the properties file, safely with concurrent builds,
+     * see {@link PropertiesUtils#update(File, Properties, String)}.
+     * @param updatedProperties The properties to add or replace.
+     * @throws Exception if the properties file can't be updated
+     */
     public void updateConfigProperties(Properties updatedProperties) throws Exception {
-        Properties oldProperties = loadConfigProperties();
-        Properties newProperties = new Properties();
-        newProperties.putAll(oldProperties);
-        newProperties.putAll(updatedProperties);
-        storeConfigProperties(newProperties);
+        PropertiesUtils.update(getConfigPropertiesFile(baseDir), updatedProperties, "Gemnasium configuration");
     }
 
     public String toString() {
@@ -107,12 +127,6 @@ public class Config {
                 + ignoredScopes + "\n";
     }
 
-    private void storeConfigProperties(Properties properties) throws Exception {
-        File file = new File(baseDir + GEMNASIUM_PROPERTIES_FILE_PATH);
-        OutputStream os = new FileOutputStream(file);
-        properties.store(os, "Gemnasium configuration");
-    }
-
     /**
     * @return the API base url
     */
@@ -131,7 +145,7 @@ public class Config {
         return baseUrl;
     }
 
-    // Getters and setters
+    // Getters
     public File getBaseDir() {
         return baseDir;
     }
@@ -140,48 +154,27 @@ public class Config {
         return baseUrl;
     }
 
-    public void setbaseUrl(String baseUrl) {
-        this.baseUrl = baseUrl;
-    }
-
     public String getApiKey() {
         return apiKey;
     }
 
-    public void setApiKey(String apiKey) {
-        this.apiKey = apiKey;
-    }
-
     public String getProjectBranch() {
         return projectBranch;
     }
 
-    public void setProjectBranch(String projectBranch) {
-        this.projectBranch = projectBranch;
-    }
-
     public String getProjectSlug() {
         return projectSlug;
     }
 
-    public void setProjectSlug(String projectSlug) {
-        this.projectSlug = projectSlug;
-    }
-
     public String getProjectRevision() {
         return projectRevision;
     }
 
-    public void setProjectRevision(String projectRevision) {
-        this.projectRevision = projectRevision;
-    }
-
     public String getIgnoredScopes() {
         return ignoredScopes;
     }
 
-    public void setIgnoredScopes(String ignoredScopes) {
-        this.ignoredScopes = ignoredScopes;
+    public Set<String> getIgnoredScopeSet() {
+        return ignoredScopeSet;
     }
-
 }
@@ -0,0 +1,124 @@
+package com.gemnasium;
+
+import com.gemnasium.utils.GitRepository;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Configurations of the build, shared by all the goals and modules.
+ *
+ * A configuration is loaded once per baseDir and plugin configuration, and loaded again
+ * when the properties file changes on disk or is updated by the plugin.
+ * The git repository of the projects is read once per working tree.
+ */
+public class ConfigRegistry {
+
+    public static final String SESSION_KEY = ConfigRegistry.class.getName();
+
+    private final ConcurrentMap<Key, Config> configs = new ConcurrentHashMap<Key, Config>();
+    private final ConcurrentMap<File, GitRepository> repositories = new ConcurrentHashMap<File, GitRepository>();
+
+    /**
+     * Gets the configuration of a project, see {@link Config#Config}.
+     * @param baseDir The maven project baseDir.
+     * @param baseUrl The base URL of the Gemnasium instance.
+     * @param apiKey Your Gemnasium API key
+     * @param projectBranch Current branch
+     * @param projectSlug The project identifier on Gemnasium.
+     * @param projectRevision Current revision
+     * @param ignoredScopes Comma separated list of Maven dependency scopes to ignore.
+     * @return the configuration
+     * @throws MojoExecutionException if properties configuration can't be loaded.
+     */
+    public Config get(File baseDir, String baseUrl, String apiKey, String projectBranch, String projectSlug,
+            String projectRevision, String ignoredScopes) throws MojoExecutionException {
+        File file = Config.getConfigPropertiesFile(baseDir);
+        Key key = new Key(baseDir.getAbsolutePath(), file.lastModified(), file.length(),
+                new String[] { baseUrl, apiKey, projectBranch, projectSlug, projectRevision, ignoredScopes });
+        Config config = configs.get(key);
+        if (config == null) {
+            config = new Config(baseDir, baseUrl, apiKey, projectBranch, projectSlug, projectRevision, ignoredScopes,
+                    getGitRepository(baseDir));
+            Config previous = configs.putIfAbsent(key, config);
+            if (previous != null) {
+                config = previous;
+            }
+        }
+        return config;
+    }
+
+    /**
+     * @param baseDir The maven project baseDir.
+     * @return the git repository holding the project, without branch nor revision if it can't be read,
+     * null if none
+     */
+    public GitRepository getGitRepository(File baseDir) {
+        File workTree = GitRepository.findWorkTree(baseDir);
+        if (workTree == null) {
+            return null;
+        }
+        GitRepository repository = repositories.get(workTree);
+        if (repository == null) {
+            try {
+                repository = GitRepository.read(workTree);
+            } catch (IOException e) {
+                // Branch and revision must then be configured
+                repository = new GitRepository(workTree, null, null);
+            }
+            GitRepository previous = repositories.putIfAbsent(workTree, repository);
+            if (previous != null) {
+                repository = previous;
+            }
+        }
+        return repository;
+    }
+
+    /**
+     * Forgets the configurations of a project, to be called when its properties file is updated.
+     * @param baseDir The maven project baseDir.
+     */
+    public void invalidate(File baseDir) {
+        String path = baseDir.getAbsolutePath();
+        for (Key key : configs.keySet()) {
+            if (key.baseDir.equals(path)) {
+                configs.remove(key);
+            }
+        }
+    }
+
+    private static class Key {
+
+        private final String baseDir;
+        private final long lastModified;
+        private final long length;
+        private final String[] parameters;
+
+        Key(String baseDir, long lastModified, long length, String[] parameters) {
+            this.baseDir = baseDir;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return baseDir.equals(other.baseDir) && lastModified == other.lastModified && length == other.length
+                    && Arrays.equals(parameters, other.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * baseDir.hashCode() + Arrays.hashCode(parameters);
+        }
+    }
+}
@@ -1,44 +1,63 @@
 package com.gemnasium;
 
-import com.gemnasium.utils.AuthUtils;
+import com.gemnasium.utils.ApiClient;
+import com.gemnasium.utils.Metrics;
 import com.gemnasium.utils.ProjectsUtils;
 
-import java.io.InputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import javax.net.ssl.HttpsURLConnection;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
 
 /**
  * Creates a new project on Gemnasium with given parameters.
- * teamSlug and projectName are mandatory parameters
+ * teamSlug and projectName are mandatory parameters, unless projects are created for the whole reactor.
  */
-@Mojo(name = "create-project", defaultPhase = LifecyclePhase.PROCESS_SOURCES)
+@Mojo(name = "create-project", defaultPhase = LifecyclePhase.PROCESS_SOURCES, threadSafe = true)
 public class CreateProjectMojo extends AbstractMainMojo {
 
     // Specific plugin parameter for that goal.
-    @Parameter(property = "teamSlug", required = true)
+    @Parameter(property = "teamSlug")
     private String teamSlug;
 
-    @Parameter(property = "projectName", required = true)
+    @Parameter(property = "projectName")
     private String projectName;
 
     @Parameter(property = "projectDescription", required = false)
     private String projectDescription;
 
-    public void execute() throws MojoExecutionException {
-        super.execute();
-        createProject(teamSlug, projectName, projectDescription);
+    /**
+     * Creates a project for every module of the reactor that has no project slug yet,
+     * named after the module.
+     */
+    @Parameter(property = "reactor", defaultValue = "false")
+    private boolean reactor;
+
+    // Maximum number of projects created concurrently
+    @Parameter(property = "createThreads", defaultValue = "8")
+    private int createThreads;
+
+    protected void executeGoal() throws MojoExecutionException {
+        if (reactor) {
+            createProjects();
+        } else {
+            createProject(teamSlug, projectName, projectDescription);
+        }
     }
 
     private void createProject(String teamSlug, String projectName, String projectDescription)
@@ -51,65 +70,123 @@ public class CreateProjectMojo extends AbstractMainMojo {
             throw new MojoExecutionException("create-project failed, please provide the projectName option");
         }
 
-        String baseName = ProjectsUtils.getBasename(projectName);
-        ObjectMapper mapper = new ObjectMapper();
-        ObjectNode jsonNode = mapper.createObjectNode();
-        jsonNode.put("name", projectName);
-        jsonNode.put("basename", baseName);
-        jsonNode.put("description", projectDescription);
-        String requestBody = jsonNode.toString();
-
-        URL url;
+        String slug;
         try {
-            url = new URL(config.getApiBaseUrl() + "/teams/" + teamSlug + "/projects");
-        } catch (MalformedURLException e) {
-            throw new MojoExecutionException(
-                    "create-project failed, invalid parameters baseUrl or teamSlug, can't forge URL");
+            slug = postProject(getApiClient(true), config, teamSlug, projectName, projectDescription);
+        } catch (IOException e) {
+            throw getApiFailure("create-project", e);
         }
 
-        HttpsURLConnection conn;
-        OutputStream os;
-        try {
-            conn = (HttpsURLConnection) url.openConnection();
-            conn.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
-            conn.setDoOutput(true);
-            conn.setDoInput(true);
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Authorization", "Basic " + AuthUtils.getEncodedBasicToken(config.getApiKey()));
+        getLog().info(projectName + " project successfully created.");
+        getLog().info("You can now send your dependencies using `mvn gemnasium:send-dependencies`");
+        String projectUrl = config.getUIBaseUrl() + "/projects/" + slug;
+        getLog().info("And your project is visible at:");
+        getLog().info(projectUrl);
 
-            os = conn.getOutputStream();
+    }
 
-            os.write(requestBody.getBytes("UTF-8"));
-            os.close();
-        } catch (IOException e) {
-            throw new MojoExecutionException("create-project failed, can't connect to Gemnasium API", e);
+    /**
+     * Creates the projects of all the modules of the reactor at once, from the first module.
+     * Modules already having a project slug are skipped, so that the goal can be run again after a failure.
+     */
+    private void createProjects() throws MojoExecutionException {
+        if (project != session.getProjects().get(0)) {
+            getLog().info("Projects already created for the reactor, skipping.");
+            return;
+        }
+        if (teamSlug == null || teamSlug.isEmpty()) {
+            throw new MojoExecutionException("create-project failed, please provide the teamSlug option");
+        }
+
+        final Map<MavenProject, Config> modules = new LinkedHashMap<MavenProject, Config>();
+        for (MavenProject module : session.getProjects()) {
+            Config moduleConfig = getConfig(module.getBasedir());
+            String slug = moduleConfig.getProjectSlug();
+            if (slug != null && !slug.isEmpty()) {
+                getLog().info(module.getArtifactId() + " already has a project: " + slug);
+            } else {
+                modules.put(module, moduleConfig);
+            }
+        }
+        if (modules.isEmpty()) {
+            getLog().info("All the modules already have a project.");
+            return;
         }
 
-        InputStream is = null;
+        long start = System.currentTimeMillis();
+        final Metrics metrics = Metrics.current();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(createThreads, modules.size())));
+        Map<MavenProject, Future<String>> slugs = new LinkedHashMap<MavenProject, Future<String>>();
         try {
-            is = conn.getInputStream();
-        } catch (IOException ioe) {
+            for (final Map.Entry<MavenProject, Config> module : modules.entrySet()) {
+                // Modules may use different API instances or keys
+                Config moduleConfig = module.getValue();
+                final ApiClient client = getApiClient(moduleConfig.getApiBaseUrl(), getAuthorization(moduleConfig));
+                slugs.put(module.getKey(), executor.submit(new Callable<String>() {
+                    public String call() throws IOException, MojoExecutionException {
+                        Metrics previous = Metrics.attach(metrics);
+                        try {
+                            MavenProject moduleProject = module.getKey();
+                            String description = projectDescription != null ? projectDescription
+                                    : moduleProject.getDescription();
+                            return postProject(client, module.getValue(), teamSlug, moduleProject.getName(),
+                                    description);
+                        } finally {
+                            Metrics.detach(previous);
+                        }
+                    }
+                }));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        List<String> failures = new ArrayList<String>();
+        MojoExecutionException failure = null;
+        for (Map.Entry<MavenProject, Future<String>> slug : slugs.entrySet()) {
+            String artifactId = slug.getKey().getArtifactId();
             try {
-                if (conn.getResponseCode() != 200) {
-                    is = conn.getErrorStream();
-                    JsonNode node = mapper.readTree(is);
-                    throw new MojoExecutionException(
-                            "create-project failed, API Error: " + node.get("message").asText());
+                getLog().info(artifactId + " project successfully created: "
+                        + modules.get(slug.getKey()).getUIBaseUrl() + "/projects/" + slug.getValue().get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof MojoExecutionException) {
+                    failure = (MojoExecutionException) e.getCause();
+                } else if (e.getCause() instanceof IOException) {
+                    failure = getApiFailure("create-project " + artifactId, (IOException) e.getCause());
+                } else {
+                    failure = new MojoExecutionException("create-project " + artifactId + " failed", e.getCause());
                 }
-            } catch (IOException e) {
-                throw new MojoExecutionException("create-project failed, API Error");
+                getLog().error(failure.getMessage());
+                failures.add(artifactId);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("create-project failed, interrupted while creating projects", e);
             }
         }
-
-        // Parses JSON response to find the project slug
-        JsonNode node;
-        try {
-            node = mapper.readTree(is);
-        } catch (IOException ioe) {
-            throw new MojoExecutionException("create-project failed, malformed API response");
+        getLog().info((slugs.size() - failures.size()) + " project(s) created in "
+                + (System.currentTimeMillis() - start) + " ms");
+        if (failure != null) {
+            throw new MojoExecutionException("create-project failed for " + failures
+                    + ", run it again to create the missing projects", failure);
         }
+    }
 
-        String slug = node.get("slug").asText();
+    /**
+     * Creates a project and saves its slug into the module properties file.
+     * @return the project slug
+     */
+    private String postProject(ApiClient client, Config moduleConfig, String teamSlug, String projectName,
+            String projectDescription) throws IOException, MojoExecutionException {
+        String baseName = ProjectsUtils.getBasename(projectName);
+        ObjectNode jsonNode = ApiClient.MAPPER.createObjectNode();
+        jsonNode.put("name", projectName);
+        jsonNode.put("basename", baseName);
+        jsonNode.put("description", projectDescription);
+
+        // Never retried, a project may have been created even if the API returned an error
+        JsonNode node = client.postOnce("/teams/" + teamSlug + "/projects", jsonNode);
+        // Parses JSON response to find the project slug
+        String slug = node != null && node.hasNonNull("slug") ? node.get("slug").asText() : null;
         if (slug == null || slug.isEmpty()) {
             throw new MojoExecutionException("create-project failed, no slug was returned by the API");
         }
@@ -118,19 +195,13 @@ public class CreateProjectMojo extends AbstractMainMojo {
         Properties properties = new Properties();
         properties.setProperty("projectSlug", slug);
         try {
-            config.updateConfigProperties(properties);
+            updateConfigProperties(moduleConfig, properties);
         } catch (Exception e) {
             getLog().warn(
                     "Project was created but the configuration can't be stored in the properties file. Your project slug is: "
                             + slug,
                     e);
         }
-
-        getLog().info(projectName + " project successfully created.");
-        getLog().info("You can now send your dependencies using `mvn gemnasium:send-dependencies`");
-        String projectUrl = config.getUIBaseUrl() + "/projects/" + slug;
-        getLog().info("And your project is visible at:");
-        getLog().info(projectUrl);
-
+        return slug;
     }
 }
@@ -1,15 +1,18 @@
 package com.gemnasium;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 
 import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.gemnasium.utils.ProjectsUtils;
+import com.gemnasium.utils.DependencySnapshot;
+import com.gemnasium.utils.Metrics;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 
 /**
@@ -19,25 +22,48 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
 public class DumpDependenciesMojo extends AbstractMainMojo {
 
     public static final String DEPENDENCY_FILE_NAME = "gemnasium-maven-plugin.json";
+    public static final String SNAPSHOT_FILE_NAME = "gemnasium-maven-plugin.gmsd";
 
-    public void execute() throws MojoExecutionException {
-        super.execute();
+    public static final String JSON_FORMAT = "json";
+    public static final String BINARY_FORMAT = "binary";
+
+    /**
+     * Format of the dump: json, or binary for a compact snapshot that can be memory-mapped,
+     * see {@link DependencySnapshot}.
+     */
+    @Parameter(property = "format", defaultValue = JSON_FORMAT)
+    private String format;
+
+    protected void executeGoal() throws MojoExecutionException {
         listDependencies();
     }
 
     public void listDependencies() throws MojoExecutionException {
-        ArrayNode jsonDependencies = ProjectsUtils.getJsonDependencies(getAllDependencies(),
-                    getDirectDependencies());
+        boolean binary = BINARY_FORMAT.equals(format);
+        if (!binary && !JSON_FORMAT.equals(format)) {
+            throw new MojoExecutionException("Unknown dump format: " + format + ", expected "
+                    + JSON_FORMAT + " or " + BINARY_FORMAT);
+        }
+
+        ArrayNode jsonDependencies = getJsonDependencies();
 
-        String output = jsonDependencies.toString();
-        String filePath = config.getBaseDir() + "/" + DEPENDENCY_FILE_NAME;
+        String filePath = config.getBaseDir() + "/" + (binary ? SNAPSHOT_FILE_NAME : DEPENDENCY_FILE_NAME);
 
+        Metrics.enter("serialization");
         try {
-            Files.write(Paths.get(filePath), output.getBytes(), StandardOpenOption.CREATE);
-            getLog().info("Project's dependencies have been succesfully dumped into: " + filePath);
+            if (binary) {
+                DependencySnapshot.write(jsonDependencies, Paths.get(filePath));
+            } else {
+                Files.write(Paths.get(filePath), jsonDependencies.toString().getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            }
+            Metrics.count("dump-bytes", Files.size(Paths.get(filePath)));
+            getLog().info("Project's dependencies have been successfully dumped into: " + filePath);
         } catch (IOException e) {
-            getLog().info("Can't write project's dependencies into: " + filePath);
-            e.printStackTrace();
+            throw new MojoExecutionException("dump-dependencies failed, can't write project's dependencies into: "
+                    + filePath, e);
+        } finally {
+            Metrics.exit();
         }
     }
 }
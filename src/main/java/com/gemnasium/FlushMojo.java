@@ -0,0 +1,27 @@
+package com.gemnasium;
+
+import java.util.Collections;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+
+/**
+ * Sends the dependencies spooled by send-dependencies (spool option) while the API was unreachable,
+ * the newest ones of each project branch only, and fails the build if some are still spooled.
+ */
+@Mojo(name = "flush", aggregator = true, requiresProject = false, threadSafe = true)
+public class FlushMojo extends AbstractMainMojo {
+
+    protected void executeGoal() throws MojoExecutionException {
+        flush();
+    }
+
+    private void flush() throws MojoExecutionException {
+        int remaining = flushSpool(Collections.<String, Long>emptyMap());
+        if (remaining > 0) {
+            throw new MojoExecutionException("flush failed, " + remaining
+                    + " upload(s) are still spooled, run it again once the API is reachable");
+        }
+        getLog().info("The upload spool is empty.");
+    }
+}
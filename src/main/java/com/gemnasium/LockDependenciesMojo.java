@@ -0,0 +1,52 @@
+package com.gemnasium;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.gemnasium.utils.DependencyLock;
+import com.gemnasium.utils.Metrics;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+/**
+ * Writes the resolved dependencies of the project into a lockfile, keyed by a hash of the effective pom.
+ * The send-locked-dependencies goal then sends them without resolving them.
+ */
+@Mojo(name = "lock-dependencies", requiresDependencyResolution = ResolutionScope.TEST, threadSafe = true)
+public class LockDependenciesMojo extends AbstractMainMojo {
+
+    public static final String LOCK_FILE_NAME = "gemnasium-dependencies.lock";
+
+    @Parameter(property = "lockFile", defaultValue = "${basedir}/" + LOCK_FILE_NAME)
+    private File lockFile;
+
+    protected void executeGoal() throws MojoExecutionException {
+        lockDependencies();
+    }
+
+    private void lockDependencies() throws MojoExecutionException {
+        String pomHash = DependencyLock.hash(project, session.getProjects(), config.getIgnoredScopes());
+        ArrayNode jsonDependencies = getJsonDependencies();
+
+        Metrics.enter("serialization");
+        try {
+            DependencyLock previous = DependencyLock.read(lockFile);
+            if (previous != null && previous.getPomHash().equals(pomHash)
+                    && previous.getDependencies().equals(jsonDependencies)) {
+                getLog().info("Lockfile is up to date: " + lockFile);
+                return;
+            }
+            new DependencyLock(pomHash, jsonDependencies).write(lockFile);
+        } catch (IOException e) {
+            throw new MojoExecutionException("lock-dependencies failed, can't write " + lockFile + ": "
+                    + e.getMessage(), e);
+        } finally {
+            Metrics.exit();
+        }
+        getLog().info(jsonDependencies.size() + " dependencies locked into: " + lockFile);
+    }
+}
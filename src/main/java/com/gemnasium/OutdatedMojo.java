@@ -0,0 +1,148 @@
+package com.gemnasium;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.gemnasium.utils.ApiClient;
+import com.gemnasium.utils.LocalVersions;
+import com.gemnasium.utils.Metrics;
+import com.gemnasium.utils.SessionUtils;
+
+import org.apache.maven.artifact.versioning.ComparableVersion;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+/**
+ * Lists the dependencies having newer versions, as known by the metadata of the local repository.
+ * Works offline: the versions are those of the last update of the local repository.
+ */
+@Mojo(name = "outdated", requiresDependencyResolution = ResolutionScope.TEST, threadSafe = true)
+public class OutdatedMojo extends AbstractMainMojo {
+
+    private static final String SNAPSHOT = "SNAPSHOT";
+
+    /**
+     * The report of the outdated dependencies, in the JSON format of dump-dependencies
+     * with the newer versions of each dependency.
+     */
+    @Parameter(property = "outdatedFile", defaultValue = "${project.build.directory}/gemnasium-outdated.json")
+    private File outdatedFile;
+
+    /**
+     * Lists the newer pre-releases, such as alpha, beta, milestone or release candidate versions.
+     * They are always listed for dependencies whose current version is a pre-release.
+     */
+    @Parameter(property = "includePreReleases", defaultValue = "false")
+    private boolean includePreReleases;
+
+    // Maximum number of metadata directories read concurrently
+    @Parameter(property = "metadataThreads", defaultValue = "8")
+    private int metadataThreads;
+
+    protected void executeGoal() throws MojoExecutionException {
+        listOutdated();
+    }
+
+    private void listOutdated() throws MojoExecutionException {
+        ArrayNode jsonDependencies = getJsonDependencies();
+
+        long start = System.currentTimeMillis();
+        Set<String> keys = new LinkedHashSet<String>();
+        for (JsonNode dependency : jsonDependencies) {
+            keys.add(dependency.get("groupId").asText() + ":" + dependency.get("artifactId").asText());
+        }
+        Map<String, List<ComparableVersion>> versions;
+        Metrics.enter("metadata");
+        try {
+            versions = getLocalVersions().getVersions(keys, metadataThreads);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("outdated failed, interrupted while reading metadata", e);
+        } finally {
+            Metrics.exit();
+        }
+
+        ArrayNode outdated = ApiClient.MAPPER.createArrayNode();
+        int withoutMetadata = 0;
+        for (JsonNode dependency : jsonDependencies) {
+            List<ComparableVersion> known = versions.get(
+                    dependency.get("groupId").asText() + ":" + dependency.get("artifactId").asText());
+            if (known.isEmpty()) {
+                withoutMetadata++;
+                continue;
+            }
+            List<String> newer = getNewerVersions(dependency.get("version").asText(), known);
+            if (newer.isEmpty()) {
+                continue;
+            }
+            ObjectNode node = ((ObjectNode) dependency).deepCopy();
+            node.put("latest", newer.get(newer.size() - 1));
+            ArrayNode newerNode = node.putArray("newerVersions");
+            for (String version : newer) {
+                newerNode.add(version);
+            }
+            outdated.add(node);
+
+            String path = node.get("transitive").asBoolean()
+                    ? "transitive, via " + node.get("parents").get(0).asText()
+                    : "direct";
+            getLog().info(node.get("groupId").asText() + ":" + node.get("artifactId").asText() + " "
+                    + node.get("version").asText() + " -> " + node.get("latest").asText() + " (" + path + ", "
+                    + newer.size() + " newer version(s))");
+        }
+        Metrics.count("outdated", outdated.size());
+        getLog().info(outdated.size() + " of " + jsonDependencies.size() + " dependencies are outdated, "
+                + withoutMetadata + " without metadata in the local repository, checked in "
+                + (System.currentTimeMillis() - start) + " ms");
+
+        try {
+            File dir = outdatedFile.getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+                throw new IOException("Can't create directory " + dir);
+            }
+            ApiClient.MAPPER.writerWithDefaultPrettyPrinter().writeValue(outdatedFile, outdated);
+        } catch (IOException e) {
+            throw new MojoExecutionException("outdated failed, can't write " + outdatedFile + ": " + e.getMessage(),
+                    e);
+        }
+        getLog().info("Outdated dependencies report written to: " + outdatedFile);
+    }
+
+    /**
+     * @return the versions newer than the current one in ascending order, snapshots excluded,
+     * and pre-releases excluded unless included or the current version is a pre-release
+     */
+    private List<String> getNewerVersions(String version, List<ComparableVersion> known) {
+        ComparableVersion current = new ComparableVersion(version);
+        boolean preReleases = includePreReleases || LocalVersions.isPreRelease(version);
+        List<String> newer = new ArrayList<String>();
+        for (ComparableVersion candidate : known) {
+            String text = candidate.toString();
+            if (candidate.compareTo(current) > 0 && !text.endsWith(SNAPSHOT)
+                    && (preReleases || !LocalVersions.isPreRelease(text))) {
+                newer.add(text);
+            }
+        }
+        return newer;
+    }
+
+    private LocalVersions getLocalVersions() throws MojoExecutionException {
+        return SessionUtils.getOrCreate(session, LocalVersions.SESSION_KEY, new Callable<LocalVersions>() {
+            public LocalVersions call() {
+                return new LocalVersions(Paths.get(session.getLocalRepository().getBasedir()));
+            }
+        });
+    }
+}
@@ -1,10 +1,5 @@
 package com.gemnasium;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.URL;
-
-import javax.net.ssl.HttpsURLConnection;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
@@ -15,24 +10,15 @@ import org.apache.maven.plugins.annotations.Mojo;
 @Mojo(name = "ping", defaultPhase = LifecyclePhase.PROCESS_SOURCES)
 public class PingMojo extends AbstractMainMojo {
 
-    public void execute() throws MojoExecutionException {
-        super.execute();
+    protected void executeGoal() throws MojoExecutionException {
         sendPing();
     }
 
     private void sendPing() throws MojoExecutionException {
         try {
-            URL url = new URL(config.getApiBaseUrl() + "/ping");
-            HttpsURLConnection con = (HttpsURLConnection) url.openConnection();
-            BufferedReader br = new BufferedReader(new InputStreamReader(con.getInputStream()));
-
-            String input;
-            while ((input = br.readLine()) != null) {
+            for (String input : getApiClient(false).getText("/ping").split("\\r?\\n")) {
                 getLog().info(input);
             }
-
-            br.close();
-
         } catch (Exception e) {
             throw new MojoExecutionException("Ping failed, please check network connection and configuration.", e);
         }
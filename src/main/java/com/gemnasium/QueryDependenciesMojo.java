@@ -0,0 +1,86 @@
+package com.gemnasium;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import com.gemnasium.utils.DependencyIndex;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Indexes the dependency dumps of the modules and finds the modules depending on an artifact.
+ * Works offline, on the files written by the dump-dependencies goal.
+ */
+@Mojo(name = "query-dependencies", aggregator = true, threadSafe = true)
+public class QueryDependenciesMojo extends AbstractMainMojo {
+
+    /**
+     * The artifact to look for, groupId:artifactId or groupId:artifactId:version.
+     * The index is only updated when not set.
+     */
+    @Parameter(property = "artifact")
+    private String artifact;
+
+    // Directory searched recursively for dumps
+    @Parameter(property = "dumpsDir", defaultValue = "${session.executionRootDirectory}")
+    private File dumpsDir;
+
+    @Parameter(property = "indexDir", defaultValue = "${session.executionRootDirectory}/target/gemnasium-index")
+    private File indexDir;
+
+    protected void executeGoal() throws MojoExecutionException {
+        queryDependencies();
+    }
+
+    public void queryDependencies() throws MojoExecutionException {
+        DependencyIndex index = new DependencyIndex(indexDir);
+
+        long start = System.currentTimeMillis();
+        DependencyIndex.Update update;
+        try {
+            update = index.update(dumpsDir, new HashSet<String>(Arrays.asList(
+                    DumpDependenciesMojo.DEPENDENCY_FILE_NAME, DumpDependenciesMojo.SNAPSHOT_FILE_NAME)));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Can't index dependency dumps of " + dumpsDir + ": " + e.getMessage(), e);
+        }
+        getLog().info("Indexed " + update.getModules() + " module(s) (" + update.getUpdated() + " updated, "
+                + update.getRemoved() + " removed, " + update.getPending() + " pending merge) in "
+                + (System.currentTimeMillis() - start) + " ms");
+
+        if (artifact == null || artifact.isEmpty()) {
+            return;
+        }
+
+        start = System.currentTimeMillis();
+        List<DependencyIndex.Match> matches;
+        try {
+            matches = index.query(artifact);
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(e.getMessage());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Can't query dependency index " + indexDir + ": " + e.getMessage(), e);
+        }
+        getLog().info("Found " + matches.size() + " dependencies on " + artifact + " in "
+                + (System.currentTimeMillis() - start) + " ms");
+        for (DependencyIndex.Match match : matches) {
+            StringBuilder line = new StringBuilder();
+            line.append(match.getModule().isEmpty() ? "." : match.getModule()).append(": ")
+                    .append(match.getGroupId()).append(':').append(match.getArtifactId()).append(':')
+                    .append(match.getVersion()).append(" (").append(match.getScope()).append(')');
+            if (match.getParents().isEmpty()) {
+                line.append(" direct");
+            } else {
+                line.append(" via ");
+                for (int i = 0; i < match.getParents().size(); i++) {
+                    line.append(i == 0 ? "" : " > ").append(match.getParents().get(i));
+                }
+            }
+            getLog().info(line.toString());
+        }
+    }
+}
@@ -1,121 +1,567 @@
 package com.gemnasium;
 
-import com.gemnasium.utils.AuthUtils;
+import com.gemnasium.utils.ApiClient;
+import com.gemnasium.utils.DependencyDiff;
+import com.gemnasium.utils.DependencyFile;
+import com.gemnasium.utils.DependencyFilesAggregator;
+import com.gemnasium.utils.Metrics;
 import com.gemnasium.utils.ProjectsUtils;
+import com.gemnasium.utils.ReactorCountdown;
+import com.gemnasium.utils.SessionUtils;
+import com.gemnasium.utils.UploadAgent;
+import com.gemnasium.utils.UploadCache;
+import com.gemnasium.utils.UploadSpool;
+import com.gemnasium.utils.UploadTasks;
 
-import java.io.InputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import javax.net.ssl.HttpsURLConnection;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 
 /**
  * Sends project's dependencies to Gemnasium
  */
-@Mojo(name = "send-dependencies", requiresDependencyResolution = ResolutionScope.TEST)
+@Mojo(name = "send-dependencies", requiresDependencyResolution = ResolutionScope.TEST, threadSafe = true)
 public class SendDependenciesMojo extends AbstractMainMojo {
 
     public static final String DEPENDENCY_FILE_NAME = "gemnasium-maven-plugin.json";
 
-    public void execute() throws MojoExecutionException {
-        super.execute();
+    private static final String AGGREGATOR_KEY = SendDependenciesMojo.class.getName() + ".aggregator";
+    private static final String SPOOL_COUNTDOWN_KEY = SendDependenciesMojo.class.getName() + ".spoolCountdown";
+    private static final String SPOOL_SENT_KEY = SendDependenciesMojo.class.getName() + ".spoolSent";
+
+    // Connect and read timeout of the upload agent, in ms
+    private static final int AGENT_TIMEOUT = 10000;
+
+    /**
+     * Collects the dependencies of every module of the reactor and sends them
+     * in a single request once the last module is done, instead of one request per module.
+     */
+    @Parameter(property = "aggregate", defaultValue = "false")
+    private boolean aggregate;
+
+    /**
+     * Sends the dependencies even if they haven't changed since the last upload.
+     */
+    @Parameter(property = "force", defaultValue = "false")
+    private boolean force;
+
+    /**
+     * Sends only the changes since the last upload to the deltaEndpoint,
+     * instead of the whole dependency files.
+     */
+    @Parameter(property = "delta", defaultValue = "false")
+    private boolean delta;
+
+    /**
+     * Path of the API endpoint receiving the changes, {projectSlug} is replaced by the project slug.
+     */
+    @Parameter(property = "deltaEndpoint")
+    private String deltaEndpoint;
+
+    /**
+     * Sends the dependencies in the background and lets the build go on.
+     * The await goal waits for the upload and fails the build if it failed, otherwise the build
+     * waits for the uploads still running when it ends and only logs their failures.
+     */
+    @Parameter(property = "async", defaultValue = "false")
+    private boolean async;
+
+    /**
+     * Maximum number of concurrent background uploads.
+     */
+    @Parameter(property = "asyncThreads", defaultValue = "4")
+    private int asyncThreads;
+
+    /**
+     * Spools the dependencies on disk instead of failing when the API can't be reached.
+     * The spool is sent by the flush goal, or after the next successful upload.
+     */
+    @Parameter(property = "spool", defaultValue = "false")
+    private boolean spool;
+
+    /**
+     * Address of a running upload agent, host:port, started with the agent goal.
+     * The dependencies are handed over to the agent, which uploads them in batches with the ones of other builds
+     * using its own API key. The build authenticates with the token the agent writes in the cacheDir,
+     * so the agent must run as the same user. They are sent directly if the agent is unreachable.
+     */
+    @Parameter(property = "agentAddress")
+    private String agentAddress;
+
+    /**
+     * Maximum size in bytes of the Base64 content of a dependency file, larger files are sent
+     * as several dependency files in the same request. 0 sends every file whole.
+     */
+    @Parameter(property = "maxContentSize", defaultValue = "0")
+    private long maxContentSize;
+
+    /**
+     * Number of threads encoding the parts of split dependency files while the request is being sent.
+     */
+    @Parameter(property = "partThreads", defaultValue = "4")
+    private int partThreads;
+
+    // Uploads of this execution still running, the execution itself included, see spoolUploadDone
+    private final AtomicInteger spoolPending = new AtomicInteger(1);
+
+    protected void executeGoal() throws MojoExecutionException {
         sendDependencies();
     }
 
     public void sendDependencies() throws MojoExecutionException {
+        // Counts the executions of the reactor from the start, so that failed modules are accounted for
+        ReactorCountdown spoolCountdown = spool ? getSpoolCountdown() : null;
+        try {
+            if (aggregate) {
+                aggregateDependencies();
+                return;
+            }
+
+            ArrayNode jsonDependencies = getJsonDependencies();
+            upload(config, Collections.singletonList(new DependencyFile(DEPENDENCY_FILE_NAME, jsonDependencies)));
+        } finally {
+            if (spoolCountdown != null) {
+                spoolUploadDone(spoolCountdown);
+            }
+        }
+    }
+
+    /**
+     * Registers this module's dependencies and sends the dependencies of all the reactor
+     * modules if this module is the last one running the goal.
+     * A module failing to collect its dependencies doesn't hold back the upload of the others,
+     * and if the last modules fail or are skipped before running the goal, the dependencies collected
+     * are sent when Maven reports them.
+     */
+    private void aggregateDependencies() throws MojoExecutionException {
+        DependencyFilesAggregator aggregator = SessionUtils.getOrCreate(session, AGGREGATOR_KEY,
+                new Callable<DependencyFilesAggregator>() {
+                    public DependencyFilesAggregator call() throws MojoExecutionException {
+                        ReactorCountdown countdown = getReactorCountdown(AGGREGATOR_KEY + ".countdown",
+                                "The aggregated dependencies were not sent");
+                        final DependencyFilesAggregator aggregator = new DependencyFilesAggregator(countdown);
+                        countdown.setEndedAction(new Runnable() {
+                            public void run() {
+                                getLog().warn("The last modules of the reactor failed or were skipped, "
+                                        + "sending the dependencies collected so far");
+                                sendAggregatedDependencies(aggregator);
+                            }
+                        });
+                        return aggregator;
+                    }
+                });
 
-        String content = new String();
+        long start = System.currentTimeMillis();
+        DependencyFile file = null;
+        MojoExecutionException failure = null;
         try {
-            ArrayNode jsonDependencies = ProjectsUtils.getJsonDependencies(getAllDependencies(),
-                    getDirectDependencies());
-            content = ProjectsUtils.getDependencyFileContent(jsonDependencies);
-        } catch (JsonProcessingException e) {
-            throw new MojoExecutionException("send-dependencies failed, can't get project dependencies", e);
+            ArrayNode jsonDependencies = getJsonDependencies();
+            if (jsonDependencies.size() > 0) {
+                file = new DependencyFile(getModulePath() + DEPENDENCY_FILE_NAME, jsonDependencies);
+            }
+        } catch (MojoExecutionException e) {
+            failure = e;
+        }
+        if (!aggregator.moduleDone(project.getId(), config, file, System.currentTimeMillis() - start)) {
+            if (failure != null) {
+                throw failure;
+            }
+            getLog().info("Dependencies collected, they will be sent with the last module of the reactor");
+            return;
         }
 
-        ObjectMapper mapper = new ObjectMapper();
-        ArrayNode arrayNode = mapper.createArrayNode();
-        ObjectNode jsonNode = mapper.createObjectNode();
-        jsonNode.put("path", DEPENDENCY_FILE_NAME);
-        jsonNode.put("content", content);
-        arrayNode.add(jsonNode);
-        String requestBody = arrayNode.toString();
+        getLog().info("Dependencies of " + aggregator.getDoneModules() + " modules collected in "
+                + aggregator.getCollectTime() + " ms");
+        for (DependencyFilesAggregator.Group group : aggregator.getGroups()) {
+            upload(group.getConfig(), group.getFiles());
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
 
-        URL url;
+    /**
+     * Sends the aggregated dependencies once the last modules failed or were skipped.
+     * The build goes on or is over already, failures are logged.
+     */
+    private void sendAggregatedDependencies(DependencyFilesAggregator aggregator) {
+        for (DependencyFilesAggregator.Group group : aggregator.getGroups()) {
+            try {
+                uploadAndReport(group.getConfig(), group.getFiles());
+            } catch (MojoExecutionException e) {
+                getLog().error("Can't send the aggregated dependencies of " + group.getConfig().getProjectSlug()
+                        + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Uploads dependency files, in the background if the async option is enabled.
+     * @param config The configuration of the project receiving the files.
+     * @param files The dependency files.
+     * @throws MojoExecutionException if the files can't be sent
+     */
+    private void upload(final Config config, final List<DependencyFile> files) throws MojoExecutionException {
+        if (agentAddress != null && !agentAddress.isEmpty() && sendToAgent(config, files)) {
+            return;
+        }
+        if (!async) {
+            uploadAndReport(config, files);
+            return;
+        }
+
+        UploadTasks tasks = SessionUtils.getOrCreate(session, UploadTasks.SESSION_KEY, new Callable<UploadTasks>() {
+            public UploadTasks call() {
+                UploadTasks tasks = new UploadTasks(asyncThreads);
+                tasks.awaitOnSessionEnd(session, getLog());
+                return tasks;
+            }
+        });
+        // The upload is recorded in the metrics of this execution, they reach the summary when it's done
+        final Metrics metrics = Metrics.current();
+        final ReactorCountdown spoolCountdown = spool ? getSpoolCountdown() : null;
+        if (spoolCountdown != null) {
+            spoolPending.incrementAndGet();
+        }
+        tasks.submit(config.getProjectSlug() + " (" + project.getArtifactId() + ")", new Callable<Void>() {
+            public Void call() throws MojoExecutionException {
+                Metrics previous = Metrics.attach(metrics);
+                try {
+                    uploadAndReport(config, files);
+                } finally {
+                    Metrics.detach(previous);
+                    if (spoolCountdown != null) {
+                        spoolUploadDone(spoolCountdown);
+                    }
+                }
+                return null;
+            }
+        });
+        getLog().info("Dependencies are being sent in the background, the await goal waits for the upload to complete");
+    }
 
+    /**
+     * Hands dependency files over to the upload agent.
+     * @param config The configuration of the project receiving the files.
+     * @param files The dependency files.
+     * @return false if the agent is unreachable and the files must be sent directly
+     * @throws MojoExecutionException if the project slug is missing
+     */
+    private boolean sendToAgent(Config config, List<DependencyFile> files) throws MojoExecutionException {
+        if (config.getProjectSlug() == null || config.getProjectSlug().isEmpty()) {
+            throw new MojoExecutionException("send-dependencies failed, please provide the projectSlug option.");
+        }
+        ObjectNode payload = ApiClient.MAPPER.createObjectNode();
+        payload.put("apiBaseUrl", config.getApiBaseUrl());
+        payload.put("projectSlug", config.getProjectSlug());
+        payload.put("branch", config.getProjectBranch());
+        payload.put("revision", config.getProjectRevision());
+        ArrayNode jsonFiles = payload.putArray("files");
+        for (DependencyFile file : files) {
+            ObjectNode jsonFile = jsonFiles.addObject();
+            jsonFile.put("path", file.getPath());
+            jsonFile.set("dependencies", file.getJsonDependencies());
+        }
+
+        long start = System.currentTimeMillis();
+        String status;
         try {
-            url = new URL(config.getApiBaseUrl() + "/projects/" + config.getProjectSlug() + "/dependency_files");
-        } catch (MalformedURLException e) {
-            throw new MojoExecutionException(
-                    "send-dependencies failed, invalid parameters baseUrl or teamSlug, can't forge URL");
+            status = UploadAgent.send(agentAddress, cacheDir, payload, AGENT_TIMEOUT);
+        } catch (IOException e) {
+            getLog().warn("Can't hand the dependencies over to the upload agent at " + agentAddress
+                    + ", sending them directly: " + e.getMessage());
+            return false;
+        }
+        if (UploadAgent.DUPLICATE.equals(status)) {
+            getLog().info("Dependencies already queued or sent by the upload agent, skipping");
+        } else {
+            getLog().info("Dependencies handed over to the upload agent in " + (System.currentTimeMillis() - start)
+                    + " ms, they will be sent with the next batch");
+        }
+        return true;
+    }
+
+    private void uploadAndReport(Config config, List<DependencyFile> files) throws MojoExecutionException {
+        long uploadStart = System.currentTimeMillis();
+        String commitSha = uploadDependencyFiles(config, files);
+        long elapsed = System.currentTimeMillis() - uploadStart;
+        if (commitSha == null) {
+            return;
+        }
+        if (files.size() == 1) {
+            getLog().info("Dependencies processed in " + elapsed + " ms");
+        } else {
+            getLog().info(files.size() + " dependency files processed in a single request in " + elapsed
+                    + " ms (instead of " + files.size() + " requests)");
         }
+        printCommitUrl(config.getProjectSlug(), commitSha);
+    }
+
+    /**
+     * @return the path of the current module relative to the execution root, with a trailing slash
+     */
+    private String getModulePath() {
+        Path root = Paths.get(session.getExecutionRootDirectory()).toAbsolutePath();
+        Path modulePath = root.relativize(config.getBaseDir().toPath().toAbsolutePath());
+        String path = modulePath.toString().replace('\\', '/');
+        return path.isEmpty() ? "" : path + "/";
+    }
 
-        HttpsURLConnection conn;
-        OutputStream os;
+    /**
+     * Sends dependency files unless they are identical to the last successful upload
+     * of the same project branch.
+     * @param config The configuration of the project receiving the files.
+     * @param files The dependency files.
+     * @return the sha of the commit created by the API, or the one of the last upload if skipped,
+     * null if the files were spooled
+     * @throws MojoExecutionException if the files can't be sent
+     */
+    private String uploadDependencyFiles(Config config, List<DependencyFile> files) throws MojoExecutionException {
+        if (config.getProjectSlug() == null || config.getProjectSlug().isEmpty()) {
+            throw new MojoExecutionException("send-dependencies failed, please provide the projectSlug option.");
+        }
+
+        long start = System.currentTimeMillis();
+        // Modules sharing a project are cached apart, the aggregated upload as a whole
+        String sender = aggregate ? "reactor" : project.getGroupId() + ":" + project.getArtifactId();
+        UploadCache cache = new UploadCache(cacheDir, config.getApiBaseUrl(), config.getProjectSlug(),
+                config.getProjectBranch(), sender);
+        String fingerprint = UploadCache.fingerprint(files);
+        if (!force) {
+            String commitSha = cache.getCommitSha(fingerprint);
+            if (commitSha != null) {
+                getLog().info("Dependencies haven't changed since the last upload, skipping (use -Dforce=true to send them anyway)");
+                return commitSha;
+            }
+        }
+
+        String commitSha = null;
         try {
-            conn = (HttpsURLConnection) url.openConnection();
-            conn.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
-            conn.setDoOutput(true);
-            conn.setDoInput(true);
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Authorization", "Basic " + AuthUtils.getEncodedBasicToken(config.getApiKey()));
+            Map<String, ArrayNode> snapshot = cache.getLastSnapshot();
+            if (snapshot != null) {
+                List<DependencyDiff> diffs = getDiffs(snapshot, files);
+                String baseCommitSha = cache.getLastCommitSha();
+                if (delta && baseCommitSha != null) {
+                    commitSha = sendDelta(config, baseCommitSha, diffs);
+                }
+            }
+            if (commitSha == null) {
+                commitSha = sendDependencyFiles(config, files);
+            }
+        } catch (IOException e) {
+            if (!spool) {
+                throw getApiFailure("send-dependencies", e);
+            }
+            spoolDependencyFiles(config, files, start, e);
+            return null;
+        }
+        if (spool) {
+            getSpoolSent().put(
+                    UploadSpool.key(config.getApiBaseUrl(), config.getProjectSlug(), config.getProjectBranch()), start);
+        }
 
-            // TODO: Try to fetch branch and revision headers from git if not provided
-            if (config.getProjectBranch() != null && !config.getProjectBranch().isEmpty()) {
-                conn.setRequestProperty("X-Gms-Branch", config.getProjectBranch());
+        try {
+            cache.store(fingerprint, commitSha, files);
+        } catch (IOException e) {
+            getLog().warn("Can't store the upload in the local cache: " + e.getMessage());
+        }
+        return commitSha;
+    }
+
+    /**
+     * Compares dependency files with the ones of the last upload and reports the differences.
+     * @param snapshot The dependencies of the last upload indexed by file path.
+     * @param files The dependency files.
+     * @return the diff of every file, including removed files
+     */
+    private List<DependencyDiff> getDiffs(Map<String, ArrayNode> snapshot, List<DependencyFile> files) {
+        List<DependencyDiff> diffs = DependencyDiff.compareFiles(snapshot, files);
+        getLog().info("Changes since the last upload:");
+        for (DependencyDiff diff : diffs) {
+            if (diff.isEmpty()) {
+                continue;
             }
-            if (config.getProjectRevision() != null && !config.getProjectRevision().isEmpty()) {
-                conn.setRequestProperty("X-Gms-Revision", config.getProjectRevision());
+            getLog().info(diff.getPath() + ": " + diff.getAdded().size() + " added, " + diff.getRemoved().size()
+                    + " removed, " + diff.getChanged().size() + " changed");
+            for (String line : diff.getReport()) {
+                getLog().info("\t" + line);
             }
+        }
+        return diffs;
+    }
 
-            os = conn.getOutputStream();
+    /**
+     * Sends the changes since the last upload to the delta endpoint.
+     * @param config The configuration of the project receiving the changes.
+     * @param baseCommitSha The commit sha of the last upload.
+     * @param diffs The changes.
+     * @return the sha of the commit created by the API
+     * @throws IOException if the API call fails
+     * @throws MojoExecutionException if the delta endpoint is missing or no commit was created
+     */
+    private String sendDelta(Config config, String baseCommitSha, List<DependencyDiff> diffs)
+            throws IOException, MojoExecutionException {
+        if (deltaEndpoint == null || deltaEndpoint.isEmpty()) {
+            throw new MojoExecutionException("send-dependencies failed, please provide the deltaEndpoint option.");
+        }
 
-            os.write(requestBody.getBytes("UTF-8"));
-            os.close();
-        } catch (IOException e) {
-            throw new MojoExecutionException("send-dependencies failed, can't connect to Gemnasium API", e);
+        return postForCommitSha(config, deltaEndpoint.replace("{projectSlug}", config.getProjectSlug()),
+                ApiClient.jsonBody(DependencyDiff.getDeltaPayload(baseCommitSha, diffs)));
+    }
+
+    /**
+     * Sends dependency files to the Gemnasium API.
+     * @param config The configuration of the project receiving the files.
+     * @param files The dependency files.
+     * @return the sha of the commit created by the API
+     * @throws IOException if the API call fails
+     * @throws MojoExecutionException if no commit was created
+     */
+    private String sendDependencyFiles(Config config, List<DependencyFile> files)
+            throws IOException, MojoExecutionException {
+        final List<DependencyFile> parts = splitDependencyFiles(files);
+        ApiClient.RequestBody requestBody = new ApiClient.RequestBody() {
+            public long getLength() {
+                return -1;
+            }
+
+            public void writeTo(OutputStream os) throws IOException {
+                // Retries write the same parts again
+                ProjectsUtils.writeDependencyFiles(parts, os, parts.size() > 1 ? partThreads : 1);
+            }
+        };
+
+        return postForCommitSha(config, getDependencyFilesPath(config), requestBody);
+    }
+
+    /**
+     * Splits the dependency files larger than maxContentSize, see {@link ProjectsUtils#splitDependencyFiles}.
+     * @param files The dependency files.
+     * @return the files to send
+     * @throws IOException if the files can't be split
+     */
+    private List<DependencyFile> splitDependencyFiles(List<DependencyFile> files) throws IOException {
+        List<DependencyFile> parts = ProjectsUtils.splitDependencyFiles(files, maxContentSize);
+        if (parts.size() > files.size()) {
+            getLog().info("Dependency files larger than " + maxContentSize + " bytes are split, sending "
+                    + parts.size() + " files");
+            Metrics.count("dependency-file-parts", parts.size());
         }
+        return parts;
+    }
+
+    private String getDependencyFilesPath(Config config) {
+        return "/projects/" + config.getProjectSlug() + "/dependency_files";
+    }
 
-        InputStream is = null;
+    /**
+     * Writes dependency files to the upload spool, as a full upload, when the API can't be reached.
+     * @param config The configuration of the project receiving the files.
+     * @param files The dependency files.
+     * @param time The time of the failed upload.
+     * @param failure The API failure.
+     * @throws MojoExecutionException if the files can't be spooled either
+     */
+    private void spoolDependencyFiles(Config config, List<DependencyFile> files, long time, IOException failure)
+            throws MojoExecutionException {
         try {
-            is = conn.getInputStream();
-        } catch (IOException ioe) {
-            try {
-                if (conn.getResponseCode() != 200) {
-                    is = conn.getErrorStream();
-                    JsonNode node = mapper.readTree(is);
-                    throw new MojoExecutionException(
-                            "send-dependencies failed, API Error: " + node.get("message").asText());
-                }
-            } catch (IOException e) {
-                throw new MojoExecutionException("send-dependencies failed, API Error", e);
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            List<DependencyFile> parts = splitDependencyFiles(files);
+            ProjectsUtils.writeDependencyFiles(parts, body, parts.size() > 1 ? partThreads : 1);
+            getUploadSpool().append(new UploadSpool.Entry(config.getApiBaseUrl(), getDependencyFilesPath(config),
+                    config.getProjectSlug(), config.getProjectBranch(), config.getProjectRevision(), time,
+                    body.toByteArray()));
+        } catch (IOException e) {
+            MojoExecutionException exception = getApiFailure("send-dependencies", failure);
+            getLog().error("Can't spool the dependencies: " + e.getMessage());
+            throw exception;
+        }
+        Metrics.count("spooled", 1);
+        getLog().warn(getApiFailure("send-dependencies", failure).getMessage());
+        getLog().warn("Dependencies spooled, they will be sent by the flush goal or after the next successful upload");
+    }
+
+    // Times of the successful uploads of the reactor, by project branch, see UploadSpool.key
+    private ConcurrentMap<String, Long> getSpoolSent() throws MojoExecutionException {
+        return SessionUtils.getOrCreate(session, SPOOL_SENT_KEY, new Callable<ConcurrentMap<String, Long>>() {
+            public ConcurrentMap<String, Long> call() {
+                return new ConcurrentHashMap<String, Long>();
             }
+        });
+    }
+
+    private ReactorCountdown getSpoolCountdown() throws MojoExecutionException {
+        ReactorCountdown countdown = getReactorCountdown(SPOOL_COUNTDOWN_KEY, "The spooled dependencies were not sent");
+        countdown.setEndedAction(new Runnable() {
+            public void run() {
+                flushSpoolAfterReactor();
+            }
+        });
+        return countdown;
+    }
+
+    /**
+     * Counts down an upload of this execution, and sends the spooled uploads once every execution
+     * of the reactor is done with its uploads, so that the uploads of this build supersede the spooled ones.
+     * @param countdown The executions of the reactor.
+     */
+    private void spoolUploadDone(ReactorCountdown countdown) {
+        if (spoolPending.decrementAndGet() > 0 || !countdown.executionDone(project.getId())) {
+            return;
         }
+        flushSpoolAfterReactor();
+    }
 
-        // Parses JSON response to find the created commit's sha
-        JsonNode node;
+    private void flushSpoolAfterReactor() {
         try {
-            node = mapper.readTree(is);
-        } catch (IOException ioe) {
-            throw new MojoExecutionException("send-dependencies failed, malformed API response");
+            flushSpool(getSpoolSent());
+        } catch (MojoExecutionException e) {
+            getLog().warn("Can't send the spooled dependencies: " + e.getMessage());
+        }
+    }
+
+    // Posts to an upload endpoint and parses JSON response to find the created commit's sha
+    private String postForCommitSha(Config config, String path, ApiClient.RequestBody requestBody)
+            throws IOException, MojoExecutionException {
+        Map<String, String> headers = new HashMap<String, String>();
+        // Branch and revision default to the ones checked out in the git repository, see Config
+        if (config.getProjectBranch() != null && !config.getProjectBranch().isEmpty()) {
+            headers.put("X-Gms-Branch", config.getProjectBranch());
+        }
+        if (config.getProjectRevision() != null && !config.getProjectRevision().isEmpty()) {
+            headers.put("X-Gms-Revision", config.getProjectRevision());
         }
 
-        if (node.get("commit_sha") == null || node.get("commit_sha").asText().isEmpty()) {
+        // Modules of the reactor may use their own API and key
+        JsonNode node = getApiClient(config.getApiBaseUrl(), getAuthorization(config))
+                .execute("POST", path, headers, requestBody).getBody();
+        if (node == null || node.get("commit_sha") == null || node.get("commit_sha").asText().isEmpty()) {
             throw new MojoExecutionException("send-dependencies failed, no new commit was returned by the API");
         }
 
-        String commitSha = node.get("commit_sha").asText();
-        String projectUrl = config.getUIBaseUrl() + "/projects/" + config.getProjectSlug() + "/commits/" + commitSha;
+        return node.get("commit_sha").asText();
+    }
+
+    private void printCommitUrl(String projectSlug, String commitSha) {
+        String projectUrl = config.getUIBaseUrl() + "/projects/" + projectSlug + "/commits/" + commitSha;
         getLog().info(
                 "Your project's dependencies have been successfully sent to Gemnasium and a new revision has been created:");
         getLog().info(projectUrl);
@@ -0,0 +1,49 @@
+package com.gemnasium;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.gemnasium.utils.DependencyLock;
+import com.gemnasium.utils.Metrics;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Sends the dependencies of the lockfile written by lock-dependencies, without resolving them.
+ * Fails if the effective pom changed since the lockfile was written.
+ * All the options of send-dependencies apply.
+ */
+@Mojo(name = "send-locked-dependencies", threadSafe = true)
+public class SendLockedDependenciesMojo extends SendDependenciesMojo {
+
+    @Parameter(property = "lockFile", defaultValue = "${basedir}/" + LockDependenciesMojo.LOCK_FILE_NAME)
+    private File lockFile;
+
+    @Override
+    protected ArrayNode getJsonDependencies() throws MojoExecutionException {
+        DependencyLock lock;
+        Metrics.enter("lockfile");
+        try {
+            lock = DependencyLock.read(lockFile);
+        } catch (IOException e) {
+            throw new MojoExecutionException("send-locked-dependencies failed, can't read " + lockFile + ": "
+                    + e.getMessage(), e);
+        } finally {
+            Metrics.exit();
+        }
+        if (lock == null) {
+            throw new MojoExecutionException("send-locked-dependencies failed, no lockfile " + lockFile
+                    + ", run lock-dependencies first");
+        }
+        String pomHash = DependencyLock.hash(project, session.getProjects(), config.getIgnoredScopes());
+        if (!lock.getPomHash().equals(pomHash)) {
+            throw new MojoExecutionException("send-locked-dependencies failed, the pom changed since " + lockFile
+                    + " was written, run lock-dependencies again or use send-dependencies");
+        }
+        Metrics.count("artifacts", lock.getDependencies().size());
+        return lock.getDependencies();
+    }
+}
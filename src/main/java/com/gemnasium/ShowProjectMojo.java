@@ -1,75 +1,204 @@
 package com.gemnasium;
 
-import com.gemnasium.utils.AuthUtils;
-
-import java.io.InputStream;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import javax.net.ssl.HttpsURLConnection;
+import com.gemnasium.utils.ApiClient;
+import com.gemnasium.utils.Metrics;
+import com.gemnasium.utils.ProjectCache;
+
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
 
 /**
  * Shows project info
  */
-@Mojo(name = "show-project", defaultPhase = LifecyclePhase.PROCESS_SOURCES)
+@Mojo(name = "show-project", defaultPhase = LifecyclePhase.PROCESS_SOURCES, threadSafe = true)
 public class ShowProjectMojo extends AbstractMainMojo {
 
-    public void execute() throws MojoExecutionException {
-        super.execute();
-        showProject();
+    /**
+     * Comma separated list of project slugs to show instead of the module project.
+     */
+    @Parameter(property = "projectSlugs")
+    private String projectSlugs;
+
+    /**
+     * Shows the projects of all the modules of the reactor at once.
+     */
+    @Parameter(property = "reactor", defaultValue = "false")
+    private boolean reactor;
+
+    // Maximum number of projects fetched concurrently
+    @Parameter(property = "fetchThreads", defaultValue = "8")
+    private int fetchThreads;
+
+    // Time during which a fetched project is shown without asking the API, in ms, 0 to always revalidate it
+    @Parameter(property = "projectCacheTtl", defaultValue = "0")
+    private long projectCacheTtl;
+
+    private final AtomicInteger cacheHits = new AtomicInteger();
+    private final AtomicInteger revalidations = new AtomicInteger();
+
+    protected void executeGoal() throws MojoExecutionException {
+        showProjects();
     }
 
-    private void showProject() throws MojoExecutionException {
-        String projectSlug = config.getProjectSlug();
-        if (projectSlug == null || projectSlug.isEmpty()) {
-            throw new MojoExecutionException("show-project failed, please provide the projectSlug option.");
+    private void showProjects() throws MojoExecutionException {
+        boolean multiple = reactor || (projectSlugs != null && !projectSlugs.trim().isEmpty());
+        // Several projects are shown once for the whole build, by the first module
+        if (multiple && project != session.getProjects().get(0)) {
+            getLog().info("Projects already shown for the reactor, skipping.");
+            return;
         }
 
-        URL url;
-        try {
-            url = new URL(config.getApiBaseUrl() + "/projects/" + projectSlug);
-        } catch (MalformedURLException e) {
-            throw new MojoExecutionException(
-                    "create-project failed, invalid parameters baseUrl or teamSlug, can't forge URL");
+        Set<String> slugs = new LinkedHashSet<String>();
+        if (projectSlugs != null && !projectSlugs.trim().isEmpty()) {
+            slugs.addAll(Arrays.asList(projectSlugs.trim().split("\\s*,\\s*")));
+        }
+        if (reactor) {
+            for (MavenProject module : session.getProjects()) {
+                String slug = getConfig(module.getBasedir()).getProjectSlug();
+                if (slug != null && !slug.isEmpty()) {
+                    slugs.add(slug);
+                }
+            }
+        }
+        if (!multiple) {
+            String projectSlug = config.getProjectSlug();
+            if (projectSlug == null || projectSlug.isEmpty()) {
+                throw new MojoExecutionException("show-project failed, please provide the projectSlug option.");
+            }
+            slugs.add(projectSlug);
+        }
+        if (slugs.isEmpty()) {
+            getLog().info("No project to show.");
+            return;
         }
 
-        HttpsURLConnection conn;
+        long start = System.currentTimeMillis();
+        Map<String, Future<JsonNode>> projects = fetchProjects(new ArrayList<String>(slugs));
+        List<String> failures = new ArrayList<String>();
+        MojoExecutionException failure = null;
+        for (Map.Entry<String, Future<JsonNode>> entry : projects.entrySet()) {
+            String goal = slugs.size() == 1 ? "show-project" : "show-project " + entry.getKey();
+            try {
+                printProject(entry.getValue().get());
+            } catch (ExecutionException e) {
+                MojoExecutionException exception = e.getCause() instanceof IOException
+                        ? getApiFailure(goal, (IOException) e.getCause())
+                        : new MojoExecutionException(goal + " failed", e.getCause());
+                getLog().error(exception.getMessage());
+                failures.add(entry.getKey());
+                failure = exception;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("show-project failed, interrupted while fetching projects", e);
+            } catch (MojoExecutionException e) {
+                getLog().error(e.getMessage());
+                failures.add(entry.getKey());
+                failure = e;
+            }
+        }
+        if (slugs.size() > 1) {
+            getLog().info(slugs.size() + " project(s) fetched in " + (System.currentTimeMillis() - start) + " ms ("
+                    + cacheHits.get() + " from cache, " + revalidations.get() + " not modified)");
+        }
+        if (failure != null) {
+            if (failures.size() == 1 && slugs.size() == 1) {
+                throw failure;
+            }
+            throw new MojoExecutionException("show-project failed for " + failures, failure);
+        }
+    }
+
+    /**
+     * Fetches projects concurrently, with at most fetchThreads requests at a time on the shared API client.
+     * @param slugs The project slugs.
+     * @return the pending projects indexed by slug, in the order of the given slugs
+     */
+    private Map<String, Future<JsonNode>> fetchProjects(List<String> slugs) throws MojoExecutionException {
+        String authorization = getAuthorization(config);
+        final ApiClient client = getApiClient(config.getApiBaseUrl(), authorization);
+        final ProjectCache cache = new ProjectCache(cacheDir, config.getApiBaseUrl(), authorization, projectCacheTtl);
+        final Metrics metrics = Metrics.current();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(fetchThreads, slugs.size())));
         try {
-            conn = (HttpsURLConnection) url.openConnection();
+            Map<String, Future<JsonNode>> projects = new LinkedHashMap<String, Future<JsonNode>>();
+            for (final String slug : slugs) {
+                projects.put(slug, executor.submit(new Callable<JsonNode>() {
+                    public JsonNode call() throws IOException {
+                        Metrics previous = Metrics.attach(metrics);
+                        try {
+                            return fetchProject(client, cache, slug);
+                        } finally {
+                            Metrics.detach(previous);
+                        }
+                    }
+                }));
+            }
+            return projects;
+        } finally {
+            // Already submitted fetches still run
+            executor.shutdown();
+        }
+    }
 
-            conn.setRequestProperty("Authorization", "Basic " + AuthUtils.getEncodedBasicToken(config.getApiKey()));
-        } catch (IOException e) {
-            throw new MojoExecutionException("show-project failed, can't connect to Gemnasium API.", e);
+    private JsonNode fetchProject(ApiClient client, ProjectCache cache, String slug) throws IOException {
+        ProjectCache.Entry cached = cache.get(slug);
+        if (cached != null && cache.isFresh(cached)) {
+            cacheHits.incrementAndGet();
+            Metrics.count("cache-hits", 1);
+            return cached.getProject();
         }
 
-        InputStream is = null;
+        Map<String, String> headers = Collections.<String, String>emptyMap();
+        if (cached != null && cached.getEtag() != null) {
+            headers = Collections.singletonMap("If-None-Match", cached.getEtag());
+        }
+        ApiClient.Response response = client.execute("GET", "/projects/" + slug, headers, null);
+        JsonNode project;
+        String etag;
+        if (response.getStatus() == 304 && cached != null) {
+            revalidations.incrementAndGet();
+            Metrics.count("cache-revalidations", 1);
+            project = cached.getProject();
+            etag = cached.getEtag();
+        } else {
+            project = response.getBody();
+            etag = response.getHeader("ETag");
+        }
+
+        if (project == null) {
+            return null;
+        }
         try {
-            is = conn.getInputStream();
-        } catch (IOException ioe) {
-            try {
-                if (conn.getResponseCode() != 200) {
-                    is = conn.getErrorStream();
-                    ObjectMapper mapper = new ObjectMapper();
-                    JsonNode node = mapper.readTree(is);
-                    throw new MojoExecutionException("show-project failed, API Error: " + node.get("message").asText());
-                }
-                throw new MojoExecutionException("show-project failed, API Error");
-            } catch (IOException e) {
-                throw new MojoExecutionException("show-project failed, API Error");
-            }
+            cache.put(slug, project, etag);
+        } catch (IOException e) {
+            getLog().debug("Can't cache project " + slug + ": " + e.getMessage());
         }
+        return project;
+    }
 
+    private void printProject(JsonNode node) throws MojoExecutionException {
         // Parses JSON response to find project attributes
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode node;
         try {
-            node = mapper.readTree(is);
             getLog().info("Project Info for: " + node.get("name").asText());
             getLog().info("");
             getLog().info("\t slug: " + node.get("slug").asText());
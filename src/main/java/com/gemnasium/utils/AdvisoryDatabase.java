@@ -0,0 +1,385 @@
+package com.gemnasium.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.maven.artifact.versioning.ArtifactVersion;
+import org.apache.maven.artifact.versioning.ComparableVersion;
+import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
+import org.apache.maven.artifact.versioning.Restriction;
+import org.apache.maven.artifact.versioning.VersionRange;
+
+/**
+ * Local database of security advisories, indexed for fast lookups by artifact version.
+ *
+ * Advisories are read from a JSON file or from all the JSON files of a directory, each holding an advisory,
+ * an array of advisories or an object with an "advisories" array. Advisories follow the gemnasium-db fields:
+ * identifier, title, package_slug (maven/groupId/artifactId), affected_range (Maven version range),
+ * fixed_versions and urls.
+ *
+ * The affected ranges of each groupId:artifactId are compiled into an interval index: the sorted
+ * range bounds split the versions into elementary segments, each knowing the advisories covering it,
+ * so that a lookup is a binary search. The segments are filled in a single sweep over the bounds.
+ */
+public class AdvisoryDatabase {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String MAVEN_SLUG_PREFIX = "maven/";
+
+    private final Map<String, VersionIndex> indexes;
+    private final int size;
+    private final List<String> errors;
+
+    private AdvisoryDatabase(Map<String, VersionIndex> indexes, int size, List<String> errors) {
+        this.indexes = indexes;
+        this.size = size;
+        this.errors = errors;
+    }
+
+    /**
+     * A security advisory.
+     */
+    public static class Advisory {
+
+        private final String identifier;
+        private final String title;
+        private final String groupId;
+        private final String artifactId;
+        private final String affectedRange;
+        private final List<String> fixedVersions;
+        private final List<String> urls;
+
+        Advisory(String identifier, String title, String groupId, String artifactId, String affectedRange,
+                List<String> fixedVersions, List<String> urls) {
+            this.identifier = identifier;
+            this.title = title;
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.affectedRange = affectedRange;
+            this.fixedVersions = fixedVersions;
+            this.urls = urls;
+        }
+
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getGroupId() {
+            return groupId;
+        }
+
+        public String getArtifactId() {
+            return artifactId;
+        }
+
+        public String getAffectedRange() {
+            return affectedRange;
+        }
+
+        public List<String> getFixedVersions() {
+            return fixedVersions;
+        }
+
+        public List<String> getUrls() {
+            return urls;
+        }
+    }
+
+    /**
+     * A version interval affected by an advisory, null bounds are unbounded.
+     */
+    private static class Interval {
+
+        private final Advisory advisory;
+        private final ComparableVersion lower;
+        private final boolean lowerInclusive;
+        private final ComparableVersion upper;
+        private final boolean upperInclusive;
+
+        Interval(Advisory advisory, ComparableVersion lower, boolean lowerInclusive, ComparableVersion upper,
+                boolean upperInclusive) {
+            this.advisory = advisory;
+            this.lower = lower;
+            this.lowerInclusive = lowerInclusive;
+            this.upper = upper;
+            this.upperInclusive = upperInclusive;
+        }
+    }
+
+    /**
+     * Interval index of the advisories of a groupId:artifactId.
+     * Segment 2i+1 is the bound i, segment 2i the versions between bounds i-1 and i.
+     */
+    private static class VersionIndex {
+
+        private final ComparableVersion[] bounds;
+        private final Advisory[][] segments;
+
+        VersionIndex(List<Interval> intervals) {
+            TreeSet<ComparableVersion> sortedBounds = new TreeSet<ComparableVersion>();
+            for (Interval interval : intervals) {
+                if (interval.lower != null) {
+                    sortedBounds.add(interval.lower);
+                }
+                if (interval.upper != null) {
+                    sortedBounds.add(interval.upper);
+                }
+            }
+            bounds = sortedBounds.toArray(new ComparableVersion[sortedBounds.size()]);
+
+            // Each interval starts covering at its first segment and stops after its last one
+            int segmentCount = 2 * bounds.length + 1;
+            List<List<Advisory>> starts = new ArrayList<List<Advisory>>(Collections.<List<Advisory>>nCopies(
+                    segmentCount + 1, null));
+            List<List<Advisory>> ends = new ArrayList<List<Advisory>>(starts);
+            for (Interval interval : intervals) {
+                int from = interval.lower == null ? 0
+                        : 2 * Arrays.binarySearch(bounds, interval.lower) + (interval.lowerInclusive ? 1 : 2);
+                int to = interval.upper == null ? 2 * bounds.length
+                        : 2 * Arrays.binarySearch(bounds, interval.upper) + (interval.upperInclusive ? 1 : 0);
+                if (from > to) {
+                    continue;
+                }
+                addAt(starts, from, interval.advisory);
+                addAt(ends, to + 1, interval.advisory);
+            }
+
+            // Sweeps the segments, counting the intervals of each advisory covering the current one:
+            // ranges made of several intervals may cover a segment more than once
+            segments = new Advisory[segmentCount][];
+            Map<Advisory, Integer> covering = new LinkedHashMap<Advisory, Integer>();
+            Advisory[] advisories = null;
+            for (int segment = 0; segment < segmentCount; segment++) {
+                boolean changed = false;
+                if (ends.get(segment) != null) {
+                    for (Advisory advisory : ends.get(segment)) {
+                        int count = covering.get(advisory);
+                        if (count == 1) {
+                            covering.remove(advisory);
+                            changed = true;
+                        } else {
+                            covering.put(advisory, count - 1);
+                        }
+                    }
+                }
+                if (starts.get(segment) != null) {
+                    for (Advisory advisory : starts.get(segment)) {
+                        Integer count = covering.get(advisory);
+                        covering.put(advisory, count == null ? 1 : count + 1);
+                        changed |= count == null;
+                    }
+                }
+                if (changed) {
+                    // Segments covered by the same advisories share their array
+                    advisories = covering.isEmpty() ? null
+                            : covering.keySet().toArray(new Advisory[covering.size()]);
+                }
+                segments[segment] = advisories;
+            }
+        }
+
+        private static void addAt(List<List<Advisory>> lists, int index, Advisory advisory) {
+            List<Advisory> advisories = lists.get(index);
+            if (advisories == null) {
+                lists.set(index, advisories = new ArrayList<Advisory>(2));
+            }
+            advisories.add(advisory);
+        }
+
+        List<Advisory> find(ComparableVersion version) {
+            int index = Arrays.binarySearch(bounds, version);
+            Advisory[] advisories = segments[index >= 0 ? 2 * index + 1 : 2 * (-index - 1)];
+            return advisories == null ? Collections.<Advisory>emptyList() : Arrays.asList(advisories);
+        }
+    }
+
+    /**
+     * Loads an advisory database.
+     * Advisories that can't be parsed are skipped and reported by {@link #getErrors()}.
+     * @param location A JSON file, or a directory searched recursively for JSON files.
+     * @return the database
+     * @throws IOException if a file can't be read
+     */
+    public static AdvisoryDatabase load(File location) throws IOException {
+        if (!location.exists()) {
+            throw new IOException("Advisory database not found: " + location);
+        }
+        List<File> files = new ArrayList<File>();
+        collectFiles(location, files);
+
+        Loader loader = new Loader();
+        for (File file : files) {
+            JsonNode root = MAPPER.readTree(file);
+            if (root == null || root.isMissingNode()) {
+                loader.errors.add(file + ": empty file");
+                continue;
+            }
+            JsonNode advisories = root.isArray() ? root : root.has("advisories") ? root.get("advisories") : null;
+            if (advisories == null) {
+                loader.add(root, file);
+            } else {
+                for (JsonNode advisory : advisories) {
+                    loader.add(advisory, file);
+                }
+            }
+        }
+        Map<String, List<Interval>> intervals = loader.intervals;
+
+        Map<String, VersionIndex> indexes = new HashMap<String, VersionIndex>(intervals.size() * 2);
+        for (Map.Entry<String, List<Interval>> entry : intervals.entrySet()) {
+            indexes.put(entry.getKey(), new VersionIndex(entry.getValue()));
+        }
+        return new AdvisoryDatabase(indexes, loader.size, loader.errors);
+    }
+
+    private static void collectFiles(File location, List<File> files) {
+        if (location.isFile()) {
+            files.add(location);
+            return;
+        }
+        File[] children = location.listFiles();
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collectFiles(child, files);
+            } else if (child.getName().endsWith(".json")) {
+                files.add(child);
+            }
+        }
+    }
+
+    /**
+     * Compiles the affected ranges of the advisories into intervals.
+     * Ranges and versions are parsed once, they are shared by many advisories.
+     */
+    private static class Loader {
+
+        private final Map<String, List<Interval>> intervals = new HashMap<String, List<Interval>>();
+        private final Map<String, VersionRange> ranges = new HashMap<String, VersionRange>();
+        private final Map<String, ComparableVersion> versions = new HashMap<String, ComparableVersion>();
+        // groupId:artifactId and identifier of the advisories loaded, an advisory may be found in several files
+        private final Set<String> loaded = new HashSet<String>();
+        private final List<String> errors = new ArrayList<String>();
+        private int size;
+
+        void add(JsonNode node, File file) {
+            String identifier = node.path("identifier").asText(null);
+            String slug = node.path("package_slug").asText("");
+            if (!slug.startsWith(MAVEN_SLUG_PREFIX)) {
+                // Advisories of other package types are ignored
+                return;
+            }
+            String[] coordinates = slug.substring(MAVEN_SLUG_PREFIX.length()).split("/");
+            String affectedRange = node.path("affected_range").asText("").trim();
+            if (identifier == null || coordinates.length != 2 || affectedRange.isEmpty()) {
+                errors.add(file + ": advisory " + identifier + " has no identifier, package_slug or affected_range");
+                return;
+            }
+
+            VersionRange range = ranges.get(affectedRange);
+            if (range == null) {
+                try {
+                    range = VersionRange.createFromVersionSpec(affectedRange);
+                } catch (InvalidVersionSpecificationException e) {
+                    errors.add(file + ": advisory " + identifier + " has an invalid affected_range: " + e.getMessage());
+                    return;
+                }
+                ranges.put(affectedRange, range);
+            }
+            Advisory advisory = new Advisory(identifier, node.path("title").asText(null), coordinates[0],
+                    coordinates[1], affectedRange, getTexts(node.get("fixed_versions")), getTexts(node.get("urls")));
+
+            String key = coordinates[0] + ":" + coordinates[1];
+            if (!loaded.add(key + " " + identifier)) {
+                return;
+            }
+            List<Interval> gaIntervals = intervals.get(key);
+            if (gaIntervals == null) {
+                intervals.put(key, gaIntervals = new ArrayList<Interval>(2));
+            }
+            size++;
+            if (range.getRecommendedVersion() != null) {
+                // A single version affects that version only
+                ComparableVersion version = toComparable(range.getRecommendedVersion());
+                gaIntervals.add(new Interval(advisory, version, true, version, true));
+                return;
+            }
+            for (Restriction restriction : range.getRestrictions()) {
+                gaIntervals.add(new Interval(advisory, toComparable(restriction.getLowerBound()),
+                        restriction.isLowerBoundInclusive(), toComparable(restriction.getUpperBound()),
+                        restriction.isUpperBoundInclusive()));
+            }
+        }
+
+        private ComparableVersion toComparable(ArtifactVersion version) {
+            if (version == null) {
+                return null;
+            }
+            String text = version.toString();
+            ComparableVersion comparable = versions.get(text);
+            if (comparable == null) {
+                versions.put(text, comparable = new ComparableVersion(text));
+            }
+            return comparable;
+        }
+    }
+
+    private static List<String> getTexts(JsonNode node) {
+        if (node == null || !node.isArray()) {
+            return Collections.emptyList();
+        }
+        List<String> texts = new ArrayList<String>(node.size());
+        for (JsonNode text : node) {
+            texts.add(text.asText());
+        }
+        return texts;
+    }
+
+    /**
+     * Finds the advisories affecting an artifact version.
+     * @param groupId The artifact groupId.
+     * @param artifactId The artifact artifactId.
+     * @param version The artifact version.
+     * @return the advisories, empty if none
+     */
+    public List<Advisory> find(String groupId, String artifactId, String version) {
+        VersionIndex index = indexes.get(groupId + ":" + artifactId);
+        if (index == null || version == null) {
+            return Collections.emptyList();
+        }
+        return index.find(new ComparableVersion(version));
+    }
+
+    /**
+     * @return the number of advisories
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the advisories that couldn't be loaded, with the reason
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+}
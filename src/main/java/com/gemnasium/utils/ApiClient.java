@@ -0,0 +1,453 @@
+package com.gemnasium.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Client of the Gemnasium API, shared by all the goals of a build.
+ *
+ * Connections are kept alive and reused by the JDK connection cache:
+ * response streams are always closed for that purpose.
+ */
+public class ApiClient {
+
+    public static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Request bodies bigger than this are gzipped when compression is enabled
+    private static final int COMPRESSION_THRESHOLD = 8 * 1024;
+
+    private final String apiBaseUrl;
+    private final String authorization;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final boolean compressRequests;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker circuitBreaker;
+    private final Log log;
+
+    /**
+     * @param apiBaseUrl The base URL of the API.
+     * @param authorization The Authorization header value, null for anonymous requests.
+     * @param connectTimeout Connect timeout in ms.
+     * @param readTimeout Read timeout in ms.
+     * @param compressRequests Gzip large request bodies.
+     * @param retryPolicy Retry policy of failed requests.
+     * @param circuitBreaker Circuit breaker shared by all the clients of the API.
+     * @param log Logger of requests latency (debug level) and retries.
+     */
+    public ApiClient(String apiBaseUrl, String authorization, int connectTimeout, int readTimeout,
+            boolean compressRequests, RetryPolicy retryPolicy, CircuitBreaker circuitBreaker, Log log) {
+        this.apiBaseUrl = apiBaseUrl;
+        this.authorization = authorization;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.compressRequests = compressRequests;
+        this.retryPolicy = retryPolicy;
+        this.circuitBreaker = circuitBreaker;
+        this.log = log;
+    }
+
+    /**
+     * Body of a request, written directly into the connection.
+     */
+    public interface RequestBody {
+
+        /**
+         * @return the body length in bytes, -1 if unknown
+         */
+        long getLength();
+
+        void writeTo(OutputStream os) throws IOException;
+    }
+
+    /**
+     * @param node The JSON request body.
+     * @return a request body holding the serialized JSON
+     * @throws IOException if the JSON can't be serialized
+     */
+    public static RequestBody jsonBody(JsonNode node) throws IOException {
+        final byte[] bytes = MAPPER.writeValueAsBytes(node);
+        return new RequestBody() {
+            public long getLength() {
+                return bytes.length;
+            }
+
+            public void writeTo(OutputStream os) throws IOException {
+                os.write(bytes);
+            }
+        };
+    }
+
+    /**
+     * Response of the API.
+     */
+    public static class Response {
+
+        private final int status;
+        private final JsonNode body;
+        private final Map<String, List<String>> headers;
+
+        public Response(int status, JsonNode body) {
+            this(status, body, Collections.<String, List<String>>emptyMap());
+        }
+
+        public Response(int status, JsonNode body, Map<String, List<String>> headers) {
+            this.status = status;
+            this.body = body;
+            this.headers = headers;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public JsonNode getBody() {
+            return body;
+        }
+
+        /**
+         * @param name The header name, case insensitive.
+         * @return the first value of the response header, null if missing
+         */
+        public String getHeader(String name) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+                    return header.getValue().get(0);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Error returned by the API.
+     */
+    public static class ApiException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+        private final long retryAfter;
+
+        public ApiException(int status, String message, long retryAfter) {
+            super(message);
+            this.status = status;
+            this.retryAfter = retryAfter;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the delay before retrying requested by the API in ms, -1 if none
+         */
+        public long getRetryAfter() {
+            return retryAfter;
+        }
+    }
+
+    /**
+     * Failure to connect to the API, the request wasn't sent.
+     */
+    public static class ConnectException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public ConnectException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    // A single attempt of an API call
+    private interface Attempt<T> {
+        T run() throws IOException;
+    }
+
+    public JsonNode get(String path) throws IOException {
+        return execute("GET", path, Collections.<String, String>emptyMap(), null).getBody();
+    }
+
+    public JsonNode post(String path, JsonNode body) throws IOException {
+        return execute("POST", path, Collections.<String, String>emptyMap(), jsonBody(body)).getBody();
+    }
+
+    /**
+     * Sends a POST request without ever retrying it, for calls that must not be repeated
+     * even when the API asks to retry them, such as creating a resource.
+     * @param path The path of the API endpoint.
+     * @param body The JSON request body.
+     * @return the response body
+     * @throws IOException if the request fails
+     */
+    public JsonNode postOnce(final String path, JsonNode body) throws IOException {
+        final RequestBody requestBody = jsonBody(body);
+        return withRetries("POST " + path, false, 0, new Attempt<Response>() {
+            public Response run() throws IOException {
+                return executeOnce("POST", path, Collections.<String, String>emptyMap(), requestBody);
+            }
+        }).getBody();
+    }
+
+    /**
+     * Sends a request and parses its JSON response.
+     * POST requests are considered non-idempotent, see {@link RetryPolicy#isRetryable(IOException, boolean)}.
+     * @param method The HTTP method.
+     * @param path The path of the API endpoint.
+     * @param headers Additional request headers.
+     * @param body The request body, null if none.
+     * @return the API response, its body is null if empty (304 Not Modified responses included)
+     * @throws ApiException if the API returns an error
+     * @throws IOException if the request fails or the response is not valid JSON
+     */
+    public Response execute(String method, String path, Map<String, String> headers, RequestBody body)
+            throws IOException {
+        return execute(method, path, headers, body, !"POST".equals(method));
+    }
+
+    /**
+     * Sends a request and parses its JSON response.
+     * @param method The HTTP method.
+     * @param path The path of the API endpoint.
+     * @param headers Additional request headers.
+     * @param body The request body, null if none.
+     * @param idempotent Whether the request can be sent again after a failure once it was sent.
+     * @return the API response, its body is null if empty (304 Not Modified responses included)
+     * @throws ApiException if the API returns an error
+     * @throws IOException if the request fails or the response is not valid JSON
+     */
+    public Response execute(final String method, final String path, final Map<String, String> headers,
+            final RequestBody body, boolean idempotent) throws IOException {
+        return withRetries(method + " " + path, idempotent, retryPolicy.getMaxRetries(), new Attempt<Response>() {
+            public Response run() throws IOException {
+                return executeOnce(method, path, headers, body);
+            }
+        });
+    }
+
+    private Response executeOnce(String method, String path, Map<String, String> headers, RequestBody body)
+            throws IOException {
+        long start = System.currentTimeMillis();
+        HttpURLConnection conn = send(method, path, headers, body);
+        int status = getResponseCode(conn);
+        JsonNode node = null;
+        Metrics.enter("response-parse");
+        try (InputStream is = getResponseStream(conn, status)) {
+            if (is != null) {
+                node = MAPPER.readTree(is);
+            }
+        } catch (IOException e) {
+            if (status < 400) {
+                throw e;
+            }
+        } finally {
+            Metrics.exit();
+        }
+        log.debug(method + " " + path + " " + status + " in " + (System.currentTimeMillis() - start) + " ms");
+
+        if (status >= 400) {
+            String message = "HTTP " + status;
+            if (node != null && node.hasNonNull("message")) {
+                message = node.get("message").asText();
+            }
+            throw new ApiException(status, message, getRetryAfter(conn));
+        }
+        return new Response(status, node, conn.getHeaderFields());
+    }
+
+    /**
+     * Sends a GET request and returns its raw response.
+     * @param path The path of the API endpoint.
+     * @return the response body
+     * @throws IOException if the request fails
+     */
+    public String getText(final String path) throws IOException {
+        return withRetries("GET " + path, true, retryPolicy.getMaxRetries(), new Attempt<String>() {
+            public String run() throws IOException {
+                return getTextOnce(path);
+            }
+        });
+    }
+
+    private String getTextOnce(String path) throws IOException {
+        HttpURLConnection conn = send("GET", path, Collections.<String, String>emptyMap(), null);
+        int status = getResponseCode(conn);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        Metrics.enter("response-parse");
+        try (InputStream is = getResponseStream(conn, status)) {
+            if (is != null) {
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = is.read(buffer)) != -1) {
+                    bos.write(buffer, 0, read);
+                }
+            }
+        } finally {
+            Metrics.exit();
+        }
+        String text = new String(bos.toByteArray(), StandardCharsets.UTF_8);
+        if (status >= 400) {
+            throw new ApiException(status, "HTTP " + status, getRetryAfter(conn));
+        }
+        return text;
+    }
+
+    /**
+     * Runs an API call, retrying transient failures and going through the circuit breaker.
+     * Every call allowed by the circuit breaker is recorded as a success or a failure,
+     * so that a trial call always closes or opens the circuit again.
+     */
+    private <T> T withRetries(String description, boolean idempotent, int maxRetries, Attempt<T> attempt)
+            throws IOException {
+        int retry = 0;
+        while (true) {
+            circuitBreaker.acquire();
+            boolean recorded = false;
+            try {
+                T result = attempt.run();
+                circuitBreaker.recordSuccess();
+                recorded = true;
+                return result;
+            } catch (IOException e) {
+                boolean retryable = retryPolicy.isRetryable(e, idempotent);
+                if (!retryable && (e instanceof ApiException || e instanceof JsonProcessingException)) {
+                    // The API is up, the request or its response is wrong
+                    circuitBreaker.recordSuccess();
+                } else {
+                    circuitBreaker.recordFailure();
+                }
+                recorded = true;
+                if (!retryable || retry >= maxRetries) {
+                    throw e;
+                }
+
+                long retryAfter = e instanceof ApiException ? ((ApiException) e).getRetryAfter() : -1;
+                long delay = retryPolicy.getDelay(retry, retryAfter);
+                retry++;
+                Metrics.count("api-retries", 1);
+                log.warn(description + " failed (" + e.getMessage() + "), retrying in " + delay + " ms (" + retry
+                        + "/" + maxRetries + ")");
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            } finally {
+                if (!recorded) {
+                    // Unchecked failures must not leave a trial call in progress
+                    circuitBreaker.recordFailure();
+                }
+            }
+        }
+    }
+
+    // Parses the Retry-After header, either a number of seconds or an HTTP date
+    private long getRetryAfter(HttpURLConnection conn) {
+        String retryAfter = conn.getHeaderField("Retry-After");
+        if (retryAfter == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            long date = conn.getHeaderFieldDate("Retry-After", -1);
+            return date < 0 ? -1 : Math.max(0, date - System.currentTimeMillis());
+        }
+    }
+
+    private HttpURLConnection send(String method, String path, Map<String, String> headers, RequestBody body)
+            throws IOException {
+        URL url = new URL(apiBaseUrl + path);
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setConnectTimeout(connectTimeout);
+        conn.setReadTimeout(readTimeout);
+        conn.setRequestMethod(method);
+        conn.setRequestProperty("Accept", "application/json");
+        conn.setRequestProperty("Accept-Encoding", "gzip");
+        if (authorization != null) {
+            conn.setRequestProperty("Authorization", authorization);
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            conn.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        Metrics.count("api-requests", 1);
+        if (body == null) {
+            connect(conn);
+            return conn;
+        }
+
+        conn.setDoOutput(true);
+        conn.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+        long length = body.getLength();
+        boolean compress = compressRequests && (length < 0 || length > COMPRESSION_THRESHOLD);
+        if (compress) {
+            conn.setRequestProperty("Content-Encoding", "gzip");
+            conn.setChunkedStreamingMode(0);
+        } else if (length >= 0) {
+            conn.setFixedLengthStreamingMode(length);
+        } else {
+            conn.setChunkedStreamingMode(0);
+        }
+
+        connect(conn);
+        // Writing the body is split into serialization, compression and upload phases
+        Metrics.enter("serialization");
+        try {
+            OutputStream os = Metrics.timed(conn.getOutputStream(), "upload", "request-bytes");
+            try (OutputStream bodyStream = compress ? Metrics.timed(new GZIPOutputStream(os), "compression", null)
+                    : os) {
+                body.writeTo(bodyStream);
+            }
+        } finally {
+            Metrics.exit();
+        }
+        return conn;
+    }
+
+    // Connects explicitly to time the connection, TLS handshake included, apart from the upload
+    private void connect(HttpURLConnection conn) throws IOException {
+        Metrics.enter("connect");
+        try {
+            conn.connect();
+        } catch (IOException e) {
+            throw new ConnectException(e);
+        } finally {
+            Metrics.exit();
+        }
+    }
+
+    // Waits for the response status, that is the time taken by the API to process the request
+    private int getResponseCode(HttpURLConnection conn) throws IOException {
+        Metrics.enter("response-wait");
+        try {
+            return conn.getResponseCode();
+        } finally {
+            Metrics.exit();
+        }
+    }
+
+    private InputStream getResponseStream(HttpURLConnection conn, int status) throws IOException {
+        InputStream is = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+        if (is != null && "gzip".equalsIgnoreCase(conn.getContentEncoding())) {
+            return new GZIPInputStream(is);
+        }
+        return is;
+    }
+}
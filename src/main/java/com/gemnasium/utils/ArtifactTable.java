@@ -0,0 +1,159 @@
+package com.gemnasium.utils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * Canonical table of the JSON dependency nodes of the build, shared by all the modules.
+ *
+ * Modules of a reactor mostly depend on the same artifacts: each distinct dependency record
+ * (coordinates, scope, parents and requirement) is built once and the same node is returned
+ * to every module. Records that differ still share their text values and parents arrays,
+ * and the serialized JSON of a node is kept with it so that it's encoded once for all the uploads.
+ *
+ * Nodes returned by the table are shared and must not be modified, copy them first.
+ */
+public class ArtifactTable {
+
+    public static final String SESSION_KEY = ArtifactTable.class.getName();
+
+    private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+
+    private final ConcurrentMap<Key, ArtifactNode> nodes = new ConcurrentHashMap<Key, ArtifactNode>();
+    private final ConcurrentMap<List<String>, ArrayNode> parentsNodes = new ConcurrentHashMap<List<String>, ArrayNode>();
+    private final ConcurrentMap<String, TextNode> texts = new ConcurrentHashMap<String, TextNode>();
+
+    /**
+     * A dependency node of the table, with its serialized JSON once written.
+     */
+    // javac reports on this declaration that the inherited ObjectNode.deepCopy() overrides the generic
+    // JsonNode.deepCopy() with an unchecked conversion
+    @SuppressWarnings("unchecked")
+    static class ArtifactNode extends ObjectNode {
+
+        private static final long serialVersionUID = 1L;
+
+        private transient volatile SerializedString json;
+
+        ArtifactNode() {
+            super(FACTORY);
+        }
+
+        SerializedString getJson() {
+            return json;
+        }
+
+        void setJson(SerializedString json) {
+            this.json = json;
+        }
+    }
+
+    /**
+     * Gets the canonical node of a dependency.
+     * Fields are groupId, artifactId, type, classifier, version, scope, transitive, parents, optional
+     * and requirement, in that order.
+     * @param art The dependency artifact.
+     * @param parents The groupId:artifactId of the parents, from the direct dependency to the closest parent.
+     * @param requirement The version requirement.
+     * @return the shared node
+     */
+    public ObjectNode getNode(Artifact art, List<String> parents, String requirement) {
+        Key key = new Key(new String[] { art.getGroupId(), art.getArtifactId(), art.getType(), art.getClassifier(),
+                art.getVersion(), art.getScope(), requirement }, art.isOptional(), parents);
+        ArtifactNode node = nodes.get(key);
+        if (node == null) {
+            node = new ArtifactNode();
+            node.set("groupId", getText(art.getGroupId()));
+            node.set("artifactId", getText(art.getArtifactId()));
+            node.set("type", getText(art.getType()));
+            node.set("classifier", getText(art.getClassifier()));
+            node.set("version", getText(art.getVersion()));
+            node.set("scope", getText(art.getScope()));
+            node.set("transitive", BooleanNode.valueOf(!parents.isEmpty()));
+            node.set("parents", getParentsNode(parents));
+            node.set("optional", BooleanNode.valueOf(art.isOptional()));
+            node.set("requirement", getText(requirement));
+            ArtifactNode previous = nodes.putIfAbsent(key, node);
+            if (previous != null) {
+                node = previous;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * @return the number of distinct dependency nodes
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    private JsonNode getText(String value) {
+        if (value == null) {
+            return NullNode.getInstance();
+        }
+        TextNode text = texts.get(value);
+        if (text == null) {
+            text = FACTORY.textNode(value);
+            TextNode previous = texts.putIfAbsent(value, text);
+            if (previous != null) {
+                text = previous;
+            }
+        }
+        return text;
+    }
+
+    private ArrayNode getParentsNode(List<String> parents) {
+        ArrayNode parentsNode = parentsNodes.get(parents);
+        if (parentsNode == null) {
+            parentsNode = FACTORY.arrayNode(parents.size());
+            for (String parent : parents) {
+                parentsNode.add(getText(parent));
+            }
+            ArrayNode previous = parentsNodes.putIfAbsent(parents, parentsNode);
+            if (previous != null) {
+                parentsNode = previous;
+            }
+        }
+        return parentsNode;
+    }
+
+    private static class Key {
+
+        private final String[] fields;
+        private final boolean optional;
+        private final List<String> parents;
+
+        Key(String[] fields, boolean optional, List<String> parents) {
+            this.fields = fields;
+            this.optional = optional;
+            this.parents = parents;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return optional == other.optional && Arrays.equals(fields, other.fields) && parents.equals(other.parents);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(fields) + parents.hashCode();
+        }
+    }
+}
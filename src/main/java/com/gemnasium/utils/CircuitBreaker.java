@@ -0,0 +1,70 @@
+package com.gemnasium.utils;
+
+import java.io.IOException;
+
+/**
+ * Circuit breaker shared by all the API calls of a build.
+ *
+ * It opens after a number of consecutive failures, then API calls fail right away
+ * until the open duration is elapsed. A single trial call is then allowed:
+ * the circuit closes if it succeeds and opens again if it fails.
+ */
+public class CircuitBreaker {
+
+    private final int failureThreshold;
+    private final long openDuration;
+
+    private int failures;
+    private long openedAt = -1;
+    private boolean trialInProgress;
+
+    /**
+     * @param failureThreshold Number of consecutive failures opening the circuit, 0 to disable it.
+     * @param openDuration Time during which the circuit stays open, in ms.
+     */
+    public CircuitBreaker(int failureThreshold, long openDuration) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * Error raised when calls are not allowed because the circuit is open.
+     */
+    public static class OpenCircuitException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public OpenCircuitException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Checks that a call is allowed.
+     * @throws OpenCircuitException if the circuit is open
+     */
+    public synchronized void acquire() throws OpenCircuitException {
+        if (openedAt < 0) {
+            return;
+        }
+        if (System.currentTimeMillis() - openedAt < openDuration || trialInProgress) {
+            throw new OpenCircuitException("Gemnasium API calls are suspended after " + failures
+                    + " consecutive failures");
+        }
+        trialInProgress = true;
+    }
+
+    public synchronized void recordSuccess() {
+        failures = 0;
+        openedAt = -1;
+        trialInProgress = false;
+    }
+
+    public synchronized void recordFailure() {
+        failures++;
+        if (trialInProgress || (failureThreshold > 0 && failures >= failureThreshold)) {
+            openedAt = System.currentTimeMillis();
+        }
+        trialInProgress = false;
+    }
+}
@@ -0,0 +1,201 @@
+package com.gemnasium.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Structural diff between two versions of the JSON dependencies of a dependency file.
+ *
+ * Dependencies are identified by groupId:artifactId:type[:classifier]. Both versions are
+ * sorted by key and then merged in a single pass.
+ */
+public class DependencyDiff {
+
+    private final String path;
+    private final List<JsonNode> added = new ArrayList<JsonNode>();
+    private final List<JsonNode> removed = new ArrayList<JsonNode>();
+    private final List<JsonNode> changedFrom = new ArrayList<JsonNode>();
+    private final List<JsonNode> changedTo = new ArrayList<JsonNode>();
+
+    private DependencyDiff(String path) {
+        this.path = path;
+    }
+
+    /**
+     * Compares two versions of the dependencies of a file.
+     * @param path The dependency file path.
+     * @param previous The previous dependencies, may be null if the file is new.
+     * @param current The current dependencies, may be null if the file was removed.
+     * @return the diff
+     */
+    public static DependencyDiff compare(String path, ArrayNode previous, ArrayNode current) {
+        DependencyDiff diff = new DependencyDiff(path);
+        Entry[] before = sort(previous);
+        Entry[] after = sort(current);
+
+        int i = 0;
+        int j = 0;
+        while (i < before.length || j < after.length) {
+            int cmp;
+            if (i == before.length) {
+                cmp = 1;
+            } else if (j == after.length) {
+                cmp = -1;
+            } else {
+                cmp = before[i].key.compareTo(after[j].key);
+            }
+
+            if (cmp < 0) {
+                diff.removed.add(before[i++].node);
+            } else if (cmp > 0) {
+                diff.added.add(after[j++].node);
+            } else {
+                if (!before[i].node.equals(after[j].node)) {
+                    diff.changedFrom.add(before[i].node);
+                    diff.changedTo.add(after[j].node);
+                }
+                i++;
+                j++;
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Compares dependency files with the ones of a previous upload.
+     * @param snapshot The dependencies of the previous upload indexed by file path.
+     * @param files The dependency files.
+     * @return the diff of every file, including removed files
+     */
+    public static List<DependencyDiff> compareFiles(Map<String, ArrayNode> snapshot, List<DependencyFile> files) {
+        List<DependencyDiff> diffs = new ArrayList<DependencyDiff>();
+        Map<String, ArrayNode> previousFiles = new LinkedHashMap<String, ArrayNode>(snapshot);
+        for (DependencyFile file : files) {
+            diffs.add(compare(file.getPath(), previousFiles.remove(file.getPath()), file.getJsonDependencies()));
+        }
+        for (Map.Entry<String, ArrayNode> removedFile : previousFiles.entrySet()) {
+            diffs.add(compare(removedFile.getKey(), removedFile.getValue(), null));
+        }
+        return diffs;
+    }
+
+    /**
+     * @param baseCommitSha The commit sha of the upload the changes apply to.
+     * @param diffs The changes.
+     * @return the delta payload: the base commit sha and the delta of every changed file
+     */
+    public static ObjectNode getDeltaPayload(String baseCommitSha, List<DependencyDiff> diffs) {
+        ObjectNode payload = JsonNodeFactory.instance.objectNode();
+        payload.put("base_commit_sha", baseCommitSha);
+        ArrayNode filesNode = payload.putArray("files");
+        for (DependencyDiff diff : diffs) {
+            if (!diff.isEmpty()) {
+                filesNode.add(diff.toJson());
+            }
+        }
+        return payload;
+    }
+
+    /**
+     * @param dependency A JSON dependency.
+     * @return its groupId:artifactId:type[:classifier] key
+     */
+    public static String getKey(JsonNode dependency) {
+        String key = dependency.path("groupId").asText() + ":" + dependency.path("artifactId").asText() + ":"
+                + dependency.path("type").asText();
+        JsonNode classifier = dependency.path("classifier");
+        if (classifier.isTextual() && !classifier.asText().isEmpty()) {
+            key += ":" + classifier.asText();
+        }
+        return key;
+    }
+
+    private static Entry[] sort(ArrayNode dependencies) {
+        if (dependencies == null) {
+            return new Entry[0];
+        }
+        Entry[] entries = new Entry[dependencies.size()];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = new Entry(dependencies.get(i));
+        }
+        Arrays.sort(entries);
+        return entries;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changedTo.isEmpty();
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public List<JsonNode> getAdded() {
+        return Collections.unmodifiableList(added);
+    }
+
+    public List<JsonNode> getRemoved() {
+        return Collections.unmodifiableList(removed);
+    }
+
+    public List<JsonNode> getChanged() {
+        return Collections.unmodifiableList(changedTo);
+    }
+
+    /**
+     * @return a human readable report of the diff, one line per dependency
+     */
+    public List<String> getReport() {
+        List<String> lines = new ArrayList<String>();
+        for (JsonNode dep : added) {
+            lines.add("+ " + getKey(dep) + " " + dep.path("version").asText());
+        }
+        for (JsonNode dep : removed) {
+            lines.add("- " + getKey(dep) + " " + dep.path("version").asText());
+        }
+        for (int i = 0; i < changedTo.size(); i++) {
+            lines.add("~ " + getKey(changedTo.get(i)) + " " + changedFrom.get(i).path("version").asText() + " -> "
+                    + changedTo.get(i).path("version").asText());
+        }
+        return lines;
+    }
+
+    /**
+     * @return the compact JSON delta: added and changed dependencies, and keys of removed ones
+     */
+    public ObjectNode toJson() {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("path", path);
+        node.putArray("added").addAll(added);
+        node.putArray("changed").addAll(changedTo);
+        ArrayNode removedKeys = node.putArray("removed");
+        for (JsonNode dep : removed) {
+            removedKeys.add(getKey(dep));
+        }
+        return node;
+    }
+
+    private static class Entry implements Comparable<Entry> {
+
+        private final String key;
+        private final JsonNode node;
+
+        Entry(JsonNode node) {
+            this.key = getKey(node);
+            this.node = node;
+        }
+
+        public int compareTo(Entry other) {
+            return key.compareTo(other.key);
+        }
+    }
+}
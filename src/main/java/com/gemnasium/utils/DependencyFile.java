@@ -0,0 +1,25 @@
+package com.gemnasium.utils;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+/**
+ * A dependency file to upload: its path within the project and its dependencies.
+ */
+public class DependencyFile {
+
+    private final String path;
+    private final ArrayNode jsonDependencies;
+
+    public DependencyFile(String path, ArrayNode jsonDependencies) {
+        this.path = path;
+        this.jsonDependencies = jsonDependencies;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public ArrayNode getJsonDependencies() {
+        return jsonDependencies;
+    }
+}
@@ -0,0 +1,83 @@
+package com.gemnasium.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.gemnasium.Config;
+
+/**
+ * Collects the dependency files of every module of the reactor, grouped by API, credentials,
+ * project slug and branch, so that they can be sent at once by the last module running the goal.
+ */
+public class DependencyFilesAggregator {
+
+    private final ReactorCountdown countdown;
+    private long collectTime;
+    private final Map<String, Group> groups = new LinkedHashMap<String, Group>();
+
+    /**
+     * @param countdown The countdown of the modules running the goal.
+     */
+    public DependencyFilesAggregator(ReactorCountdown countdown) {
+        this.countdown = countdown;
+    }
+
+    /**
+     * Registers a module's dependency file.
+     * @param projectId The module project id.
+     * @param config The module configuration, used to group files.
+     * @param file The module dependency file, null if the module has nothing to send or failed.
+     * @param elapsed Time spent collecting the module dependencies, in ms.
+     * @return true if this was the last module of the reactor running the goal
+     */
+    public synchronized boolean moduleDone(String projectId, Config config, DependencyFile file, long elapsed) {
+        if (file != null) {
+            String key = config.getApiBaseUrl() + " " + config.getApiKey() + " " + config.getProjectSlug() + " "
+                    + config.getProjectBranch();
+            Group group = groups.get(key);
+            if (group == null) {
+                group = new Group(config);
+                groups.put(key, group);
+            }
+            group.files.add(file);
+        }
+        collectTime += elapsed;
+        return countdown.executionDone(projectId);
+    }
+
+    public synchronized int getDoneModules() {
+        return countdown.getDone();
+    }
+
+    public synchronized long getCollectTime() {
+        return collectTime;
+    }
+
+    public synchronized List<Group> getGroups() {
+        return Collections.unmodifiableList(new ArrayList<Group>(groups.values()));
+    }
+
+    /**
+     * Dependency files sharing the same project slug.
+     */
+    public static class Group {
+
+        private final Config config;
+        private final List<DependencyFile> files = new ArrayList<DependencyFile>();
+
+        private Group(Config config) {
+            this.config = config;
+        }
+
+        public Config getConfig() {
+            return config;
+        }
+
+        public List<DependencyFile> getFiles() {
+            return files;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.gemnasium.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.shared.dependency.graph.DependencyNode;
+
+/**
+ * Compact view of a project dependency graph.
+ *
+ * Nodes are stored in arrays in depth-first order, so that the parent of a node
+ * always comes before it, and each node refers to its parent by index.
+ * The parents and the requirement of every node are computed in a single pass.
+ */
+public class DependencyGraph {
+
+    private static final int ROOT = 0;
+
+    private final int[] parents;
+    private final String[] keys;
+    private final String[] requirements;
+    private final List<List<String>> parentKeys;
+    private final Map<String, Integer> indexes;
+
+    private DependencyGraph(int size) {
+        parents = new int[size];
+        keys = new String[size];
+        requirements = new String[size];
+        parentKeys = new ArrayList<List<String>>(size);
+        indexes = new HashMap<String, Integer>(size * 2);
+    }
+
+    /**
+     * Builds the compact graph of a dependency tree.
+     * @param root The root node of the tree, that is the project itself.
+     * @param trails Provides the symbol table used to intern groupId:artifactId keys.
+     * @return the dependency graph
+     */
+    public static DependencyGraph build(DependencyNode root, DependencyTrails trails) {
+        List<DependencyNode> nodes = new ArrayList<DependencyNode>();
+        List<Integer> nodeParents = new ArrayList<Integer>();
+        Deque<DependencyNode> stack = new ArrayDeque<DependencyNode>();
+        Deque<Integer> stackParents = new ArrayDeque<Integer>();
+        stack.push(root);
+        stackParents.push(-1);
+        while (!stack.isEmpty()) {
+            DependencyNode node = stack.pop();
+            int index = nodes.size();
+            nodes.add(node);
+            nodeParents.add(stackParents.pop());
+            List<DependencyNode> children = node.getChildren();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+                stackParents.push(index);
+            }
+        }
+
+        DependencyGraph graph = new DependencyGraph(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            DependencyNode node = nodes.get(i);
+            Artifact artifact = node.getArtifact();
+            int parent = nodeParents.get(i);
+            graph.parents[i] = parent;
+            graph.keys[i] = trails.getKey(artifact.getId());
+            graph.requirements[i] = getRequirement(node);
+            if (parent <= ROOT) {
+                graph.parentKeys.add(Collections.<String>emptyList());
+            } else {
+                List<String> parentChain = graph.parentKeys.get(parent);
+                List<String> chain = new ArrayList<String>(parentChain.size() + 1);
+                chain.addAll(parentChain);
+                chain.add(graph.keys[parent]);
+                graph.parentKeys.add(Collections.unmodifiableList(chain));
+            }
+            // Keeps the closest occurrence if an artifact is present several times
+            if (i != ROOT && !graph.indexes.containsKey(artifact.getDependencyConflictId())) {
+                graph.indexes.put(artifact.getDependencyConflictId(), i);
+            }
+        }
+        return graph;
+    }
+
+    // The version declared by the parent: the version before dependency management if known,
+    // or the declared range the version was selected from
+    private static String getRequirement(DependencyNode node) {
+        if (node.getPremanagedVersion() != null) {
+            return node.getPremanagedVersion();
+        }
+        if (node.getVersionConstraint() != null) {
+            return node.getVersionConstraint();
+        }
+        return node.getArtifact().getVersion();
+    }
+
+    /**
+     * @param artifact A dependency of the project.
+     * @return the index of the artifact node, -1 if it isn't in the graph
+     */
+    public int indexOf(Artifact artifact) {
+        Integer index = indexes.get(artifact.getDependencyConflictId());
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param index A node index.
+     * @return the groupId:artifactId of the node parents, from the direct dependency to the closest parent
+     */
+    public List<String> getParents(int index) {
+        return parentKeys.get(index);
+    }
+
+    /**
+     * @param index A node index.
+     * @return the version requirement declared by the node parent
+     */
+    public String getRequirement(int index) {
+        return requirements[index];
+    }
+
+    /**
+     * @param index A node index.
+     * @return true if the node isn't a direct dependency of the project
+     */
+    public boolean isTransitive(int index) {
+        return parents[index] > ROOT;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+}
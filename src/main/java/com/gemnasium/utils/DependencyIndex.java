@@ -0,0 +1,493 @@
+package com.gemnasium.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+/**
+ * On-disk index of the dependency dumps of many modules, answering which modules
+ * depend on an artifact and through which parents, without network access.
+ *
+ * The index directory holds:
+ * <ul>
+ * <li>modules.properties: the dump of each module with its size and modification time;</li>
+ * <li>segments/: a binary snapshot of each module dump, see {@link DependencySnapshot};</li>
+ * <li>index.bin: the inverted index, module paths and sorted groupId:artifactId keys in a string table,
+ * then for each key the postings (module, dependency record in the module segment);</li>
+ * <li>merged.properties: the state of each module when its segment was merged into index.bin.</li>
+ * </ul>
+ * An update only writes the segments of the dumps that changed. The segments changed or removed since
+ * the last merge are pending: queries skip their postings in index.bin and scan the pending segments
+ * instead. They are merged into a new index.bin once there are more than {@link #MAX_PENDING} of them,
+ * or more than a quarter of the modules. Queries binary search the memory-mapped inverted index and read
+ * the matching records from the memory-mapped segments.
+ */
+public class DependencyIndex {
+
+    private static final int MAGIC = 0x474d5349; // "GMSI"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+
+    /**
+     * Maximum number of modules changed or removed since the last merge, scanned by every query.
+     */
+    public static final int MAX_PENDING = 16;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final File modulesFile;
+    private final File segmentsDir;
+    private final File indexFile;
+    private final File mergedFile;
+
+    /**
+     * @param dir The index directory.
+     */
+    public DependencyIndex(File dir) {
+        this.modulesFile = new File(dir, "modules.properties");
+        this.segmentsDir = new File(dir, "segments");
+        this.indexFile = new File(dir, "index.bin");
+        this.mergedFile = new File(dir, "merged.properties");
+    }
+
+    /**
+     * Summary of an index update.
+     */
+    public static class Update {
+
+        private final int modules;
+        private final int updated;
+        private final int removed;
+        private final int pending;
+
+        Update(int modules, int updated, int removed, int pending) {
+            this.modules = modules;
+            this.updated = updated;
+            this.removed = removed;
+            this.pending = pending;
+        }
+
+        public int getModules() {
+            return modules;
+        }
+
+        public int getUpdated() {
+            return updated;
+        }
+
+        public int getRemoved() {
+            return removed;
+        }
+
+        /**
+         * @return the number of modules changed or removed since the last merge, 0 if merged by this update
+         */
+        public int getPending() {
+            return pending;
+        }
+    }
+
+    /**
+     * A dependency of a module matching a query.
+     */
+    public static class Match {
+
+        private final String module;
+        private final String groupId;
+        private final String artifactId;
+        private final String version;
+        private final String scope;
+        private final String requirement;
+        private final List<String> parents;
+
+        Match(String module, String groupId, String artifactId, String version, String scope, String requirement,
+                List<String> parents) {
+            this.module = module;
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.version = version;
+            this.scope = scope;
+            this.requirement = requirement;
+            this.parents = parents;
+        }
+
+        /**
+         * @return the module directory, relative to the indexed directory
+         */
+        public String getModule() {
+            return module;
+        }
+
+        public String getGroupId() {
+            return groupId;
+        }
+
+        public String getArtifactId() {
+            return artifactId;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public String getScope() {
+            return scope;
+        }
+
+        public String getRequirement() {
+            return requirement;
+        }
+
+        /**
+         * @return the chain of groupId:artifactId through which the dependency is pulled, empty if direct
+         */
+        public List<String> getParents() {
+            return parents;
+        }
+    }
+
+    /**
+     * Indexes the dumps found under a directory. Dumps that didn't change since the last update are skipped,
+     * modules whose dump disappeared are removed from the index.
+     * When a module has several dumps, the most recent one is indexed.
+     * @param root The directory containing the modules, searched recursively.
+     * @param fileNames The names of the dump files, JSON or binary snapshots.
+     * @return the summary of the update
+     * @throws IOException if a dump can't be read or the index can't be written
+     */
+    public Update update(final File root, final Set<String> fileNames) throws IOException {
+        final Map<String, File> dumps = new TreeMap<String, File>();
+        final Path indexDir = modulesFile.getParentFile().toPath().toAbsolutePath();
+        Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                String name = dir.getFileName() == null ? "" : dir.getFileName().toString();
+                if (!dir.equals(root.toPath()) && (name.startsWith(".") || name.equals("target")
+                        || dir.toAbsolutePath().equals(indexDir))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                if (fileNames.contains(path.getFileName().toString())) {
+                    String module = root.toPath().relativize(path.getParent()).toString().replace(File.separatorChar, '/');
+                    File previous = dumps.get(module);
+                    if (previous == null || previous.lastModified() < path.toFile().lastModified()) {
+                        dumps.put(module, path.toFile());
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Properties previousModules = load(modulesFile);
+        Properties modules = new Properties();
+        int updated = 0;
+        Files.createDirectories(segmentsDir.toPath());
+        for (Map.Entry<String, File> dump : dumps.entrySet()) {
+            String module = dump.getKey();
+            File file = dump.getValue();
+            String state = file.getName() + ":" + file.lastModified() + ":" + file.length();
+            File segment = getSegment(module);
+            if (!state.equals(previousModules.getProperty(module)) || !segment.exists()) {
+                writeSegment(file, segment);
+                updated++;
+            }
+            modules.setProperty(module, state);
+        }
+
+        int removed = 0;
+        for (String module : previousModules.stringPropertyNames()) {
+            if (!modules.containsKey(module)) {
+                Files.deleteIfExists(getSegment(module).toPath());
+                removed++;
+            }
+        }
+
+        if (updated > 0 || removed > 0) {
+            store(modules, modulesFile);
+        }
+        int pending = getPending(modules, load(mergedFile)).size();
+        if (!indexFile.exists() || pending > Math.min(MAX_PENDING, modules.size() / 4)) {
+            writeIndex(new ArrayList<String>(dumps.keySet()));
+            // Stored once the index is written: modules are pending until then
+            store(modules, mergedFile);
+            pending = 0;
+        }
+        return new Update(dumps.size(), updated, removed, pending);
+    }
+
+    // The modules changed or removed since the last merge
+    private static Set<String> getPending(Properties modules, Properties merged) {
+        Set<String> pending = new TreeSet<String>();
+        for (String module : modules.stringPropertyNames()) {
+            if (!modules.getProperty(module).equals(merged.getProperty(module))) {
+                pending.add(module);
+            }
+        }
+        for (String module : merged.stringPropertyNames()) {
+            if (!modules.containsKey(module)) {
+                pending.add(module);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Finds the modules depending on an artifact.
+     * @param coordinates groupId:artifactId, or groupId:artifactId:version to match a single version.
+     * @return the matching dependencies, ordered by module
+     * @throws IOException if the index can't be read
+     */
+    public List<Match> query(String coordinates) throws IOException {
+        String[] parts = coordinates.split(":");
+        if (parts.length < 2 || parts.length > 3) {
+            throw new IllegalArgumentException("Expected groupId:artifactId[:version], got: " + coordinates);
+        }
+        String key = parts[0] + ":" + parts[1];
+        String version = parts.length == 3 ? parts[2] : null;
+
+        if (!indexFile.exists()) {
+            return Collections.emptyList();
+        }
+        ByteBuffer index = map(indexFile.toPath());
+        if (index.capacity() < HEADER_SIZE || index.getInt(0) != MAGIC || index.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Not a dependency index: " + indexFile);
+        }
+        int moduleCount = index.getInt(8);
+        int keyCount = index.getInt(12);
+        int stringData = HEADER_SIZE + 4 * (moduleCount + keyCount);
+        int stringBytes = moduleCount + keyCount == 0 ? 0 : index.getInt(stringData - 4);
+        int postingStarts = stringData + stringBytes;
+        int postings = postingStarts + 4 * (keyCount + 1);
+
+        // Binary search of the key, keys follow the module paths in the string table
+        int low = 0;
+        int high = keyCount - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = getString(index, stringData, moduleCount + middle).compareTo(key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                found = middle;
+                break;
+            }
+        }
+
+        TreeMap<String, List<Match>> matches = new TreeMap<String, List<Match>>();
+        Properties modules = load(modulesFile);
+        Set<String> pending = getPending(modules, load(mergedFile));
+        if (found >= 0) {
+            Map<Integer, DependencySnapshot.Reader> segments = new HashMap<Integer, DependencySnapshot.Reader>();
+            int end = index.getInt(postingStarts + 4 * found + 4);
+            for (int p = index.getInt(postingStarts + 4 * found); p < end; p++) {
+                int moduleIndex = index.getInt(postings + 8 * p);
+                String module = getString(index, stringData, moduleIndex);
+                // The postings of pending modules point to replaced or removed segments
+                if (pending.contains(module)) {
+                    continue;
+                }
+                DependencySnapshot.Reader segment = segments.get(moduleIndex);
+                if (segment == null) {
+                    segment = DependencySnapshot.open(getSegment(module).toPath());
+                    segments.put(moduleIndex, segment);
+                }
+                addMatch(matches, module, segment, index.getInt(postings + 8 * p + 4), version);
+            }
+        }
+
+        for (String module : pending) {
+            if (!modules.containsKey(module)) {
+                continue;
+            }
+            DependencySnapshot.Reader segment = DependencySnapshot.open(getSegment(module).toPath());
+            for (int record = 0; record < segment.size(); record++) {
+                if (key.equals(segment.getGroupId(record) + ":" + segment.getArtifactId(record))) {
+                    addMatch(matches, module, segment, record, version);
+                }
+            }
+        }
+
+        List<Match> result = new ArrayList<Match>();
+        for (List<Match> moduleMatches : matches.values()) {
+            result.addAll(moduleMatches);
+        }
+        return result;
+    }
+
+    private static void addMatch(Map<String, List<Match>> matches, String module, DependencySnapshot.Reader segment,
+            int record, String version) {
+        if (version != null && !version.equals(segment.getVersion(record))) {
+            return;
+        }
+        List<String> parents = new ArrayList<String>(segment.getParentCount(record));
+        for (int i = 0; i < segment.getParentCount(record); i++) {
+            parents.add(segment.getParent(record, i));
+        }
+        List<Match> moduleMatches = matches.get(module);
+        if (moduleMatches == null) {
+            matches.put(module, moduleMatches = new ArrayList<Match>());
+        }
+        moduleMatches.add(new Match(module, segment.getGroupId(record), segment.getArtifactId(record),
+                segment.getVersion(record), segment.getScope(record), segment.getRequirement(record), parents));
+    }
+
+    private static Properties load(File file) throws IOException {
+        Properties properties = new Properties();
+        if (file.exists()) {
+            try (InputStream is = new FileInputStream(file)) {
+                properties.load(is);
+            }
+        }
+        return properties;
+    }
+
+    private static void store(Properties properties, File file) throws IOException {
+        try (OutputStream os = new FileOutputStream(file)) {
+            properties.store(os, "Gemnasium dependency index");
+        }
+    }
+
+    private File getSegment(String module) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest(module.getBytes(StandardCharsets.UTF_8))) {
+            hex.append(String.format("%02x", b));
+        }
+        return new File(segmentsDir, hex + ".gmsd");
+    }
+
+    private static void writeSegment(File dump, File segment) throws IOException {
+        if (dump.getName().endsWith(".json")) {
+            JsonNode jsonDependencies = MAPPER.readTree(dump);
+            if (jsonDependencies == null || !jsonDependencies.isArray()) {
+                throw new IOException("Not a dependency dump: " + dump);
+            }
+            DependencySnapshot.write((ArrayNode) jsonDependencies, segment.toPath());
+        } else {
+            // Validates the snapshot before copying it
+            DependencySnapshot.open(dump.toPath());
+            Files.copy(dump.toPath(), segment.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void writeIndex(List<String> modules) throws IOException {
+        TreeMap<String, List<int[]>> keys = new TreeMap<String, List<int[]>>();
+        int postingCount = 0;
+        for (int m = 0; m < modules.size(); m++) {
+            DependencySnapshot.Reader segment = DependencySnapshot.open(getSegment(modules.get(m)).toPath());
+            for (int record = 0; record < segment.size(); record++) {
+                String key = segment.getGroupId(record) + ":" + segment.getArtifactId(record);
+                List<int[]> postings = keys.get(key);
+                if (postings == null) {
+                    postings = new ArrayList<int[]>();
+                    keys.put(key, postings);
+                }
+                postings.add(new int[] { m, record });
+                postingCount++;
+            }
+        }
+
+        List<byte[]> strings = new ArrayList<byte[]>(modules.size() + keys.size());
+        int stringBytes = 0;
+        for (String string : modules) {
+            strings.add(string.getBytes(StandardCharsets.UTF_8));
+        }
+        for (String string : keys.keySet()) {
+            strings.add(string.getBytes(StandardCharsets.UTF_8));
+        }
+        for (byte[] string : strings) {
+            stringBytes += string.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 4 * strings.size() + stringBytes
+                + 4 * (keys.size() + 1) + 8 * postingCount);
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(modules.size()).putInt(keys.size()).putInt(postingCount);
+        int end = 0;
+        for (byte[] string : strings) {
+            end += string.length;
+            buffer.putInt(end);
+        }
+        for (byte[] string : strings) {
+            buffer.put(string);
+        }
+        int start = 0;
+        for (List<int[]> postings : keys.values()) {
+            buffer.putInt(start);
+            start += postings.size();
+        }
+        buffer.putInt(start);
+        for (List<int[]> postings : keys.values()) {
+            for (int[] posting : postings) {
+                buffer.putInt(posting[0]).putInt(posting[1]);
+            }
+        }
+        buffer.flip();
+
+        // Written aside then moved, so that a failed update doesn't leave a truncated index
+        File tmp = new File(indexFile.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static String getString(ByteBuffer buffer, int stringData, int index) {
+        int offsets = HEADER_SIZE;
+        int start = index == 0 ? 0 : buffer.getInt(offsets + 4 * (index - 1));
+        int end = buffer.getInt(offsets + 4 * index);
+        byte[] bytes = new byte[end - start];
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(stringData + start);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
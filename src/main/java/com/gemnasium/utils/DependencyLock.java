@@ -0,0 +1,184 @@
+package com.gemnasium.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+import org.apache.maven.model.Repository;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Lockfile of the resolved dependencies of a project, keyed by a hash of its effective pom,
+ * so that they can be reported again without resolving them while the pom doesn't change.
+ *
+ * The hash covers what drives the resolution in the effective model: dependencies, managed dependencies
+ * and repositories, recursively for the dependencies built in the same reactor. It doesn't see new versions
+ * matching a version range or a snapshot, the lockfile keeps the versions resolved when it was written.
+ */
+public class DependencyLock {
+
+    public static final int FORMAT_VERSION = 1;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String pomHash;
+    private final ArrayNode dependencies;
+
+    /**
+     * @param pomHash The effective pom hash, see {@link #hash(MavenProject, Collection, String)}.
+     * @param dependencies The dependencies as JSON, see {@link ProjectsUtils#getJsonDependencies}.
+     */
+    public DependencyLock(String pomHash, ArrayNode dependencies) {
+        this.pomHash = pomHash;
+        this.dependencies = dependencies;
+    }
+
+    public String getPomHash() {
+        return pomHash;
+    }
+
+    public ArrayNode getDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * Computes the hash of the effective pom of a project.
+     * @param project The project.
+     * @param reactor The projects of the reactor, whose changes are seen by the projects depending on them.
+     * @param ignoredScopes The ignored scopes, they change the locked dependencies.
+     * @return the hex encoded SHA-256 hash
+     */
+    public static String hash(MavenProject project, Collection<MavenProject> reactor, String ignoredScopes) {
+        Map<String, MavenProject> modules = new HashMap<String, MavenProject>();
+        for (MavenProject module : reactor) {
+            modules.put(module.getGroupId() + ":" + module.getArtifactId() + ":" + module.getVersion(), module);
+        }
+        MessageDigest digest = getDigest();
+        update(digest, "ignoredScopes " + ignoredScopes);
+        hash(project, modules, new HashSet<MavenProject>(), digest);
+        return toHex(digest.digest());
+    }
+
+    private static void hash(MavenProject project, Map<String, MavenProject> modules, Set<MavenProject> visited,
+            MessageDigest digest) {
+        if (!visited.add(project)) {
+            return;
+        }
+        update(digest, "project " + project.getGroupId() + ":" + project.getArtifactId() + ":"
+                + project.getVersion() + ":" + project.getPackaging());
+        for (Dependency dependency : project.getDependencies()) {
+            update(digest, "dependency " + toString(dependency));
+        }
+        if (project.getDependencyManagement() != null) {
+            for (Dependency dependency : project.getDependencyManagement().getDependencies()) {
+                update(digest, "managed " + toString(dependency));
+            }
+        }
+        for (Repository repository : project.getRepositories()) {
+            update(digest, "repository " + repository.getId() + " " + repository.getUrl());
+        }
+        for (Dependency dependency : project.getDependencies()) {
+            MavenProject module = modules.get(dependency.getGroupId() + ":" + dependency.getArtifactId() + ":"
+                    + dependency.getVersion());
+            if (module != null) {
+                hash(module, modules, visited, digest);
+            }
+        }
+    }
+
+    private static String toString(Dependency dependency) {
+        StringBuilder text = new StringBuilder();
+        text.append(dependency.getGroupId()).append(':').append(dependency.getArtifactId()).append(':')
+                .append(dependency.getVersion()).append(':').append(dependency.getType()).append(':')
+                .append(dependency.getClassifier()).append(':').append(dependency.getScope()).append(':')
+                .append(dependency.isOptional());
+        List<String> exclusions = new ArrayList<String>();
+        for (Exclusion exclusion : dependency.getExclusions()) {
+            exclusions.add(exclusion.getGroupId() + ":" + exclusion.getArtifactId());
+        }
+        Collections.sort(exclusions);
+        return text.append(' ').append(exclusions).toString();
+    }
+
+    private static void update(MessageDigest digest, String line) {
+        digest.update((line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static MessageDigest getDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Reads a lockfile.
+     * @param file The lockfile.
+     * @return the lock, null if the file doesn't exist
+     * @throws IOException if the file can't be read or has an unknown format
+     */
+    public static DependencyLock read(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        JsonNode root = MAPPER.readTree(file);
+        if (root.path("formatVersion").asInt() != FORMAT_VERSION || !root.path("dependencies").isArray()) {
+            throw new IOException("Unsupported lockfile format: " + file);
+        }
+        return new DependencyLock(root.path("pomHash").asText(), (ArrayNode) root.get("dependencies"));
+    }
+
+    /**
+     * Writes the lock into a file, replaced atomically.
+     * @param file The lockfile.
+     * @throws IOException if the file can't be written
+     */
+    public void write(File file) throws IOException {
+        ObjectNode root = MAPPER.createObjectNode();
+        root.put("formatVersion", FORMAT_VERSION);
+        root.put("pomHash", pomHash);
+        root.set("dependencies", dependencies);
+
+        File target = file.getAbsoluteFile();
+        File tmp = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+        try {
+            Files.write(tmp.toPath(), MAPPER.writeValueAsBytes(root));
+            try {
+                Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.gemnasium.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Binary dependency snapshot, a compact alternative to the JSON dump that can be read
+ * without deserializing it.
+ *
+ * The file is made of, in big endian:
+ * <ul>
+ * <li>a header: magic, format version, string count, record count, parent count;</li>
+ * <li>the string table: the end offset of each string, then the UTF-8 bytes of all the strings;</li>
+ * <li>the records: one fixed-width record per dependency, made of the string indexes of groupId,
+ * artifactId, type, classifier, version, scope and requirement (-1 if null), flags, and the
+ * position and count of its parents in the parent list;</li>
+ * <li>the parent list: the string indexes of the parents of all the dependencies.</li>
+ * </ul>
+ */
+public class DependencySnapshot {
+
+    public static final int MAGIC = 0x474d5344; // "GMSD"
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_SIZE = 20;
+    private static final int RECORD_SIZE = 40;
+
+    private static final int GROUP_ID = 0;
+    private static final int ARTIFACT_ID = 1;
+    private static final int TYPE = 2;
+    private static final int CLASSIFIER = 3;
+    private static final int VERSION = 4;
+    private static final int SCOPE = 5;
+    private static final int REQUIREMENT = 6;
+    private static final int FLAGS = 7;
+    private static final int PARENTS_START = 8;
+    private static final int PARENTS_COUNT = 9;
+
+    private static final int TRANSITIVE = 1;
+    private static final int OPTIONAL = 2;
+
+    private static final String[] STRING_FIELDS = { "groupId", "artifactId", "type", "classifier", "version",
+            "scope", "requirement" };
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Writes dependencies as a binary snapshot, replacing the file if it exists.
+     * @param jsonDependencies The dependencies, as returned by {@link ProjectsUtils#getJsonDependencies}.
+     * @param path The snapshot file.
+     * @throws IOException if the snapshot can't be written
+     */
+    public static void write(ArrayNode jsonDependencies, Path path) throws IOException {
+        Map<String, Integer> indexes = new HashMap<String, Integer>();
+        List<byte[]> strings = new ArrayList<byte[]>();
+        int[] records = new int[jsonDependencies.size() * (RECORD_SIZE / 4)];
+        List<Integer> parents = new ArrayList<Integer>();
+
+        int r = 0;
+        for (JsonNode dependency : jsonDependencies) {
+            for (int field = 0; field < STRING_FIELDS.length; field++) {
+                JsonNode value = dependency.get(STRING_FIELDS[field]);
+                records[r + field] = value == null || value.isNull() ? -1
+                        : intern(value.asText(), indexes, strings);
+            }
+            records[r + FLAGS] = (dependency.path("transitive").asBoolean() ? TRANSITIVE : 0)
+                    | (dependency.path("optional").asBoolean() ? OPTIONAL : 0);
+            records[r + PARENTS_START] = parents.size();
+            for (JsonNode parent : dependency.path("parents")) {
+                parents.add(intern(parent.asText(), indexes, strings));
+            }
+            records[r + PARENTS_COUNT] = parents.size() - records[r + PARENTS_START];
+            r += RECORD_SIZE / 4;
+        }
+
+        int stringBytes = 0;
+        for (byte[] string : strings) {
+            stringBytes += string.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 4 * strings.size() + stringBytes
+                + 4 * records.length + 4 * parents.size());
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(strings.size()).putInt(jsonDependencies.size())
+                .putInt(parents.size());
+        int end = 0;
+        for (byte[] string : strings) {
+            end += string.length;
+            buffer.putInt(end);
+        }
+        for (byte[] string : strings) {
+            buffer.put(string);
+        }
+        buffer.asIntBuffer().put(records);
+        buffer.position(buffer.position() + 4 * records.length);
+        for (int parent : parents) {
+            buffer.putInt(parent);
+        }
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private static int intern(String value, Map<String, Integer> indexes, List<byte[]> strings) {
+        Integer index = indexes.get(value);
+        if (index == null) {
+            index = strings.size();
+            indexes.put(value, index);
+            strings.add(value.getBytes(StandardCharsets.UTF_8));
+        }
+        return index;
+    }
+
+    /**
+     * Opens a binary snapshot for reading, the file is memory-mapped.
+     * The file channel is closed right away, the mapping is released once the reader is garbage collected.
+     * @param path The snapshot file.
+     * @return the snapshot reader
+     * @throws IOException if the file can't be read or isn't a snapshot
+     */
+    public static Reader open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Reader(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads a memory-mapped binary snapshot. Strings are decoded when accessed,
+     * dependencies are addressed by index, from 0 to {@link #size()} excluded.
+     */
+    public static class Reader {
+
+        private final ByteBuffer buffer;
+        private final int stringCount;
+        private final int recordCount;
+        private final int stringOffsets;
+        private final int stringData;
+        private final int records;
+        private final int parents;
+
+        Reader(Path path, MappedByteBuffer buffer) throws IOException {
+            this.buffer = buffer.order(ByteOrder.BIG_ENDIAN);
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a dependency snapshot: " + path);
+            }
+            if (buffer.getInt(4) != FORMAT_VERSION) {
+                throw new IOException("Unsupported dependency snapshot version " + buffer.getInt(4) + ": " + path);
+            }
+            stringCount = buffer.getInt(8);
+            recordCount = buffer.getInt(12);
+            int parentCount = buffer.getInt(16);
+            stringOffsets = HEADER_SIZE;
+            stringData = stringOffsets + 4 * stringCount;
+            if (stringCount < 0 || recordCount < 0 || parentCount < 0 || stringData > buffer.capacity()) {
+                throw new IOException("Corrupted dependency snapshot: " + path);
+            }
+            records = stringData + (stringCount == 0 ? 0 : buffer.getInt(stringData - 4));
+            parents = records + RECORD_SIZE * recordCount;
+            if ((long) parents + 4L * parentCount != buffer.capacity()) {
+                throw new IOException("Corrupted dependency snapshot: " + path);
+            }
+        }
+
+        /**
+         * @return the number of dependencies
+         */
+        public int size() {
+            return recordCount;
+        }
+
+        /**
+         * @return the number of distinct strings
+         */
+        public int getStringCount() {
+            return stringCount;
+        }
+
+        /**
+         * Decodes a string of the string table.
+         * @param index The string index.
+         * @return the string, null if the index is -1
+         */
+        public String getString(int index) {
+            if (index < 0) {
+                return null;
+            }
+            int start = index == 0 ? 0 : buffer.getInt(stringOffsets + 4 * (index - 1));
+            int end = buffer.getInt(stringOffsets + 4 * index);
+            byte[] bytes = new byte[end - start];
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(stringData + start);
+            slice.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int field(int dependency, int field) {
+            if (dependency < 0 || dependency >= recordCount) {
+                throw new IndexOutOfBoundsException("Dependency index: " + dependency);
+            }
+            return buffer.getInt(records + RECORD_SIZE * dependency + 4 * field);
+        }
+
+        public String getGroupId(int dependency) {
+            return getString(field(dependency, GROUP_ID));
+        }
+
+        public String getArtifactId(int dependency) {
+            return getString(field(dependency, ARTIFACT_ID));
+        }
+
+        public String getType(int dependency) {
+            return getString(field(dependency, TYPE));
+        }
+
+        public String getClassifier(int dependency) {
+            return getString(field(dependency, CLASSIFIER));
+        }
+
+        public String getVersion(int dependency) {
+            return getString(field(dependency, VERSION));
+        }
+
+        public String getScope(int dependency) {
+            return getString(field(dependency, SCOPE));
+        }
+
+        public String getRequirement(int dependency) {
+            return getString(field(dependency, REQUIREMENT));
+        }
+
+        public boolean isTransitive(int dependency) {
+            return (field(dependency, FLAGS) & TRANSITIVE) != 0;
+        }
+
+        public boolean isOptional(int dependency) {
+            return (field(dependency, FLAGS) & OPTIONAL) != 0;
+        }
+
+        public int getParentCount(int dependency) {
+            return field(dependency, PARENTS_COUNT);
+        }
+
+        /**
+         * Gets the string index of a parent, to compare parents without decoding them.
+         * @param dependency The dependency index.
+         * @param parent The parent index, from 0 to {@link #getParentCount(int)} excluded.
+         * @return the string index of the parent groupId:artifactId
+         */
+        public int getParentIndex(int dependency, int parent) {
+            if (parent < 0 || parent >= getParentCount(dependency)) {
+                throw new IndexOutOfBoundsException("Parent index: " + parent);
+            }
+            return buffer.getInt(parents + 4 * (field(dependency, PARENTS_START) + parent));
+        }
+
+        public String getParent(int dependency, int parent) {
+            return getString(getParentIndex(dependency, parent));
+        }
+
+        /**
+         * Rebuilds the dependencies as JSON, in the shape written by the dump-dependencies goal.
+         * @return the dependencies as JSON
+         */
+        public ArrayNode toJson() {
+            ArrayNode jsonDependencies = MAPPER.createArrayNode();
+            for (int i = 0; i < recordCount; i++) {
+                ObjectNode jsonNode = jsonDependencies.addObject();
+                jsonNode.put("groupId", getGroupId(i));
+                jsonNode.put("artifactId", getArtifactId(i));
+                jsonNode.put("type", getType(i));
+                jsonNode.put("classifier", getClassifier(i));
+                jsonNode.put("version", getVersion(i));
+                jsonNode.put("scope", getScope(i));
+                jsonNode.put("transitive", isTransitive(i));
+                ArrayNode parentsNode = jsonNode.putArray("parents");
+                for (int p = 0; p < getParentCount(i); p++) {
+                    parentsNode.add(getParent(i, p));
+                }
+                jsonNode.put("optional", isOptional(i));
+                jsonNode.put("requirement", getRequirement(i));
+            }
+            return jsonDependencies;
+        }
+    }
+}
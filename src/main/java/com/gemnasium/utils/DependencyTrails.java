@@ -0,0 +1,97 @@
+package com.gemnasium.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Computes the parents of dependencies from their dependency trail.
+ *
+ * Chains of parents are kept in a tree indexed by trail element: the chain of every trail prefix
+ * is computed once and shared by all the dependencies having that prefix in their trail,
+ * even when the same artifact is reached through different paths. The groupId:artifactId keys
+ * are interned in a symbol table that can be shared by the whole build.
+ * An instance must only be used for the trails of a single project.
+ */
+public class DependencyTrails {
+
+    private final ConcurrentMap<String, String> symbols;
+    private final Chain root = new Chain(Collections.<String>emptyList());
+
+    public DependencyTrails() {
+        this(new ConcurrentHashMap<String, String>());
+    }
+
+    /**
+     * @param symbols Symbol table of the groupId:artifactId keys, indexed by GAV.
+     */
+    public DependencyTrails(ConcurrentMap<String, String> symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * Gets the parents of a dependency.
+     * @param trail The dependency trail: the project artifact, the parents and the dependency itself.
+     * @return the groupId:artifactId of the parents, from the direct dependency to the closest parent
+     */
+    public synchronized List<String> getParents(List<String> trail) {
+        if (trail.size() < 3) {
+            return Collections.emptyList();
+        }
+        return getChain(trail, trail.size() - 2);
+    }
+
+    /**
+     * @param gav A groupId:artifactId:...:version identifier.
+     * @return the interned groupId:artifactId key
+     */
+    public String getKey(String gav) {
+        String key = symbols.get(gav);
+        if (key == null) {
+            int first = gav.indexOf(':');
+            int second = first < 0 ? -1 : gav.indexOf(':', first + 1);
+            key = second < 0 ? gav : gav.substring(0, second);
+            String previous = symbols.putIfAbsent(gav, key);
+            if (previous != null) {
+                key = previous;
+            }
+        }
+        return key;
+    }
+
+    // Gets the keys of the trail elements from 1 to last, both included
+    private List<String> getChain(List<String> trail, int last) {
+        Chain chain = root;
+        for (int i = 1; i <= last; i++) {
+            String gav = trail.get(i);
+            Chain child = chain.children == null ? null : chain.children.get(gav);
+            if (child == null) {
+                List<String> keys = new ArrayList<String>(chain.keys.size() + 1);
+                keys.addAll(chain.keys);
+                keys.add(getKey(gav));
+                child = new Chain(Collections.unmodifiableList(keys));
+                if (chain.children == null) {
+                    chain.children = new HashMap<String, Chain>(4);
+                }
+                chain.children.put(gav, child);
+            }
+            chain = child;
+        }
+        return chain.keys;
+    }
+
+    // The parents of a trail prefix, and the chains extending it by GAV, null while there is none
+    private static class Chain {
+
+        private final List<String> keys;
+        private Map<String, Chain> children;
+
+        Chain(List<String> keys) {
+            this.keys = keys;
+        }
+    }
+}
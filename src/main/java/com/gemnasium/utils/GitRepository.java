@@ -0,0 +1,166 @@
+package com.gemnasium.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * Branch and revision checked out in a local git repository, read from the files of the repository
+ * instead of forking git: HEAD, loose refs and packed-refs.
+ * Supports linked worktrees and submodules (.git file), and detached HEAD (no branch).
+ */
+public class GitRepository {
+
+    private static final Pattern OBJECT_ID = Pattern.compile("[0-9a-f]{40}([0-9a-f]{24})?");
+    private static final String BRANCH_PREFIX = "refs/heads/";
+    private static final int MAX_SYMBOLIC_REFS = 5;
+
+    private final File workTree;
+    private final String branch;
+    private final String revision;
+
+    /**
+     * @param workTree The root of the working tree.
+     * @param branch The checked out branch, may be null.
+     * @param revision The checked out commit, may be null.
+     */
+    public GitRepository(File workTree, String branch, String revision) {
+        this.workTree = workTree;
+        this.branch = branch;
+        this.revision = revision;
+    }
+
+    /**
+     * @param dir A directory of the repository.
+     * @return the root of the working tree holding the directory, null if it's not in a git repository
+     */
+    public static File findWorkTree(File dir) {
+        for (File current = dir.getAbsoluteFile(); current != null; current = current.getParentFile()) {
+            if (new File(current, ".git").exists()) {
+                return current;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the branch and revision checked out in a working tree.
+     * @param workTree The root of the working tree, see {@link #findWorkTree(File)}.
+     * @return the repository, with a null branch if HEAD is detached and a null revision if the branch has no commit
+     * @throws IOException if the repository can't be read
+     */
+    public static GitRepository read(File workTree) throws IOException {
+        File gitDir = getGitDir(workTree);
+        File commonDir = gitDir;
+        String common = readFirstLine(new File(gitDir, "commondir"));
+        if (common != null) {
+            commonDir = resolve(gitDir, common);
+        }
+
+        String head = readFirstLine(new File(gitDir, "HEAD"));
+        if (head == null) {
+            throw new IOException("No HEAD in " + gitDir);
+        }
+        if (!head.startsWith("ref:")) {
+            return new GitRepository(workTree, null, OBJECT_ID.matcher(head).matches() ? head : null);
+        }
+        String ref = head.substring(4).trim();
+        String branch = ref.startsWith(BRANCH_PREFIX) ? ref.substring(BRANCH_PREFIX.length()) : null;
+        return new GitRepository(workTree, branch, resolveRef(gitDir, commonDir, ref));
+    }
+
+    // The .git directory, or the one a .git file points to (worktrees, submodules)
+    private static File getGitDir(File workTree) throws IOException {
+        File dotGit = new File(workTree, ".git");
+        if (dotGit.isDirectory()) {
+            return dotGit;
+        }
+        String line = readFirstLine(dotGit);
+        if (line == null || !line.startsWith("gitdir:")) {
+            throw new IOException("Invalid .git file: " + dotGit);
+        }
+        return resolve(workTree, line.substring("gitdir:".length()).trim());
+    }
+
+    private static File resolve(File dir, String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(dir, path);
+    }
+
+    /**
+     * Resolves a ref to an object id, following symbolic refs.
+     * Loose refs are looked up in the worktree git dir, then in the common dir, then in packed-refs.
+     * @return the object id, null if the ref doesn't exist
+     */
+    private static String resolveRef(File gitDir, File commonDir, String ref) throws IOException {
+        for (int i = 0; i < MAX_SYMBOLIC_REFS; i++) {
+            String value = readFirstLine(new File(gitDir, ref));
+            if (value == null && commonDir != gitDir) {
+                value = readFirstLine(new File(commonDir, ref));
+            }
+            if (value == null) {
+                return readPackedRef(commonDir, ref);
+            }
+            if (!value.startsWith("ref:")) {
+                return OBJECT_ID.matcher(value).matches() ? value : null;
+            }
+            ref = value.substring(4).trim();
+        }
+        throw new IOException("Too many levels of symbolic refs: " + ref);
+    }
+
+    private static String readPackedRef(File commonDir, String ref) throws IOException {
+        File packedRefs = new File(commonDir, "packed-refs");
+        if (!packedRefs.isFile()) {
+            return null;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(packedRefs), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Comments and peeled tags (^) are skipped
+                if (line.isEmpty() || line.charAt(0) == '#' || line.charAt(0) == '^') {
+                    continue;
+                }
+                int space = line.indexOf(' ');
+                if (space > 0 && line.substring(space + 1).equals(ref)) {
+                    return line.substring(0, space);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String readFirstLine(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            return line == null ? null : line.trim();
+        }
+    }
+
+    public File getWorkTree() {
+        return workTree;
+    }
+
+    /**
+     * @return the checked out branch, null if HEAD is detached
+     */
+    public String getBranch() {
+        return branch;
+    }
+
+    /**
+     * @return the checked out commit, null if the branch has no commit yet
+     */
+    public String getRevision() {
+        return revision;
+    }
+}
@@ -0,0 +1,175 @@
+package com.gemnasium.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.maven.artifact.versioning.ComparableVersion;
+
+/**
+ * Versions of artifacts known by the local repository, read from the maven-metadata*.xml files
+ * written by Maven for each remote repository.
+ * Metadata files are read in parallel with a streaming parser, and each groupId:artifactId is read once
+ * for the whole build, even by modules built concurrently.
+ */
+public class LocalVersions {
+
+    public static final String SESSION_KEY = LocalVersions.class.getName();
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    // Qualifiers ordered before the release by ComparableVersion, a, b and m only when followed by a number
+    private static final Pattern PRE_RELEASE = Pattern.compile("(?i)(?:^|[.\\-_\\d])"
+            + "(?:alpha|beta|milestone|rc|cr|preview|pre|ea|dev|snapshot|[abm](?=\\d))(?:[.\\-_\\d]|$)");
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final Path localRepository;
+    private final ConcurrentMap<String, Future<List<ComparableVersion>>> versions
+            = new ConcurrentHashMap<String, Future<List<ComparableVersion>>>();
+
+    /**
+     * @param localRepository The base directory of the local repository.
+     */
+    public LocalVersions(Path localRepository) {
+        this.localRepository = localRepository;
+    }
+
+    /**
+     * Gets the versions of artifacts, reading the metadata files not read yet with the given number of threads.
+     * @param keys The groupId:artifactId of the artifacts.
+     * @param threads The maximum number of metadata directories read concurrently.
+     * @return the versions of each artifact in ascending order, empty if the artifact has no metadata
+     * @throws InterruptedException if interrupted while waiting for metadata read by other threads
+     */
+    public Map<String, List<ComparableVersion>> getVersions(Collection<String> keys, int threads)
+            throws InterruptedException {
+        List<FutureTask<List<ComparableVersion>>> reads = new ArrayList<FutureTask<List<ComparableVersion>>>();
+        for (final String key : keys) {
+            if (versions.containsKey(key)) {
+                continue;
+            }
+            FutureTask<List<ComparableVersion>> read = new FutureTask<List<ComparableVersion>>(
+                    new Callable<List<ComparableVersion>>() {
+                        public List<ComparableVersion> call() {
+                            return read(key);
+                        }
+                    });
+            // Another module may be reading it already
+            if (versions.putIfAbsent(key, read) == null) {
+                reads.add(read);
+            }
+        }
+
+        if (!reads.isEmpty()) {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, reads.size())));
+            try {
+                for (FutureTask<List<ComparableVersion>> read : reads) {
+                    executor.execute(read);
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        Map<String, List<ComparableVersion>> result = new LinkedHashMap<String, List<ComparableVersion>>();
+        for (String key : keys) {
+            try {
+                result.put(key, versions.get(key).get());
+            } catch (ExecutionException e) {
+                // read() doesn't throw
+                result.put(key, Collections.<ComparableVersion>emptyList());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Tells whether a version is a pre-release, such as 2.0-alpha-1, 2.0-M2, 2.0.RC1 or 2.0-SNAPSHOT.
+     * Other qualifiers, such as 2.0.Final, 2.0.RELEASE or 2.0-jre, are releases.
+     * @param version The version.
+     * @return true if the version has a pre-release qualifier
+     */
+    public static boolean isPreRelease(String version) {
+        return PRE_RELEASE.matcher(version).find();
+    }
+
+    // Reads and merges the versions of all the metadata files of an artifact
+    private List<ComparableVersion> read(String key) {
+        int colon = key.indexOf(':');
+        Path dir = localRepository.resolve(key.substring(0, colon).replace('.', '/'))
+                .resolve(key.substring(colon + 1));
+        if (!Files.isDirectory(dir)) {
+            return Collections.emptyList();
+        }
+
+        TreeSet<ComparableVersion> sorted = new TreeSet<ComparableVersion>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "maven-metadata*.xml")) {
+            for (Path file : files) {
+                try {
+                    readVersions(file, sorted);
+                } catch (IOException | XMLStreamException e) {
+                    // A corrupted metadata file doesn't hide the versions of the others
+                }
+            }
+        } catch (IOException e) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<ComparableVersion>(sorted);
+    }
+
+    private static void readVersions(Path file, Collection<ComparableVersion> versions)
+            throws IOException, XMLStreamException {
+        try (InputStream is = Files.newInputStream(file)) {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+            try {
+                boolean inVersions = false;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = reader.getLocalName();
+                        if ("versions".equals(name)) {
+                            inVersions = true;
+                        } else if (inVersions && "version".equals(name)) {
+                            String version = reader.getElementText().trim();
+                            if (!version.isEmpty()) {
+                                versions.add(new ComparableVersion(version));
+                            }
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT && "versions".equals(reader.getLocalName())) {
+                        // Versions are listed once, the rest of the file is skipped
+                        return;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.gemnasium.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Timings and counters of a goal execution.
+ *
+ * The metrics of the running goal are attached to the current thread, so that code shared by
+ * all the goals records its phases without having to pass them around. Phases are exclusive:
+ * when a phase starts inside another one, the time spent in the inner phase isn't counted
+ * in the outer one. Recording does nothing when no metrics are attached.
+ */
+public class Metrics {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final ThreadLocal<Metrics> CURRENT = new ThreadLocal<Metrics>();
+    private static final ThreadLocal<Deque<Phase>> PHASES = new ThreadLocal<Deque<Phase>>() {
+        @Override
+        protected Deque<Phase> initialValue() {
+            return new ArrayDeque<Phase>();
+        }
+    };
+
+    private final String goal;
+    private final String module;
+    private final long startTime = System.currentTimeMillis();
+    private final long start = System.nanoTime();
+    private long duration = -1;
+    private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+    private final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+
+    /**
+     * @param goal The goal name.
+     * @param module The module, groupId:artifactId.
+     */
+    public Metrics(String goal, String module) {
+        this.goal = goal;
+        this.module = module;
+    }
+
+    private static class Phase {
+
+        private final String name;
+        private long start;
+
+        Phase(String name, long start) {
+            this.name = name;
+            this.start = start;
+        }
+    }
+
+    /**
+     * Attaches metrics to the current thread.
+     * @param metrics The metrics to record into, null to record nothing.
+     * @return the metrics previously attached, to be given back to {@link #detach(Metrics)}
+     */
+    public static Metrics attach(Metrics metrics) {
+        Metrics previous = CURRENT.get();
+        CURRENT.set(metrics);
+        PHASES.get().clear();
+        return previous;
+    }
+
+    /**
+     * Detaches the current metrics from the thread.
+     * @param previous The metrics returned by {@link #attach(Metrics)}.
+     */
+    public static void detach(Metrics previous) {
+        PHASES.get().clear();
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * @return the metrics attached to the current thread, null if none
+     */
+    public static Metrics current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Starts a phase, to be ended by {@link #exit()} in a finally block.
+     * @param phase The phase name.
+     */
+    public static void enter(String phase) {
+        Metrics metrics = CURRENT.get();
+        if (metrics == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        Deque<Phase> stack = PHASES.get();
+        Phase outer = stack.peek();
+        if (outer != null) {
+            metrics.addTime(outer.name, now - outer.start);
+        }
+        stack.push(new Phase(phase, now));
+    }
+
+    /**
+     * Ends the last started phase.
+     */
+    public static void exit() {
+        Metrics metrics = CURRENT.get();
+        if (metrics == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        Deque<Phase> stack = PHASES.get();
+        Phase phase = stack.poll();
+        if (phase == null) {
+            return;
+        }
+        metrics.addTime(phase.name, now - phase.start);
+        Phase outer = stack.peek();
+        if (outer != null) {
+            outer.start = now;
+        }
+    }
+
+    /**
+     * Adds a value to a counter of the current metrics.
+     * @param counter The counter name.
+     * @param value The value to add.
+     */
+    public static void count(String counter, long value) {
+        Metrics metrics = CURRENT.get();
+        if (metrics != null) {
+            metrics.add(counter, value);
+        }
+    }
+
+    /**
+     * Wraps a stream so that writes are recorded as a phase, and their size as a counter.
+     * @param os The stream to wrap.
+     * @param phase The phase name.
+     * @param counter The counter of written bytes, null if none.
+     * @return the wrapped stream, or the given stream if no metrics are attached
+     */
+    public static OutputStream timed(OutputStream os, String phase, String counter) {
+        if (CURRENT.get() == null) {
+            return os;
+        }
+        return new TimedOutputStream(os, phase, counter);
+    }
+
+    public String getGoal() {
+        return goal;
+    }
+
+    public String getModule() {
+        return module;
+    }
+
+    public synchronized void addTime(String phase, long nanos) {
+        Long total = phases.get(phase);
+        phases.put(phase, total == null ? nanos : total + nanos);
+    }
+
+    public synchronized void add(String counter, long value) {
+        Long total = counters.get(counter);
+        counters.put(counter, total == null ? value : total + value);
+    }
+
+    /**
+     * Ends the execution.
+     */
+    public synchronized void finish() {
+        duration = System.nanoTime() - start;
+    }
+
+    /**
+     * @return the execution time in ms, up to now if not finished
+     */
+    public synchronized double getDuration() {
+        return toMillis(duration < 0 ? System.nanoTime() - start : duration);
+    }
+
+    /**
+     * @return the time spent in each phase in ms
+     */
+    public synchronized Map<String, Double> getPhases() {
+        Map<String, Double> millis = new LinkedHashMap<String, Double>();
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            millis.put(phase.getKey(), toMillis(phase.getValue()));
+        }
+        return millis;
+    }
+
+    public synchronized Map<String, Long> getCounters() {
+        return new LinkedHashMap<String, Long>(counters);
+    }
+
+    public ObjectNode toJson() {
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put("goal", goal);
+        node.put("module", module);
+        node.put("startTime", startTime);
+        node.put("durationMs", getDuration());
+        ObjectNode phasesNode = node.putObject("phasesMs");
+        for (Map.Entry<String, Double> phase : getPhases().entrySet()) {
+            phasesNode.put(phase.getKey(), phase.getValue());
+        }
+        ObjectNode countersNode = node.putObject("counters");
+        for (Map.Entry<String, Long> counter : getCounters().entrySet()) {
+            countersNode.put(counter.getKey(), counter.getValue());
+        }
+        return node;
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    private static class TimedOutputStream extends FilterOutputStream {
+
+        private final String phase;
+        private final String counter;
+
+        TimedOutputStream(OutputStream os, String phase, String counter) {
+            super(os);
+            this.phase = phase;
+            this.counter = counter;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            enter(phase);
+            try {
+                out.write(b, off, len);
+            } finally {
+                exit();
+            }
+            if (counter != null) {
+                count(counter, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            enter(phase);
+            try {
+                out.flush();
+            } finally {
+                exit();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            enter(phase);
+            try {
+                out.close();
+            } finally {
+                exit();
+            }
+        }
+    }
+}
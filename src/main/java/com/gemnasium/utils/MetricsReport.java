@@ -0,0 +1,142 @@
+package com.gemnasium.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Metrics of all the goal executions of a build, summarized per goal for the whole reactor.
+ */
+public class MetricsReport {
+
+    public static final String SESSION_KEY = MetricsReport.class.getName();
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final List<Metrics> executions = new ArrayList<Metrics>();
+
+    public synchronized void add(Metrics metrics) {
+        executions.add(metrics);
+    }
+
+    /**
+     * @param goal The goal name.
+     * @return the number of executions of the goal so far
+     */
+    public synchronized int getExecutions(String goal) {
+        int count = 0;
+        for (Metrics metrics : executions) {
+            if (metrics.getGoal().equals(goal)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Sums the metrics of the executions of each goal. The metrics of background uploads
+     * are included as soon as they are done.
+     * @return the summary indexed by goal name
+     */
+    public synchronized Map<String, Summary> summarize() {
+        Map<String, Summary> summaries = new LinkedHashMap<String, Summary>();
+        for (Metrics metrics : executions) {
+            Summary summary = summaries.get(metrics.getGoal());
+            if (summary == null) {
+                summary = new Summary();
+                summaries.put(metrics.getGoal(), summary);
+            }
+            summary.executions++;
+            summary.duration += metrics.getDuration();
+            for (Map.Entry<String, Double> phase : metrics.getPhases().entrySet()) {
+                Double total = summary.phases.get(phase.getKey());
+                summary.phases.put(phase.getKey(), (total == null ? 0 : total) + phase.getValue());
+            }
+            for (Map.Entry<String, Long> counter : metrics.getCounters().entrySet()) {
+                Long total = summary.counters.get(counter.getKey());
+                summary.counters.put(counter.getKey(), (total == null ? 0 : total) + counter.getValue());
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Writes the summary of the build.
+     * @param file The report file.
+     * @throws IOException if the report can't be written
+     */
+    public synchronized void write(File file) throws IOException {
+        ObjectNode node = MAPPER.createObjectNode();
+        ObjectNode goals = node.putObject("goals");
+        for (Map.Entry<String, Summary> summary : summarize().entrySet()) {
+            goals.set(summary.getKey(), summary.getValue().toJson());
+        }
+        write(node, file);
+    }
+
+    /**
+     * Writes a JSON report, creating its directory if needed.
+     * @param node The report.
+     * @param file The report file.
+     * @throws IOException if the report can't be written
+     */
+    public static void write(ObjectNode node, File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create directory " + dir);
+        }
+        MAPPER.writerWithDefaultPrettyPrinter().writeValue(file, node);
+    }
+
+    /**
+     * Metrics of all the executions of a goal.
+     */
+    public static class Summary {
+
+        private int executions;
+        private double duration;
+        private final Map<String, Double> phases = new LinkedHashMap<String, Double>();
+        private final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+
+        public int getExecutions() {
+            return executions;
+        }
+
+        public double getDuration() {
+            return duration;
+        }
+
+        public Map<String, Double> getPhases() {
+            return phases;
+        }
+
+        public Map<String, Long> getCounters() {
+            return counters;
+        }
+
+        ObjectNode toJson() {
+            ObjectNode node = MAPPER.createObjectNode();
+            node.put("executions", executions);
+            node.put("durationMs", round(duration));
+            ObjectNode phasesNode = node.putObject("phasesMs");
+            for (Map.Entry<String, Double> phase : phases.entrySet()) {
+                phasesNode.put(phase.getKey(), round(phase.getValue()));
+            }
+            ObjectNode countersNode = node.putObject("counters");
+            for (Map.Entry<String, Long> counter : counters.entrySet()) {
+                countersNode.put(counter.getKey(), counter.getValue());
+            }
+            return node;
+        }
+
+        private static double round(double millis) {
+            return Math.round(millis * 1000) / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.gemnasium.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Local cache of the projects fetched from the API.
+ *
+ * A cached project is used as is until its TTL expires, then it's revalidated
+ * with its ETag: the API answers 304 Not Modified when it didn't change.
+ */
+public class ProjectCache {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final File dir;
+    private final long ttl;
+
+    /**
+     * @param cacheDir The plugin cache directory.
+     * @param apiBaseUrl The base URL of the API, projects of different instances are cached apart.
+     * @param authorization The Authorization header of the requests, projects fetched with different
+     * credentials are cached apart. Only a hash of it is written.
+     * @param ttl Time during which a cached project is used without revalidation, in ms.
+     */
+    public ProjectCache(File cacheDir, String apiBaseUrl, String authorization, long ttl) {
+        this.dir = new File(cacheDir, "projects/" + ProjectsUtils.getBasename(apiBaseUrl) + "/"
+                + UploadCache.sha256(authorization).substring(0, 12));
+        this.ttl = ttl;
+    }
+
+    /**
+     * A cached project.
+     */
+    public static class Entry {
+
+        private final JsonNode project;
+        private final String etag;
+        private final long fetchedAt;
+
+        Entry(JsonNode project, String etag, long fetchedAt) {
+            this.project = project;
+            this.etag = etag;
+            this.fetchedAt = fetchedAt;
+        }
+
+        public JsonNode getProject() {
+            return project;
+        }
+
+        /**
+         * @return the ETag of the cached response, null if the API didn't send one
+         */
+        public String getEtag() {
+            return etag;
+        }
+    }
+
+    /**
+     * @param slug The project slug.
+     * @return the cached project, expired or not, null if not cached
+     */
+    public Entry get(String slug) {
+        File file = getFile(slug);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            JsonNode node = MAPPER.readTree(file);
+            if (node == null || !node.hasNonNull("project")) {
+                return null;
+            }
+            return new Entry(node.get("project"), node.hasNonNull("etag") ? node.get("etag").asText() : null,
+                    node.path("fetchedAt").asLong());
+        } catch (IOException e) {
+            // A corrupted entry is fetched again
+            return null;
+        }
+    }
+
+    /**
+     * @param entry A cached project.
+     * @return true if the project can be used without asking the API
+     */
+    public boolean isFresh(Entry entry) {
+        return System.currentTimeMillis() - entry.fetchedAt < ttl;
+    }
+
+    /**
+     * Caches a project, or renews the TTL of a revalidated one.
+     * @param slug The project slug.
+     * @param project The project returned by the API.
+     * @param etag The ETag of the response, null if none.
+     * @throws IOException if the cache can't be written
+     */
+    public void put(String slug, JsonNode project, String etag) throws IOException {
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put("fetchedAt", System.currentTimeMillis());
+        node.put("etag", etag);
+        node.set("project", project);
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Can't create directory " + dir);
+        }
+        // Written aside then moved, concurrent builds never read a partial entry
+        File file = getFile(slug);
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            MAPPER.writeValue(tmp, node);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    private File getFile(String slug) {
+        return new File(dir, ProjectsUtils.getBasename(slug) + ".json");
+    }
+}
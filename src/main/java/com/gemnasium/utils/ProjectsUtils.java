@@ -1,13 +1,34 @@
 package com.gemnasium.utils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -21,29 +42,267 @@ public class ProjectsUtils {
 
     public static final String DEPENDENCY_FILE_FORMAT_VERSION = "1.0";
 
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Number of dependencies from which JSON nodes are built in parallel, see ParallelJsonBenchmark
+    private static final int PARALLEL_THRESHOLD = 2000;
+
+    // Size of the JSON of a dependency file without dependencies
+    private static final long EMPTY_FILE_SIZE;
+
+    static {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try {
+            writeDependencyFileJson(MAPPER.createArrayNode(), os);
+        } catch (IOException e) {
+            // Can't happen when writing in memory
+            throw new IllegalStateException(e);
+        }
+        EMPTY_FILE_SIZE = os.size();
+    }
+
     public static String getBasename(String name) {
         return name.replaceAll("[^A-Za-z0-9._-]", "-");
     }
 
     public static String getDependencyFileContent(ArrayNode jsonDependencies) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        ObjectNode jsonNode = mapper.createObjectNode();
-        jsonNode.put("version", DEPENDENCY_FILE_FORMAT_VERSION);
-        jsonNode.set("dependencies", jsonDependencies);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try {
+            writeDependencyFileContent(jsonDependencies, os);
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            // Can't happen when writing in memory
+            throw new IllegalStateException(e);
+        }
+        return new String(os.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Writes the Base64 encoded dependency file, the JSON is streamed through the encoder
+     * without being buffered. The given stream is not closed.
+     * @param jsonDependencies The dependencies.
+     * @param os The output stream.
+     * @throws IOException if the content can't be written
+     */
+    public static void writeDependencyFileContent(ArrayNode jsonDependencies, OutputStream os) throws IOException {
+        OutputStream base64 = Metrics.timed(Base64.getEncoder().wrap(new NonClosingOutputStream(os)), "base64",
+                "json-bytes");
+        writeDependencyFileJson(jsonDependencies, base64);
+        // Closing the stream flushes the Base64 padding
+        base64.close();
+    }
+
+    private static void writeDependencyFileJson(ArrayNode jsonDependencies, OutputStream os) throws IOException {
+        JsonGenerator generator = MAPPER.getFactory().createGenerator(new NonClosingOutputStream(os));
+        generator.setPrettyPrinter(new DefaultPrettyPrinter());
+        generator.writeStartObject();
+        generator.writeStringField("version", DEPENDENCY_FILE_FORMAT_VERSION);
+        generator.writeFieldName("dependencies");
+        generator.writeStartArray();
+        for (JsonNode node : jsonDependencies) {
+            if (node instanceof ArtifactTable.ArtifactNode) {
+                // Shared nodes are serialized once for all the dependency files
+                generator.writeRawValue(getJson(node));
+            } else {
+                MAPPER.writeTree(generator, node);
+            }
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.close();
+    }
+
+    // The JSON of a dependency as written by writeDependencyFileContent, with the same indentation,
+    // kept with the node when it's shared
+    private static SerializedString getJson(JsonNode node) throws IOException {
+        SerializedString json = node instanceof ArtifactTable.ArtifactNode
+                ? ((ArtifactTable.ArtifactNode) node).getJson() : null;
+        if (json == null) {
+            StringWriter writer = new StringWriter();
+            JsonGenerator generator = MAPPER.getFactory().createGenerator(writer);
+            generator.setPrettyPrinter(new DefaultPrettyPrinter());
+            generator.writeStartObject();
+            generator.writeFieldName("dependencies");
+            generator.writeStartArray();
+            generator.flush();
+            int start = writer.getBuffer().length();
+            MAPPER.writeTree(generator, node);
+            generator.flush();
+            // The array value separator is written again by the generator writing the raw value
+            json = new SerializedString(writer.getBuffer().substring(start).trim());
+            if (node instanceof ArtifactTable.ArtifactNode) {
+                ((ArtifactTable.ArtifactNode) node).setJson(json);
+            }
+        }
+        return json;
+    }
+
+    /**
+     * Splits the dependency files whose Base64 content would exceed a size budget into parts.
+     * Files are cut between dependencies, in their original order, from the size of their JSON:
+     * the same dependencies are always split the same way, and a retried upload sends the same parts.
+     * The first part keeps the path of the file, the next ones have the same file name
+     * in a gemnasium-part-N directory next to it. A dependency larger than the budget is sent alone.
+     * @param files The dependency files.
+     * @param maxContentSize The maximum size of the Base64 content of a file, 0 for no limit.
+     * @return the parts, in the order of the files
+     * @throws IOException if a dependency can't be serialized
+     */
+    public static List<DependencyFile> splitDependencyFiles(List<DependencyFile> files, long maxContentSize)
+            throws IOException {
+        if (maxContentSize <= 0) {
+            return files;
+        }
+
+        List<DependencyFile> parts = new ArrayList<DependencyFile>(files.size());
+        for (DependencyFile file : files) {
+            ArrayNode part = MAPPER.createArrayNode();
+            long size = EMPTY_FILE_SIZE;
+            int partNumber = 1;
+            for (JsonNode dependency : file.getJsonDependencies()) {
+                // Array value separator included
+                long dependencySize = getJson(dependency).asUnquotedUTF8().length + 2;
+                if (part.size() > 0 && getBase64Size(size + dependencySize) > maxContentSize) {
+                    parts.add(new DependencyFile(getPartPath(file.getPath(), partNumber++), part));
+                    part = MAPPER.createArrayNode();
+                    size = EMPTY_FILE_SIZE;
+                }
+                part.add(dependency);
+                size += dependencySize;
+            }
+            parts.add(partNumber == 1 ? file : new DependencyFile(getPartPath(file.getPath(), partNumber), part));
+        }
+        return parts;
+    }
+
+    private static long getBase64Size(long size) {
+        return 4 * ((size + 2) / 3);
+    }
+
+    private static String getPartPath(String path, int partNumber) {
+        if (partNumber == 1) {
+            return path;
+        }
+        int slash = path.lastIndexOf('/');
+        return path.substring(0, slash + 1) + "gemnasium-part-" + partNumber + "/" + path.substring(slash + 1);
+    }
+
+    /**
+     * Writes the request body of the dependency files upload, that is a JSON array of
+     * path and Base64 encoded content objects. Contents are streamed into the given stream
+     * which is not closed.
+     * @param files The dependency files.
+     * @param os The output stream.
+     * @throws IOException if the body can't be written
+     */
+    public static void writeDependencyFiles(List<DependencyFile> files, OutputStream os) throws IOException {
+        writeDependencyFiles(files, os, 1);
+    }
+
+    /**
+     * Writes the request body of the dependency files upload, see {@link #writeDependencyFiles(List, OutputStream)}.
+     * With several threads, the contents of the next files are encoded in parallel while a file is written,
+     * at most one per thread is buffered in memory: files should be split first,
+     * see {@link #splitDependencyFiles(List, long)}.
+     * @param files The dependency files.
+     * @param os The output stream.
+     * @param threads The number of threads encoding contents ahead, 1 to stream every content.
+     * @throws IOException if the body can't be written
+     */
+    public static void writeDependencyFiles(List<DependencyFile> files, OutputStream os, int threads)
+            throws IOException {
+        ExecutorService executor = threads > 1 && files.size() > 1
+                ? Executors.newFixedThreadPool(Math.min(threads, files.size())) : null;
+        List<Future<byte[]>> contents = new ArrayList<Future<byte[]>>(files.size());
+        try {
+            JsonGenerator generator = MAPPER.getFactory().createGenerator(new NonClosingOutputStream(os));
+            generator.writeStartArray();
+            for (int i = 0; i < files.size(); i++) {
+                DependencyFile file = files.get(i);
+                generator.writeStartObject();
+                generator.writeStringField("path", file.getPath());
+                generator.writeFieldName("content");
+                // Base64 content doesn't need escaping, write it raw between quotes
+                generator.writeRawValue("\"");
+                generator.flush();
+                if (executor == null) {
+                    writeDependencyFileContent(file.getJsonDependencies(), os);
+                } else {
+                    while (contents.size() < files.size() && contents.size() < i + threads) {
+                        contents.add(executor.submit(encode(files.get(contents.size()))));
+                    }
+                    os.write(getContent(contents.get(i)));
+                    // Written contents are released
+                    contents.set(i, null);
+                }
+                generator.writeRaw('"');
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.close();
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    // Encodes a dependency file content, the time is added to the metrics of the calling execution
+    private static Callable<byte[]> encode(final DependencyFile file) {
+        final Metrics metrics = Metrics.current();
+        return new Callable<byte[]>() {
+            public byte[] call() throws IOException {
+                Metrics previous = Metrics.attach(metrics);
+                try {
+                    ByteArrayOutputStream content = new ByteArrayOutputStream();
+                    writeDependencyFileContent(file.getJsonDependencies(), content);
+                    return content.toByteArray();
+                } finally {
+                    Metrics.detach(previous);
+                }
+            }
+        };
+    }
 
-        String prettyJson = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(jsonNode);
-        return Base64.getEncoder().encodeToString((prettyJson).getBytes(StandardCharsets.UTF_8));
+    private static byte[] getContent(Future<byte[]> content) throws IOException {
+        try {
+            return content.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while encoding dependency files");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
     }
 
     public static List<Artifact> getFilteredDependencies(List<Artifact> artifacts, String ignoredScopes) {
+        return getFilteredDependencies(artifacts, getIgnoredScopes(ignoredScopes));
+    }
+
+    /**
+     * Parses a comma separated list of scopes.
+     * @param ignoredScopes Comma separated list of Maven dependency scopes to ignore.
+     * @return the set of scopes, empty if none
+     */
+    public static Set<String> getIgnoredScopes(String ignoredScopes) {
         if (ignoredScopes == null || ignoredScopes.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(ignoredScopes.split("\\s*,\\s*"))));
+    }
+
+    public static List<Artifact> getFilteredDependencies(List<Artifact> artifacts, Set<String> ignoredScopes) {
+        if (ignoredScopes.isEmpty()) {
             return artifacts;
         }
-        List<String> ignoredScopesList = Arrays.asList(ignoredScopes.split("\\s*,\\s*"));
 
-        List<Artifact> filteredDependencies = new ArrayList<Artifact>();
+        List<Artifact> filteredDependencies = new ArrayList<Artifact>(artifacts.size());
         for (Artifact art : artifacts) {
-            if (!ignoredScopesList.contains(art.getScope())) {
+            if (!ignoredScopes.contains(art.getScope())) {
                 filteredDependencies.add(art);
             }
         }
@@ -51,30 +310,103 @@ public class ProjectsUtils {
     }
 
     public static ArrayNode getJsonDependencies(List<Artifact> artifacts, List<Dependency> directDependencies) {
-        HashMap<String, String> requirements = new HashMap<String, String>(directDependencies.size());
+        return getJsonDependencies(artifacts, directDependencies, new DependencyTrails());
+    }
+
+    public static ArrayNode getJsonDependencies(List<Artifact> artifacts, List<Dependency> directDependencies,
+            DependencyTrails trails) {
+        return getJsonDependencies(artifacts, directDependencies, trails, null);
+    }
+
+    /**
+     * Gets dependencies as JSON.
+     * Parents and requirements of transitive dependencies are taken from the dependency graph
+     * when available, otherwise parents are computed from the dependency trails.
+     * @param artifacts The dependencies, direct and transitive.
+     * @param directDependencies The project direct dependencies.
+     * @param trails Computes parents from dependency trails.
+     * @param graph The project dependency graph, may be null.
+     * @return the dependencies as JSON
+     */
+    public static ArrayNode getJsonDependencies(List<Artifact> artifacts, List<Dependency> directDependencies,
+            DependencyTrails trails, DependencyGraph graph) {
+        return getJsonDependencies(artifacts, directDependencies, trails, graph, null);
+    }
+
+    /**
+     * Gets dependencies as JSON, see {@link #getJsonDependencies(List, List, DependencyTrails, DependencyGraph)}.
+     * @param artifacts The dependencies, direct and transitive.
+     * @param directDependencies The project direct dependencies.
+     * @param trails Computes parents from dependency trails.
+     * @param graph The project dependency graph, may be null.
+     * @param table The table sharing the dependency nodes of the build, may be null.
+     * @return the dependencies as JSON, nodes taken from the table must not be modified
+     */
+    public static ArrayNode getJsonDependencies(List<Artifact> artifacts, List<Dependency> directDependencies,
+            DependencyTrails trails, DependencyGraph graph, ArtifactTable table) {
+        // Nodes are built in parallel for large projects
+        return getJsonDependencies(artifacts, directDependencies, trails, graph, table,
+                artifacts.size() >= PARALLEL_THRESHOLD);
+    }
+
+    // Builds the nodes in parallel or not whatever the number of dependencies, the order is kept either way
+    static ArrayNode getJsonDependencies(final List<Artifact> artifacts, List<Dependency> directDependencies,
+            final DependencyTrails trails, final DependencyGraph graph, final ArtifactTable table, boolean parallel) {
+        final HashMap<String, String> requirements = new HashMap<String, String>(directDependencies.size());
         for (Dependency dep : directDependencies) {
             requirements.put(dep.getGroupId() + ":" + dep.getArtifactId(), dep.getVersion());
         }
 
-        ObjectMapper mapper = new ObjectMapper();
-        ArrayNode arrayNode = mapper.createArrayNode();
-        for (Artifact art : artifacts) {
-            ObjectNode artNode = depToJsonNode(mapper, art);
-            String requirement;
-            requirement = requirements.get(art.getGroupId() + ":" + art.getArtifactId());
-            // Temporary workaround for transitive dependencies
-            if (requirement == null){
-                requirement = art.getVersion();
+        final ObjectNode[] nodes = new ObjectNode[artifacts.size()];
+        IntStream indexes = IntStream.range(0, nodes.length);
+        // Nodes are added in the original order
+        if (parallel) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(new IntConsumer() {
+            public void accept(int i) {
+                nodes[i] = getJsonDependency(artifacts.get(i), requirements, trails, graph, table);
             }
-            artNode.put("requirement", requirement);
-            arrayNode.add(artNode);
+        });
+
+        ArrayNode arrayNode = MAPPER.createArrayNode();
+        for (ObjectNode node : nodes) {
+            arrayNode.add(node);
         }
         return arrayNode;
     }
 
-    private static ObjectNode depToJsonNode(ObjectMapper mapper, Artifact art) {
-        List<String> parents = getDependencyParents(new ArrayList<String>(art.getDependencyTrail()));
+    private static ObjectNode getJsonDependency(Artifact art, Map<String, String> requirements,
+            DependencyTrails trails, DependencyGraph graph, ArtifactTable table) {
+        int index = graph == null ? -1 : graph.indexOf(art);
+        List<String> parents;
+        String requirement = null;
+        if (index >= 0) {
+            parents = graph.getParents(index);
+            if (graph.isTransitive(index)) {
+                requirement = graph.getRequirement(index);
+            }
+        } else {
+            List<String> trail = art.getDependencyTrail();
+            parents = trail == null ? Collections.<String>emptyList() : trails.getParents(trail);
+        }
+        if (requirement == null) {
+            requirement = requirements.get(art.getGroupId() + ":" + art.getArtifactId());
+        }
+        // Falls back to the resolved version when the requirement is unknown
+        if (requirement == null) {
+            requirement = art.getVersion();
+        }
 
+        if (table != null) {
+            return table.getNode(art, parents, requirement);
+        }
+        ObjectNode artNode = depToJsonNode(MAPPER, art, parents);
+        artNode.put("requirement", requirement);
+        return artNode;
+    }
+
+    private static ObjectNode depToJsonNode(ObjectMapper mapper, Artifact art, List<String> parents) {
         ObjectNode jsonNode = mapper.createObjectNode();
         jsonNode.put("groupId", art.getGroupId());
         jsonNode.put("artifactId", art.getArtifactId());
@@ -83,27 +415,30 @@ public class ProjectsUtils {
         jsonNode.put("version", art.getVersion());
         jsonNode.put("scope", art.getScope());
         jsonNode.put("transitive", !parents.isEmpty());
-        jsonNode.set("parents", mapper.valueToTree(parents));
+        ArrayNode parentsNode = jsonNode.putArray("parents");
+        for (String parent : parents) {
+            parentsNode.add(parent);
+        }
         jsonNode.put("optional", art.isOptional());
 
         return jsonNode;
     }
 
-    private static List<String> getDependencyParents(List<String> trail) {
-        List<String> parents = new ArrayList<String>();
-        try {
-            // Remove the first and the last elements of the dependency trail which are
-            // respectively the project artifact and the current dependency artifact
-            trail = trail.subList(1, trail.size() - 1);
-        } catch (IndexOutOfBoundsException e) {
-            return parents;
+    private static class NonClosingOutputStream extends FilterOutputStream {
+
+        NonClosingOutputStream(OutputStream os) {
+            super(os);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
         }
 
-        for (String gav : trail) {
-            String[] items = gav.split(":");
-            parents.add(items[0] + ":" + items[1]);
+        @Override
+        public void close() throws IOException {
+            flush();
         }
-        return parents;
     }
 
 }
@@ -0,0 +1,113 @@
+package com.gemnasium.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Utils for properties files shared by concurrent builds.
+ */
+public class PropertiesUtils {
+
+    // File locks are held by the JVM, threads of a build are serialized apart
+    private static final ConcurrentMap<String, Object> MONITORS = new ConcurrentHashMap<String, Object>();
+
+    /**
+     * Loads a properties file.
+     * @param file The properties file.
+     * @return the properties, empty if the file doesn't exist
+     * @throws IOException if the file can't be read
+     */
+    public static Properties load(File file) throws IOException {
+        Properties properties = new Properties();
+        if (!file.exists()) {
+            return properties;
+        }
+        try (InputStream is = new FileInputStream(file)) {
+            properties.load(is);
+        }
+        return properties;
+    }
+
+    /**
+     * Adds or replaces properties of a file.
+     * The file is read and written under an exclusive lock, so that concurrent builds don't lose updates,
+     * and it's replaced atomically by a complete new file, so that readers never see a partial file.
+     * The lock file lives in the temporary directory, out of the project sources.
+     * @param file The properties file, created with its directory if needed.
+     * @param updatedProperties The properties to add or replace.
+     * @param comments The comments of the file.
+     * @throws IOException if the file can't be updated
+     */
+    public static void update(File file, Properties updatedProperties, String comments) throws IOException {
+        File target = file.getAbsoluteFile();
+        String path = target.getCanonicalPath();
+        Object monitor = MONITORS.get(path);
+        if (monitor == null) {
+            Object previous = MONITORS.putIfAbsent(path, monitor = new Object());
+            monitor = previous == null ? monitor : previous;
+        }
+
+        File lockFile = new File(System.getProperty("java.io.tmpdir"), "gemnasium-" + sha1(path) + ".lock");
+        synchronized (monitor) {
+            try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE)) {
+                FileLock lock = channel.lock();
+                try {
+                    Properties properties = load(target);
+                    properties.putAll(updatedProperties);
+
+                    File dir = target.getParentFile();
+                    if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+                        throw new IOException("Can't create directory " + dir);
+                    }
+                    File tmp = File.createTempFile(target.getName(), ".tmp", dir);
+                    try {
+                        try (OutputStream os = new FileOutputStream(tmp)) {
+                            properties.store(os, comments);
+                        }
+                        try {
+                            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                                    StandardCopyOption.REPLACE_EXISTING);
+                        } catch (AtomicMoveNotSupportedException e) {
+                            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                        }
+                    } finally {
+                        Files.deleteIfExists(tmp.toPath());
+                    }
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    private static String sha1(String value) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest(value.getBytes(StandardCharsets.UTF_8))) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
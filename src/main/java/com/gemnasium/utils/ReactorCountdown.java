@@ -0,0 +1,146 @@
+package com.gemnasium.utils;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Countdown of the executions of a goal expected in the reactor, to act once the last one is done
+ * whatever the order modules finish in, parallel builds included.
+ *
+ * Projects failing or skipped before running the goal are counted down when Maven reports them,
+ * and if they were the last ones expected the ended action is run in place of the last execution,
+ * see {@link #setEndedAction(Runnable)}. A warning is logged at the end of the build if the countdown
+ * wasn't reached.
+ */
+public class ReactorCountdown {
+
+    private final String goal;
+    private final int expected;
+    private final Map<String, Integer> pending;
+    private final Set<String> ended = new LinkedHashSet<String>();
+    private int done;
+    private boolean reached;
+    private boolean listening;
+    private Runnable endedAction;
+
+    /**
+     * @param goal The goal name, for the warning.
+     * @param expectedExecutions The number of executions of the goal expected per project id.
+     */
+    public ReactorCountdown(String goal, Map<String, Integer> expectedExecutions) {
+        this.goal = goal;
+        this.pending = new LinkedHashMap<String, Integer>(expectedExecutions);
+        int total = 0;
+        for (int executions : expectedExecutions.values()) {
+            total += executions;
+        }
+        this.expected = total;
+    }
+
+    /**
+     * Counts down an execution of the goal, successful or not.
+     * @param projectId The id of the project running the goal.
+     * @return true if it was the last expected execution
+     */
+    public synchronized boolean executionDone(String projectId) {
+        Integer remaining = pending.get(projectId);
+        if (remaining != null && remaining > 1) {
+            pending.put(projectId, remaining - 1);
+        } else {
+            pending.remove(projectId);
+        }
+        done++;
+        if (!reached && pending.isEmpty()) {
+            reached = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of executions done
+     */
+    public synchronized int getDone() {
+        return done;
+    }
+
+    /**
+     * Sets the action run when the countdown is reached by projects failing or being skipped, after
+     * at least one execution: the last expected execution never comes, for instance when the last module
+     * fails in a --fail-at-end build or isn't built by a resumed build.
+     * @param action The action, run by the thread reporting the project, exceptions are not caught.
+     */
+    public synchronized void setEndedAction(Runnable action) {
+        this.endedAction = action;
+    }
+
+    // A project that failed or was skipped won't run the goal anymore
+    void projectEnded(String projectId) {
+        Runnable action = null;
+        synchronized (this) {
+            if (pending.remove(projectId) == null) {
+                return;
+            }
+            ended.add(projectId);
+            if (!reached && pending.isEmpty() && done > 0 && endedAction != null) {
+                reached = true;
+                action = endedAction;
+            }
+        }
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    private synchronized String getMissedReport() {
+        if (reached || done == 0) {
+            return null;
+        }
+        Set<String> missing = new LinkedHashSet<String>(ended);
+        missing.addAll(pending.keySet());
+        return done + " of " + expected + " expected executions of " + goal + " ran, not run by " + missing;
+    }
+
+    /**
+     * Listens to the build events of the session, only the first call has an effect.
+     * @param session The Maven session.
+     * @param log The logger of the warning.
+     * @param missed What isn't done if the countdown isn't reached, for the warning.
+     */
+    public synchronized void listen(MavenSession session, final Log log, final String missed) {
+        if (listening) {
+            return;
+        }
+        listening = true;
+        final ExecutionListener delegate = session.getRequest().getExecutionListener();
+        session.getRequest().setExecutionListener(new DelegatingExecutionListener(delegate) {
+            @Override
+            public void projectSkipped(ExecutionEvent event) {
+                projectEnded(event.getProject().getId());
+                super.projectSkipped(event);
+            }
+
+            @Override
+            public void projectFailed(ExecutionEvent event) {
+                projectEnded(event.getProject().getId());
+                super.projectFailed(event);
+            }
+
+            @Override
+            public void sessionEnded(ExecutionEvent event) {
+                String report = getMissedReport();
+                if (report != null) {
+                    log.warn(missed + ": " + report);
+                }
+                super.sessionEnded(event);
+            }
+        });
+    }
+}
@@ -0,0 +1,72 @@
+package com.gemnasium.utils;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+/**
+ * Retry policy of the API calls: exponential backoff with full jitter,
+ * unless the API tells when to retry with a Retry-After header.
+ *
+ * Non-idempotent calls (POST) are only retried when the API can't have processed them:
+ * the connection failed, or the API rejected the call asking to come back later.
+ */
+public class RetryPolicy {
+
+    private final int maxRetries;
+    private final long initialBackoff;
+    private final long maxBackoff;
+
+    /**
+     * @param maxRetries Maximum number of retries of a call, 0 to disable retries.
+     * @param initialBackoff Maximum wait before the first retry, in ms, doubled at each retry.
+     * @param maxBackoff Maximum wait before a retry, in ms, including Retry-After delays.
+     */
+    public RetryPolicy(int maxRetries, long initialBackoff, long maxBackoff) {
+        this.maxRetries = maxRetries;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Tells if a failure is transient: network errors, throttling and server errors.
+     * A non-idempotent call is only retried if it wasn't sent (connection failure), throttled (429)
+     * or if the API is unavailable and tells when to retry (503 with Retry-After).
+     * @param e The failure.
+     * @param idempotent Whether the call can be repeated without side effects.
+     * @return true if the call can be retried
+     */
+    public boolean isRetryable(IOException e, boolean idempotent) {
+        if (e instanceof CircuitBreaker.OpenCircuitException || e instanceof JsonProcessingException) {
+            return false;
+        }
+        if (e instanceof ApiClient.ApiException) {
+            ApiClient.ApiException apiException = (ApiClient.ApiException) e;
+            int status = apiException.getStatus();
+            if (!idempotent) {
+                return status == 429 || (status == 503 && apiException.getRetryAfter() >= 0);
+            }
+            return status == 429 || status >= 500;
+        }
+        // The request may have been processed if the connection failed after it was sent
+        return idempotent || e instanceof ApiClient.ConnectException;
+    }
+
+    /**
+     * @param retry The retry number, starting at 0.
+     * @param retryAfter The delay requested by the API in ms, -1 if none.
+     * @return the wait before the retry, in ms
+     */
+    public long getDelay(int retry, long retryAfter) {
+        if (retryAfter >= 0) {
+            return Math.min(retryAfter, maxBackoff);
+        }
+        long backoff = Math.min(maxBackoff, initialBackoff << Math.min(retry, 30));
+        return ThreadLocalRandom.current().nextLong(backoff + 1);
+    }
+}
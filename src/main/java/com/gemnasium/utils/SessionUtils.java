@@ -0,0 +1,54 @@
+package com.gemnasium.utils;
+
+import java.util.concurrent.Callable;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.eclipse.aether.SessionData;
+
+/**
+ * Utils for state shared by all the plugin executions of a build session.
+ */
+public class SessionUtils {
+
+    /**
+     * Gets the value stored in the build session under the given key.
+     * @param session The current maven session.
+     * @param key The key of the value.
+     * @return the value, null if none
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T get(MavenSession session, Object key) {
+        return (T) session.getRepositorySession().getData().get(key);
+    }
+
+    /**
+     * Gets the value stored in the build session under the given key,
+     * creating it with the given factory if it doesn't exist yet.
+     * Safe to call from parallel builds (-T), only one value is ever stored for a key.
+     * @param session The current maven session.
+     * @param key The key of the value, usually a constant string.
+     * @param factory Creates the value when missing.
+     * @return the value shared by the whole build session
+     * @throws MojoExecutionException if the value can't be created.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T getOrCreate(MavenSession session, Object key, Callable<T> factory)
+            throws MojoExecutionException {
+        SessionData data = session.getRepositorySession().getData();
+        Object value = data.get(key);
+        while (value == null) {
+            try {
+                value = factory.call();
+            } catch (MojoExecutionException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new MojoExecutionException("Can't initialize build session data: " + key, e);
+            }
+            if (!data.set(key, null, value)) {
+                value = data.get(key);
+            }
+        }
+        return (T) value;
+    }
+}
@@ -0,0 +1,526 @@
+package com.gemnasium.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Local agent uploading the dependency files handed over by many builds.
+ *
+ * Builds send their payloads to the agent on a loopback socket and go on right away.
+ * The agent merges the payloads received for the same project branch during a batch interval
+ * into a single upload, drops files identical to a pending or recently uploaded version,
+ * and uploads them over the warm connections of its long-lived API client.
+ * Uploads of a project branch never run concurrently, so that they reach the API in order.
+ * Batches that can't be uploaded are written to the upload spool, for the flush goal.
+ *
+ * The agent uploads with its own API credentials, builds never send theirs. Builds authenticate
+ * with a random token the agent writes to a file only readable by its user, see {@link #getTokenFile(File, int)}.
+ *
+ * Messages are UTF-8 JSON documents prefixed by their length, see {@link #send(String, File, ObjectNode, int)}.
+ */
+public class UploadAgent {
+
+    public static final String QUEUED = "queued";
+    public static final String DUPLICATE = "duplicate";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int MAX_MESSAGE_SIZE = 512 * 1024 * 1024;
+
+    // Number of uploaded file fingerprints kept to drop duplicates, the least recently used are evicted
+    private static final int MAX_UPLOADED_FILES = 10000;
+
+    private final int port;
+    private final long batchInterval;
+    private final String apiBaseUrl;
+    private final ApiClient client;
+    private final UploadSpool spool;
+    private final File tokenDir;
+    private final Log log;
+
+    private final ExecutorService connections;
+    private final ExecutorService uploads;
+    private final ScheduledExecutorService flusher;
+    private ServerSocket serverSocket;
+    private File tokenFile;
+    private byte[] token;
+
+    private final Map<String, Batch> pending = new LinkedHashMap<String, Batch>();
+    private final Set<String> uploading = new HashSet<String>();
+    private final Map<String, String> uploaded = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_UPLOADED_FILES;
+        }
+    };
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong spooled = new AtomicLong();
+
+    /**
+     * @param port The loopback port to listen on, 0 for any free port.
+     * @param batchInterval Time during which payloads are collected before being uploaded, in ms.
+     * @param uploadThreads Maximum number of concurrent uploads.
+     * @param apiBaseUrl The base URL of the API, payloads for other APIs are rejected.
+     * @param client The API client of the agent, with the agent credentials.
+     * @param spool The spool of the batches that can't be uploaded.
+     * @param tokenDir The directory of the token file.
+     * @param log Logger of uploads.
+     */
+    public UploadAgent(int port, long batchInterval, int uploadThreads, String apiBaseUrl, ApiClient client,
+            UploadSpool spool, File tokenDir, Log log) {
+        this.port = port;
+        this.batchInterval = batchInterval;
+        this.apiBaseUrl = apiBaseUrl;
+        this.client = client;
+        this.spool = spool;
+        this.tokenDir = tokenDir;
+        this.log = log;
+        this.connections = Executors.newCachedThreadPool(threadFactory("gemnasium-agent-connection"));
+        this.uploads = Executors.newFixedThreadPool(uploadThreads, threadFactory("gemnasium-agent-upload"));
+        this.flusher = Executors.newSingleThreadScheduledExecutor(threadFactory("gemnasium-agent-flush"));
+    }
+
+    private static ThreadFactory threadFactory(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Dependency files of a project branch waiting to be uploaded.
+     */
+    private static class Batch {
+
+        private final String projectSlug;
+        private final String branch;
+        private String revision;
+        private long time;
+        private int payloads;
+        private final Map<String, ArrayNode> files = new LinkedHashMap<String, ArrayNode>();
+        private final Map<String, String> fingerprints = new HashMap<String, String>();
+
+        Batch(String projectSlug, String branch) {
+            this.projectSlug = projectSlug;
+            this.branch = branch;
+        }
+    }
+
+    /**
+     * @param dir The directory of the token file, the plugin cache directory.
+     * @param port The port of the agent.
+     * @return the file holding the token of the agent listening on the port
+     */
+    public static File getTokenFile(File dir, int port) {
+        return new File(dir, "agent-" + port + ".token");
+    }
+
+    /**
+     * Starts listening and uploading, and writes a new token file.
+     * @return the port the agent listens on
+     * @throws IOException if the port can't be bound or the token file can't be written
+     */
+    public int start() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        String newToken = toHex(random);
+        tokenFile = getTokenFile(tokenDir, serverSocket.getLocalPort());
+        try {
+            writeToken(tokenFile, newToken);
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+        token = newToken.getBytes(StandardCharsets.UTF_8);
+        connections.submit(new Runnable() {
+            public void run() {
+                acceptConnections();
+            }
+        });
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                flush();
+            }
+        }, batchInterval, batchInterval, TimeUnit.MILLISECONDS);
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops listening, then uploads the pending payloads and waits for the uploads.
+     * @throws InterruptedException if interrupted while waiting for the uploads
+     */
+    public void stop() throws InterruptedException {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            log.debug("Can't close the agent socket: " + e.getMessage());
+        }
+        if (!tokenFile.delete()) {
+            log.debug("Can't delete the agent token file " + tokenFile);
+        }
+        connections.shutdownNow();
+        flusher.shutdownNow();
+        flusher.awaitTermination(1, TimeUnit.MINUTES);
+        // Batches waiting for an upload in progress are uploaded once it's done
+        while (hasPending()) {
+            flush();
+            Thread.sleep(Math.min(batchInterval, 100));
+        }
+        uploads.shutdown();
+        uploads.awaitTermination(1, TimeUnit.HOURS);
+    }
+
+    private synchronized boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * @return a summary of the payloads received and uploaded so far
+     */
+    public String getStatistics() {
+        return received.get() + " payload(s) received, " + duplicates.get() + " duplicate(s) dropped, "
+                + requests.get() + " upload request(s), " + failures.get() + " failed, " + spooled.get() + " spooled";
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    log.warn("Upload agent can't accept connections: " + e.getMessage());
+                }
+                return;
+            }
+            connections.submit(new Runnable() {
+                public void run() {
+                    handle(socket);
+                }
+            });
+        }
+    }
+
+    // Handles the messages of a connection until the client closes it
+    private void handle(Socket socket) {
+        try (Socket s = socket;
+                DataInputStream in = new DataInputStream(s.getInputStream());
+                DataOutputStream out = new DataOutputStream(s.getOutputStream())) {
+            while (true) {
+                JsonNode payload;
+                try {
+                    payload = readMessage(in);
+                } catch (EOFException e) {
+                    return;
+                }
+                ObjectNode reply = MAPPER.createObjectNode();
+                try {
+                    reply.put("status", submit(payload));
+                } catch (IllegalArgumentException e) {
+                    reply.put("status", "error");
+                    reply.put("message", e.getMessage());
+                }
+                writeMessage(out, reply);
+            }
+        } catch (SocketException e) {
+            log.debug("Upload agent connection closed: " + e.getMessage());
+        } catch (IOException e) {
+            log.warn("Upload agent can't read a payload: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Queues the dependency files of a payload.
+     * @param payload The payload sent by a build.
+     * @return {@link #QUEUED}, or {@link #DUPLICATE} if all its files are already pending or uploaded
+     * @throws IllegalArgumentException if the payload is invalid, its token wrong or its API another one
+     */
+    synchronized String submit(JsonNode payload) {
+        String payloadToken = payload.path("token").asText("");
+        if (!MessageDigest.isEqual(token, payloadToken.getBytes(StandardCharsets.UTF_8))) {
+            throw new IllegalArgumentException("invalid token, see " + tokenFile);
+        }
+        String projectSlug = payload.path("projectSlug").asText(null);
+        if (projectSlug == null || projectSlug.isEmpty() || !payload.path("files").isArray()) {
+            throw new IllegalArgumentException("projectSlug and files are required");
+        }
+        if (!apiBaseUrl.equals(payload.path("apiBaseUrl").asText(null))) {
+            throw new IllegalArgumentException("the agent only sends to " + apiBaseUrl);
+        }
+        String branch = payload.path("branch").asText(null);
+        String key = projectSlug + "\n" + branch;
+        received.incrementAndGet();
+
+        Batch batch = pending.get(key);
+        boolean queued = false;
+        for (JsonNode file : payload.get("files")) {
+            String path = file.path("path").asText(null);
+            JsonNode dependencies = file.get("dependencies");
+            if (path == null || dependencies == null || !dependencies.isArray()) {
+                throw new IllegalArgumentException("files must have a path and dependencies");
+            }
+            String fingerprint = UploadCache.fingerprint(
+                    Collections.singletonList(new DependencyFile(path, (ArrayNode) dependencies)));
+            String pendingFingerprint = batch == null ? null : batch.fingerprints.get(path);
+            if (fingerprint.equals(pendingFingerprint)
+                    || (pendingFingerprint == null && fingerprint.equals(uploaded.get(key + "\n" + path)))) {
+                continue;
+            }
+            if (batch == null) {
+                batch = new Batch(projectSlug, branch);
+                pending.put(key, batch);
+            }
+            batch.files.put(path, (ArrayNode) dependencies);
+            batch.fingerprints.put(path, fingerprint);
+            queued = true;
+        }
+        if (!queued) {
+            duplicates.incrementAndGet();
+            return DUPLICATE;
+        }
+        batch.revision = payload.path("revision").asText(null);
+        batch.time = System.currentTimeMillis();
+        batch.payloads++;
+        return QUEUED;
+    }
+
+    /**
+     * Starts the uploads of the pending batches, except the ones of project branches being uploaded.
+     */
+    void flush() {
+        List<Map.Entry<String, Batch>> batches = new ArrayList<Map.Entry<String, Batch>>();
+        synchronized (this) {
+            for (Map.Entry<String, Batch> entry : pending.entrySet()) {
+                if (!uploading.contains(entry.getKey())) {
+                    batches.add(entry);
+                }
+            }
+            for (Map.Entry<String, Batch> entry : batches) {
+                pending.remove(entry.getKey());
+                uploading.add(entry.getKey());
+            }
+        }
+        for (final Map.Entry<String, Batch> entry : batches) {
+            uploads.submit(new Runnable() {
+                public void run() {
+                    try {
+                        upload(entry.getValue());
+                        synchronized (UploadAgent.this) {
+                            for (Map.Entry<String, String> fingerprint : entry.getValue().fingerprints.entrySet()) {
+                                uploaded.put(entry.getKey() + "\n" + fingerprint.getKey(), fingerprint.getValue());
+                            }
+                        }
+                    } catch (IOException e) {
+                        failures.incrementAndGet();
+                        log.error("Upload agent failed to send the dependencies of " + entry.getValue().projectSlug
+                                + ": " + e.getMessage());
+                        spool(entry.getValue());
+                    } finally {
+                        synchronized (UploadAgent.this) {
+                            uploading.remove(entry.getKey());
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private static List<DependencyFile> getFiles(Batch batch) {
+        List<DependencyFile> files = new ArrayList<DependencyFile>();
+        for (Map.Entry<String, ArrayNode> file : batch.files.entrySet()) {
+            files.add(new DependencyFile(file.getKey(), file.getValue()));
+        }
+        return files;
+    }
+
+    private static String getPath(Batch batch) {
+        return "/projects/" + batch.projectSlug + "/dependency_files";
+    }
+
+    // Writes a batch that can't be uploaded to the spool, as a full upload
+    private void spool(Batch batch) {
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            ProjectsUtils.writeDependencyFiles(getFiles(batch), body);
+            spool.append(new UploadSpool.Entry(apiBaseUrl, getPath(batch), batch.projectSlug, batch.branch,
+                    batch.revision, batch.time, body.toByteArray()));
+            spooled.incrementAndGet();
+            log.warn("Upload agent spooled the dependencies of " + batch.projectSlug
+                    + ", they will be sent by the flush goal");
+        } catch (IOException e) {
+            log.error("Upload agent can't spool the dependencies of " + batch.projectSlug + ": " + e.getMessage());
+        }
+    }
+
+    private void upload(Batch batch) throws IOException {
+        long start = System.currentTimeMillis();
+        final List<DependencyFile> files = getFiles(batch);
+        Map<String, String> headers = new HashMap<String, String>();
+        if (batch.branch != null && !batch.branch.isEmpty()) {
+            headers.put("X-Gms-Branch", batch.branch);
+        }
+        if (batch.revision != null && !batch.revision.isEmpty()) {
+            headers.put("X-Gms-Revision", batch.revision);
+        }
+
+        requests.incrementAndGet();
+        JsonNode node = client.execute("POST", getPath(batch), headers, new ApiClient.RequestBody() {
+            public long getLength() {
+                return -1;
+            }
+
+            public void writeTo(OutputStream os) throws IOException {
+                ProjectsUtils.writeDependencyFiles(files, os);
+            }
+        }).getBody();
+        if (node == null || node.path("commit_sha").asText().isEmpty()) {
+            throw new IOException("no new commit was returned by the API");
+        }
+        log.info("Upload agent sent " + files.size() + " file(s) of " + batch.payloads + " payload(s) to "
+                + batch.projectSlug + " in " + (System.currentTimeMillis() - start) + " ms, commit "
+                + node.get("commit_sha").asText());
+    }
+
+    /**
+     * Hands a payload over to a running agent, authenticated with the token of the agent.
+     * @param address The agent address, host:port.
+     * @param tokenDir The directory of the token file, the plugin cache directory.
+     * @param payload The payload: apiBaseUrl, projectSlug, branch, revision and
+     * files, an array of path and dependencies objects.
+     * @param timeout Connect and read timeout in ms.
+     * @return {@link #QUEUED} or {@link #DUPLICATE}
+     * @throws IOException if the agent is unreachable, its token can't be read or it rejects the payload
+     */
+    public static String send(String address, File tokenDir, ObjectNode payload, int timeout) throws IOException {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IOException("Invalid agent address, expected host:port: " + address);
+        }
+        int agentPort;
+        try {
+            agentPort = Integer.parseInt(address.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid agent address, expected host:port: " + address);
+        }
+        File file = getTokenFile(tokenDir, agentPort);
+        if (!file.isFile()) {
+            throw new IOException("No agent token in " + file + ", the agent must run as the same user");
+        }
+        ObjectNode message = payload.deepCopy();
+        message.put("token", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim());
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(address.substring(0, colon), agentPort), timeout);
+            socket.setSoTimeout(timeout);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            writeMessage(out, message);
+            JsonNode reply = readMessage(new DataInputStream(socket.getInputStream()));
+            String status = reply.path("status").asText();
+            if (!QUEUED.equals(status) && !DUPLICATE.equals(status)) {
+                throw new IOException("Upload agent rejected the payload: " + reply.path("message").asText(status));
+            }
+            return status;
+        }
+    }
+
+    // Writes the token to a file only readable and writable by the user, replacing the token of a previous agent
+    private static void writeToken(File file, String token) throws IOException {
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Can't create directory " + dir);
+        }
+        Path tmp;
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            tmp = Files.createTempFile(dir.toPath(), file.getName(), ".tmp",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            tmp = Files.createTempFile(dir.toPath(), file.getName(), ".tmp");
+            File tmpFile = tmp.toFile();
+            if (!tmpFile.setReadable(false, false) || !tmpFile.setReadable(true, true)
+                    || !tmpFile.setWritable(false, false) || !tmpFile.setWritable(true, true)) {
+                Files.deleteIfExists(tmp);
+                throw new IOException("Can't restrict the permissions of " + tmpFile);
+            }
+        }
+        try {
+            Files.write(tmp, token.getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static JsonNode readMessage(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_MESSAGE_SIZE) {
+            throw new IOException("Invalid message length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return MAPPER.readTree(bytes);
+    }
+
+    private static void writeMessage(DataOutputStream out, JsonNode message) throws IOException {
+        byte[] bytes = MAPPER.writeValueAsBytes(message);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.flush();
+    }
+}
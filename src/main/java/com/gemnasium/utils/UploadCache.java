@@ -0,0 +1,176 @@
+package com.gemnasium.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Local cache of the last successful upload of a project branch,
+ * used to skip uploads when the dependencies haven't changed and to compute
+ * what changed since then.
+ *
+ * Uploads are cached per API and per sender: modules sending their own files to the same project
+ * don't overwrite each other's last upload.
+ */
+public class UploadCache {
+
+    private static final String DEFAULT_BRANCH = "default";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final File file;
+    private final File snapshotFile;
+    private Properties properties;
+
+    /**
+     * @param cacheDir The plugin cache directory.
+     * @param apiBaseUrl The base URL of the API receiving the uploads.
+     * @param projectSlug The project identifier on Gemnasium.
+     * @param projectBranch Current branch, may be null.
+     * @param sender What sends the files: the module groupId:artifactId, or the reactor in aggregate mode.
+     */
+    public UploadCache(File cacheDir, String apiBaseUrl, String projectSlug, String projectBranch, String sender) {
+        String branch = projectBranch == null || projectBranch.isEmpty() ? DEFAULT_BRANCH : projectBranch;
+        String name = "uploads/" + ProjectsUtils.getBasename(projectSlug) + "/" + ProjectsUtils.getBasename(branch)
+                + "/" + ProjectsUtils.getBasename(sender) + "-" + sha256(apiBaseUrl).substring(0, 12);
+        this.file = new File(cacheDir, name + ".properties");
+        this.snapshotFile = new File(cacheDir, name + ".json");
+    }
+
+    /**
+     * Computes the fingerprint of dependency files, based on their paths and canonical JSON content.
+     * @param files The dependency files.
+     * @return the hex encoded SHA-256 of the files
+     */
+    public static String fingerprint(List<DependencyFile> files) {
+        MessageDigest digest = getDigest();
+        for (DependencyFile file : files) {
+            digest.update(file.getPath().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(file.getJsonDependencies().toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        return toHex(digest);
+    }
+
+    static String sha256(String text) {
+        MessageDigest digest = getDigest();
+        digest.update(String.valueOf(text).getBytes(StandardCharsets.UTF_8));
+        return toHex(digest);
+    }
+
+    private static MessageDigest getDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(MessageDigest digest) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @param fingerprint The fingerprint of the dependency files about to be sent.
+     * @return the commit sha of the last upload if it had the same fingerprint, null otherwise
+     */
+    public String getCommitSha(String fingerprint) {
+        if (!fingerprint.equals(getProperties().getProperty("fingerprint"))) {
+            return null;
+        }
+        return getLastCommitSha();
+    }
+
+    /**
+     * @return the commit sha of the last upload, null if unknown
+     */
+    public String getLastCommitSha() {
+        return getProperties().getProperty("commitSha");
+    }
+
+    /**
+     * @return the dependencies of the last upload indexed by file path, null if unknown
+     */
+    public Map<String, ArrayNode> getLastSnapshot() {
+        if (!snapshotFile.exists()) {
+            return null;
+        }
+        JsonNode node;
+        try {
+            node = MAPPER.readTree(snapshotFile);
+        } catch (IOException e) {
+            return null;
+        }
+        if (node == null || !node.isObject()) {
+            return null;
+        }
+        Map<String, ArrayNode> snapshot = new LinkedHashMap<String, ArrayNode>();
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (field.getValue().isArray()) {
+                snapshot.put(field.getKey(), (ArrayNode) field.getValue());
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Records a successful upload.
+     * @param fingerprint The fingerprint of the sent dependency files.
+     * @param commitSha The commit sha returned by the API.
+     * @param files The sent dependency files.
+     * @throws IOException if the cache can't be written
+     */
+    public void store(String fingerprint, String commitSha, List<DependencyFile> files) throws IOException {
+        file.getParentFile().mkdirs();
+
+        ObjectNode snapshot = MAPPER.createObjectNode();
+        for (DependencyFile dependencyFile : files) {
+            snapshot.set(dependencyFile.getPath(), dependencyFile.getJsonDependencies());
+        }
+        MAPPER.writeValue(snapshotFile, snapshot);
+
+        Properties newProperties = new Properties();
+        newProperties.setProperty("fingerprint", fingerprint);
+        newProperties.setProperty("commitSha", commitSha);
+        try (OutputStream os = new FileOutputStream(file)) {
+            newProperties.store(os, "Gemnasium last upload");
+        }
+        properties = newProperties;
+    }
+
+    private Properties getProperties() {
+        if (properties == null) {
+            properties = new Properties();
+            if (file.exists()) {
+                try (InputStream is = new FileInputStream(file)) {
+                    properties.load(is);
+                } catch (IOException e) {
+                    properties = new Properties();
+                }
+            }
+        }
+        return properties;
+    }
+}
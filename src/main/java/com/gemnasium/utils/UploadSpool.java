@@ -0,0 +1,417 @@
+package com.gemnasium.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Durable queue of the uploads that couldn't reach the API, drained later.
+ *
+ * Uploads are appended to a journal shared by all the builds using the same spool directory.
+ * A record is only acknowledged once it's synced to disk, and the threads appending at the same
+ * time share a single sync. Each record is checksummed, a record torn by a crash is ignored.
+ *
+ * Draining moves the journal content to a draining file, so that builds can go on appending,
+ * and keeps the newest upload of each project branch only.
+ * Uploads that still fail are appended to the journal again.
+ *
+ * Records: magic, header length, body length, CRC32 of header and body, JSON header, body.
+ */
+public class UploadSpool {
+
+    private static final int MAGIC = 0x474d5351; // GMSQ
+    private static final int RECORD_HEADER_SIZE = 20;
+    private static final String JOURNAL_FILE_NAME = "journal.gmsq";
+    private static final String DRAINING_PREFIX = "draining-";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final File dir;
+    private final File journalFile;
+    private FileChannel channel;
+    private long written;
+
+    private final Object syncLock = new Object();
+    private long synced;
+    private long syncs;
+
+    /**
+     * An upload waiting in the spool.
+     */
+    public static class Entry {
+
+        private final String apiBaseUrl;
+        private final String path;
+        private final String projectSlug;
+        private final String branch;
+        private final String revision;
+        private final long time;
+        private final byte[] body;
+
+        /**
+         * @param apiBaseUrl The base URL of the API.
+         * @param path The path of the upload endpoint.
+         * @param projectSlug The project identifier on Gemnasium.
+         * @param branch The project branch, may be null.
+         * @param revision The project revision, may be null.
+         * @param time The time of the upload attempt, in ms.
+         * @param body The request body, ready to be sent.
+         */
+        public Entry(String apiBaseUrl, String path, String projectSlug, String branch, String revision, long time,
+                byte[] body) {
+            this.apiBaseUrl = apiBaseUrl;
+            this.path = path;
+            this.projectSlug = projectSlug;
+            this.branch = branch;
+            this.revision = revision;
+            this.time = time;
+            this.body = body;
+        }
+
+        public String getApiBaseUrl() {
+            return apiBaseUrl;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getProjectSlug() {
+            return projectSlug;
+        }
+
+        public String getBranch() {
+            return branch;
+        }
+
+        public String getRevision() {
+            return revision;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * @return the key of the project branch, see {@link UploadSpool#key(String, String, String)}
+         */
+        public String getKey() {
+            return key(apiBaseUrl, projectSlug, branch);
+        }
+    }
+
+    /**
+     * @param apiBaseUrl The base URL of the API.
+     * @param projectSlug The project identifier on Gemnasium.
+     * @param branch The project branch, may be null.
+     * @return the key identifying the uploads of a project branch, a newer upload supersedes older ones
+     */
+    public static String key(String apiBaseUrl, String projectSlug, String branch) {
+        return apiBaseUrl + "\n" + projectSlug + "\n" + (branch == null ? "" : branch);
+    }
+
+    /**
+     * @param dir The spool directory, created when needed.
+     */
+    public UploadSpool(File dir) {
+        this.dir = dir;
+        this.journalFile = new File(dir, JOURNAL_FILE_NAME);
+    }
+
+    /**
+     * @return the number of disk syncs done by this instance
+     */
+    public long getSyncs() {
+        synchronized (syncLock) {
+            return syncs;
+        }
+    }
+
+    private FileChannel getChannel() throws IOException {
+        if (channel == null) {
+            if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+                throw new IOException("Can't create directory " + dir);
+            }
+            channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+        return channel;
+    }
+
+    /**
+     * Appends an upload to the journal and returns once it's on disk.
+     * @param entry The upload.
+     * @throws IOException if the upload can't be stored
+     */
+    public void append(Entry entry) throws IOException {
+        ByteBuffer record = encode(entry);
+        long sequence;
+        FileChannel journal;
+        synchronized (this) {
+            journal = getChannel();
+            // Other builds append to the same journal
+            FileLock lock = journal.lock();
+            try {
+                long position = journal.size();
+                while (record.hasRemaining()) {
+                    position += journal.write(record, position);
+                }
+            } finally {
+                lock.release();
+            }
+            sequence = ++written;
+        }
+
+        synchronized (syncLock) {
+            // Already synced along with the records of other threads
+            if (synced >= sequence) {
+                return;
+            }
+            long target;
+            synchronized (this) {
+                target = written;
+            }
+            journal.force(false);
+            synced = target;
+            syncs++;
+        }
+    }
+
+    private static ByteBuffer encode(Entry entry) throws IOException {
+        ObjectNode header = MAPPER.createObjectNode();
+        header.put("apiBaseUrl", entry.getApiBaseUrl());
+        header.put("path", entry.getPath());
+        header.put("projectSlug", entry.getProjectSlug());
+        header.put("branch", entry.getBranch());
+        header.put("revision", entry.getRevision());
+        header.put("time", entry.getTime());
+        byte[] headerBytes = MAPPER.writeValueAsBytes(header);
+
+        CRC32 crc = new CRC32();
+        crc.update(headerBytes);
+        crc.update(entry.getBody());
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + headerBytes.length + entry.getBody().length);
+        record.putInt(MAGIC).putInt(headerBytes.length).putInt(entry.getBody().length).putLong(crc.getValue());
+        record.put(headerBytes).put(entry.getBody());
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Reads the valid records of a journal.
+     * Torn or corrupted records are skipped up to the next valid one, as builds go on appending after a crash.
+     */
+    private static List<Entry> read(FileChannel file) throws IOException {
+        List<Entry> entries = new ArrayList<Entry>();
+        long size = file.size();
+        if (size == 0) {
+            return entries;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Journal too large: " + size + " bytes");
+        }
+        ByteBuffer buffer = file.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        int position = 0;
+        while (position + RECORD_HEADER_SIZE <= size) {
+            int length = getRecordLength(buffer, position);
+            if (length < 0) {
+                position++;
+                continue;
+            }
+            int headerLength = buffer.getInt(position + 4);
+            byte[] headerBytes = new byte[headerLength];
+            byte[] body = new byte[buffer.getInt(position + 8)];
+            buffer.position(position + RECORD_HEADER_SIZE);
+            buffer.get(headerBytes).get(body);
+            JsonNode header = MAPPER.readTree(new String(headerBytes, StandardCharsets.UTF_8));
+            entries.add(new Entry(header.path("apiBaseUrl").asText(null), header.path("path").asText(null),
+                    header.path("projectSlug").asText(null), header.path("branch").asText(null),
+                    header.path("revision").asText(null), header.path("time").asLong(), body));
+            position += length;
+        }
+        return entries;
+    }
+
+    // Length of the valid record at the given position, -1 if there is none
+    private static int getRecordLength(ByteBuffer buffer, int position) {
+        if (buffer.getInt(position) != MAGIC) {
+            return -1;
+        }
+        long headerLength = buffer.getInt(position + 4);
+        long bodyLength = buffer.getInt(position + 8);
+        long length = RECORD_HEADER_SIZE + headerLength + bodyLength;
+        if (headerLength < 0 || bodyLength < 0 || position + length > buffer.limit()) {
+            return -1;
+        }
+        ByteBuffer data = buffer.duplicate();
+        data.position(position + RECORD_HEADER_SIZE);
+        data.limit((int) (position + length));
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue() == buffer.getLong(position + 12) ? (int) length : -1;
+    }
+
+    /**
+     * Takes the spooled uploads out of the journal, along with the ones of interrupted drains.
+     * The drain must be completed, or closed to leave its uploads for the next one.
+     * @return the drain
+     * @throws IOException if the journal can't be read
+     */
+    public Drain drain() throws IOException {
+        synchronized (this) {
+            FileChannel journal = getChannel();
+            FileLock lock = journal.lock();
+            try {
+                long size = journal.size();
+                if (size > 0) {
+                    File draining = File.createTempFile(DRAINING_PREFIX, ".gmsq", dir);
+                    try (FileChannel target = FileChannel.open(draining.toPath(), StandardOpenOption.WRITE)) {
+                        long position = 0;
+                        while (position < size) {
+                            position += journal.transferTo(position, size - position, target);
+                        }
+                        target.force(false);
+                    }
+                    journal.truncate(0);
+                    journal.force(false);
+                }
+            } finally {
+                lock.release();
+            }
+        }
+
+        Drain drain = new Drain();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return drain;
+        }
+        try {
+            for (File file : files) {
+                if (file.getName().startsWith(DRAINING_PREFIX)) {
+                    drain.take(file);
+                }
+            }
+        } catch (IOException e) {
+            drain.close();
+            throw e;
+        }
+        return drain;
+    }
+
+    /**
+     * Uploads taken out of the spool.
+     */
+    public class Drain {
+
+        private final List<File> files = new ArrayList<File>();
+        private final List<FileChannel> channels = new ArrayList<FileChannel>();
+        private final Map<String, Entry> newest = new LinkedHashMap<String, Entry>();
+        private int superseded;
+
+        // Takes the uploads of a draining file, unless another drain holds it
+        private void take(File file) throws IOException {
+            FileChannel draining;
+            try {
+                draining = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } catch (NoSuchFileException e) {
+                return;
+            }
+            FileLock lock;
+            try {
+                lock = draining.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null || !file.exists()) {
+                draining.close();
+                return;
+            }
+            files.add(file);
+            channels.add(draining);
+            for (Entry entry : read(draining)) {
+                Entry previous = newest.get(entry.getKey());
+                if (previous != null && previous.getTime() > entry.getTime()) {
+                    superseded++;
+                    continue;
+                }
+                if (previous != null) {
+                    superseded++;
+                }
+                newest.put(entry.getKey(), entry);
+            }
+        }
+
+        /**
+         * @return the newest upload of each project branch, oldest first
+         */
+        public List<Entry> getEntries() {
+            List<Entry> entries = new ArrayList<Entry>(newest.values());
+            Collections.sort(entries, new Comparator<Entry>() {
+                public int compare(Entry e1, Entry e2) {
+                    return Long.compare(e1.getTime(), e2.getTime());
+                }
+            });
+            return entries;
+        }
+
+        /**
+         * @return the number of uploads dropped because a newer one of the same project branch was spooled
+         */
+        public int getSuperseded() {
+            return superseded;
+        }
+
+        /**
+         * Spools the failed uploads again and removes the drained ones.
+         * @param failed The uploads to keep for the next drain.
+         * @throws IOException if the failed uploads can't be spooled again, the drained ones are then kept
+         */
+        public void complete(List<Entry> failed) throws IOException {
+            try {
+                for (Entry entry : failed) {
+                    append(entry);
+                }
+                for (File file : files) {
+                    Files.deleteIfExists(file.toPath());
+                }
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Releases the drained files, their uploads are left for the next drain.
+         */
+        public void close() {
+            for (FileChannel draining : channels) {
+                try {
+                    draining.close();
+                } catch (IOException e) {
+                    // Released anyway when the build ends
+                }
+            }
+            channels.clear();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.gemnasium.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Uploads running in the background while the build goes on.
+ * They are joined by the await goal, and at the end of the build for the ones the await goal didn't join,
+ * as Maven exits without waiting for the daemon threads running them.
+ */
+public class UploadTasks {
+
+    public static final String SESSION_KEY = UploadTasks.class.getName();
+
+    private final ExecutorService executor;
+    private final List<String> descriptions = new ArrayList<String>();
+    private final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+    /**
+     * @param threads Maximum number of concurrent uploads.
+     */
+    public UploadTasks(int threads) {
+        final AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "gemnasium-upload-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts an upload in the background.
+     * @param description Describes the upload in error messages.
+     * @param task The upload.
+     */
+    public synchronized void submit(String description, Callable<?> task) {
+        descriptions.add(description);
+        futures.add(executor.submit(task));
+    }
+
+    /**
+     * Waits for the uploads still running at the end of the build, see {@link #awaitRemaining(Log)}.
+     * @param session The Maven session.
+     * @param log The logger of the uploads still running and of their failures.
+     */
+    public void awaitOnSessionEnd(MavenSession session, final Log log) {
+        final ExecutionListener delegate = session.getRequest().getExecutionListener();
+        session.getRequest().setExecutionListener(new DelegatingExecutionListener(delegate) {
+            @Override
+            public void sessionEnded(ExecutionEvent event) {
+                awaitRemaining(log);
+                super.sessionEnded(event);
+            }
+        });
+    }
+
+    /**
+     * Waits for the uploads not joined by the await goal and stops the upload threads.
+     * The build result is known already: the uploads still running are listed in a warning,
+     * and failures are logged as errors.
+     * @param log The logger.
+     */
+    void awaitRemaining(Log log) {
+        List<String> running = new ArrayList<String>();
+        synchronized (this) {
+            for (int i = 0; i < futures.size(); i++) {
+                if (!futures.get(i).isDone()) {
+                    running.add(descriptions.get(i));
+                }
+            }
+        }
+        if (!running.isEmpty()) {
+            log.warn(running.size() + " background upload(s) still running at the end of the build, waiting for "
+                    + running + " (bind the await goal after send-dependencies to fail the build on errors)");
+        }
+        try {
+            for (Map.Entry<String, Throwable> failure : awaitAll().entrySet()) {
+                log.error("Upload failed for " + failure.getKey() + ": " + failure.getValue().getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while waiting for the background uploads");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Waits for all the uploads started so far.
+     * @return the failures of the uploads, indexed by upload description
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Map<String, Throwable> awaitAll() throws InterruptedException {
+        List<String> pendingDescriptions;
+        List<Future<?>> pendingFutures;
+        synchronized (this) {
+            pendingDescriptions = new ArrayList<String>(descriptions);
+            pendingFutures = new ArrayList<Future<?>>(futures);
+            descriptions.clear();
+            futures.clear();
+        }
+
+        Map<String, Throwable> failures = new LinkedHashMap<String, Throwable>();
+        for (int i = 0; i < pendingFutures.size(); i++) {
+            try {
+                pendingFutures.get(i).get();
+            } catch (ExecutionException e) {
+                failures.put(pendingDescriptions.get(i), e.getCause());
+            }
+        }
+        return failures;
+    }
+}
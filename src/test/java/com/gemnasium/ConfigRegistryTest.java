@@ -0,0 +1,94 @@
+package com.gemnasium;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+import com.gemnasium.utils.PropertiesUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConfigRegistryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File baseDir;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        // The environment takes precedence over the properties file
+        assumeTrue(System.getenv("GEMNASIUM_PROJECT_SLUG") == null);
+        baseDir = folder.newFolder("project");
+        file = Config.getConfigPropertiesFile(baseDir);
+        writeSlug("slug-1");
+    }
+
+    private void writeSlug(String slug) throws IOException {
+        long previous = file.lastModified();
+        Properties properties = new Properties();
+        properties.setProperty("projectSlug", slug);
+        PropertiesUtils.update(file, properties, "Gemnasium configuration");
+        // The change is seen even within the file system time resolution
+        file.setLastModified(Math.max(previous + 2000, file.lastModified()));
+    }
+
+    private static Config get(ConfigRegistry registry, File baseDir, String apiKey) throws Exception {
+        return registry.get(baseDir, null, apiKey, "master", null, "abc", null);
+    }
+
+    @Test
+    public void sameInputsGiveTheSameConfig() throws Exception {
+        ConfigRegistry registry = new ConfigRegistry();
+
+        Config config = get(registry, baseDir, "key");
+
+        assertSame(config, get(registry, baseDir, "key"));
+        assertNotSame(config, get(registry, baseDir, "other-key"));
+        assertEquals("slug-1", config.getProjectSlug());
+    }
+
+    @Test
+    public void changedPropertiesGiveANewConfig() throws Exception {
+        ConfigRegistry registry = new ConfigRegistry();
+        Config config = get(registry, baseDir, "key");
+
+        // Same content, touched
+        file.setLastModified(file.lastModified() + 2000);
+        Config touched = get(registry, baseDir, "key");
+        writeSlug("slug-22");
+        Config rewritten = get(registry, baseDir, "key");
+
+        assertNotSame(config, touched);
+        assertNotSame(touched, rewritten);
+        assertEquals("slug-22", rewritten.getProjectSlug());
+    }
+
+    @Test
+    public void updatedPropertiesAreReloadedOnceInvalidated() throws Exception {
+        ConfigRegistry registry = new ConfigRegistry();
+        Config config = get(registry, baseDir, "key");
+        long lastModified = file.lastModified();
+
+        // Same length and modification time, the change can't be seen on disk
+        Properties properties = new Properties();
+        properties.setProperty("projectSlug", "slug-2");
+        config.updateConfigProperties(properties);
+        file.setLastModified(lastModified);
+        assertSame(config, get(registry, baseDir, "key"));
+
+        registry.invalidate(baseDir);
+        Config updated = get(registry, baseDir, "key");
+
+        assertNotSame(config, updated);
+        assertEquals("slug-2", updated.getProjectSlug());
+    }
+}
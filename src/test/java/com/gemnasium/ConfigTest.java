@@ -0,0 +1,77 @@
+package com.gemnasium;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import com.gemnasium.utils.GitRepository;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConfigTest {
+
+    private static final String REVISION = "0123456789abcdef0123456789abcdef01234567";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File baseDir;
+    private GitRepository repository;
+
+    @Before
+    public void setUp() throws IOException {
+        // The environment takes precedence over everything else
+        assumeTrue(System.getenv("GEMNASIUM_PROJECT_BRANCH") == null);
+        assumeTrue(System.getenv("GEMNASIUM_PROJECT_REVISION") == null);
+        baseDir = folder.newFolder("project");
+        repository = new GitRepository(baseDir, "feature", REVISION);
+    }
+
+    private void writeProperties(String content) throws IOException {
+        File file = Config.getConfigPropertiesFile(baseDir);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void branchAndRevisionDefaultToTheGitRepository() throws MojoExecutionException {
+        Config config = new Config(baseDir, null, "key", "", "slug", null, null, repository);
+
+        assertEquals("feature", config.getProjectBranch());
+        assertEquals(REVISION, config.getProjectRevision());
+    }
+
+    @Test
+    public void configuredBranchAndRevisionTakePrecedence() throws MojoExecutionException {
+        Config config = new Config(baseDir, null, "key", "master", "slug", "abc", null, repository);
+
+        assertEquals("master", config.getProjectBranch());
+        assertEquals("abc", config.getProjectRevision());
+    }
+
+    @Test
+    public void propertiesTakePrecedence() throws IOException, MojoExecutionException {
+        writeProperties("projectBranch=release\nprojectRevision=def\n");
+
+        Config config = new Config(baseDir, null, "key", null, "slug", null, null, repository);
+
+        assertEquals("release", config.getProjectBranch());
+        assertEquals("def", config.getProjectRevision());
+    }
+
+    @Test
+    public void branchIsUnsetWhenHeadIsDetached() throws MojoExecutionException {
+        Config config = new Config(baseDir, null, "key", null, "slug", null, null,
+                new GitRepository(baseDir, null, REVISION));
+
+        assertEquals(null, config.getProjectBranch());
+        assertEquals(REVISION, config.getProjectRevision());
+    }
+}
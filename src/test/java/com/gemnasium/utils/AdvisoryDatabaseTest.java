@@ -0,0 +1,80 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AdvisoryDatabaseTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String newAdvisory(String identifier, String affectedRange) {
+        return "{\"identifier\":\"" + identifier + "\",\"package_slug\":\"maven/g/a\",\"affected_range\":\""
+                + affectedRange + "\"}";
+    }
+
+    private void write(String name, String content) throws IOException {
+        Files.write(new File(folder.getRoot(), name).toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> find(AdvisoryDatabase database, String version) {
+        List<String> identifiers = new ArrayList<String>();
+        for (AdvisoryDatabase.Advisory advisory : database.find("g", "a", version)) {
+            identifiers.add(advisory.getIdentifier());
+        }
+        return identifiers;
+    }
+
+    @Test
+    public void findsTheAdvisoriesCoveringAVersion() throws IOException {
+        write("advisories.json", "[" + newAdvisory("A", "[1.0,2.0),[3.0,4.0)") + ","
+                + newAdvisory("B", "[1.5,3.5]") + "," + newAdvisory("C", "2.0") + "]");
+
+        AdvisoryDatabase database = AdvisoryDatabase.load(folder.getRoot());
+
+        assertEquals(3, database.size());
+        assertEquals("[]", find(database, "0.9").toString());
+        assertEquals("[A]", find(database, "1.0").toString());
+        assertEquals("[A, B]", find(database, "1.5").toString());
+        assertEquals("[B, C]", find(database, "2.0").toString());
+        assertEquals("[B]", find(database, "2.5").toString());
+        assertEquals("[B, A]", find(database, "3.5").toString());
+        assertEquals("[A]", find(database, "3.6").toString());
+        assertEquals("[]", find(database, "4.0").toString());
+    }
+
+    @Test
+    public void advisoriesFoundInSeveralFilesAreReportedOnce() throws IOException {
+        write("a.json", newAdvisory("A", "[1.0,2.0)"));
+        write("all.json", "{\"advisories\":[" + newAdvisory("A", "[1.0,2.0)") + "," + newAdvisory("B", "(,1.2]")
+                + "]}");
+
+        AdvisoryDatabase database = AdvisoryDatabase.load(folder.getRoot());
+
+        assertEquals(2, database.size());
+        assertEquals("[B, A]", find(database, "1.1").toString());
+    }
+
+    @Test
+    public void emptyFilesAreReported() throws IOException {
+        write("empty.json", "");
+        write("a.json", newAdvisory("A", "[1.0,2.0)"));
+
+        AdvisoryDatabase database = AdvisoryDatabase.load(folder.getRoot());
+
+        assertEquals(1, database.size());
+        assertEquals(1, database.getErrors().size());
+        assertTrue(database.getErrors().get(0).endsWith("empty.json: empty file"));
+    }
+}
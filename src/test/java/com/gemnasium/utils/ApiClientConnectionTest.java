@@ -0,0 +1,151 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Connection handling of the API client against the local stub: keep-alive, compression,
+ * timeouts and per-request latency.
+ */
+public class ApiClientConnectionTest {
+
+    private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+
+    private StubServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new StubServer();
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        server.close();
+    }
+
+    private ApiClient newClient(int readTimeout, boolean compressRequests) {
+        return new ApiClient(server.getUrl(), "Basic a2V5", 2000, readTimeout, compressRequests,
+                new RetryPolicy(0, 1, 10), new CircuitBreaker(0, 0), new SystemStreamLog());
+    }
+
+    @Test
+    public void keepsConnectionsAlive() throws IOException {
+        ApiClient client = newClient(2000, false);
+        for (int i = 0; i < 20; i++) {
+            client.get("/projects/s");
+        }
+        client.post("/projects/s/dependency_files", ApiClient.MAPPER.createArrayNode());
+
+        assertEquals(21, server.getRequests().size());
+        assertEquals(1, server.getConnections());
+    }
+
+    @Test
+    public void keepsConnectionsAliveAfterErrors() throws IOException {
+        ApiClient client = newClient(2000, false);
+        server.enqueue(StubServer.Reply.json(404, "{\"message\":\"not found\"}"));
+        try {
+            client.get("/projects/s");
+            fail("The call should fail");
+        } catch (ApiClient.ApiException e) {
+            assertEquals("not found", e.getMessage());
+        }
+        client.get("/projects/s");
+
+        assertEquals(1, server.getConnections());
+    }
+
+    @Test
+    public void sharesConnectionsBetweenClients() throws IOException {
+        newClient(2000, false).get("/projects/a");
+        newClient(2000, false).get("/projects/b");
+
+        assertEquals(1, server.getConnections());
+    }
+
+    @Test
+    public void gzipsLargeRequestBodies() throws IOException {
+        ApiClient client = newClient(2000, true);
+        ArrayNode large = ApiClient.MAPPER.createArrayNode();
+        for (int i = 0; i < 1000; i++) {
+            large.add("org.example:artifact-" + i);
+        }
+        client.post("/projects/s/dependency_files", large);
+        client.post("/projects/s/dependency_files", ApiClient.MAPPER.createArrayNode().add("small"));
+
+        StubServer.Request compressed = server.getRequests().get(0);
+        assertEquals("gzip", compressed.getHeader("content-encoding"));
+        assertEquals(large, ApiClient.MAPPER.readTree(compressed.getBody()));
+        StubServer.Request plain = server.getRequests().get(1);
+        assertNull(plain.getHeader("content-encoding"));
+        assertEquals("[\"small\"]", plain.getBodyText());
+    }
+
+    @Test
+    public void acceptsGzipResponses() throws IOException {
+        server.enqueue(StubServer.Reply.json(200, "{\"slug\":\"s\"}").gzip());
+
+        JsonNode node = newClient(2000, false).get("/projects/s");
+
+        assertEquals("s", node.get("slug").asText());
+        assertEquals("gzip", server.getRequests().get(0).getHeader("accept-encoding"));
+    }
+
+    @Test
+    public void timesOutSlowResponses() throws IOException {
+        server.enqueue(StubServer.Reply.json(200, "{}").delay(2000));
+        long start = System.currentTimeMillis();
+        try {
+            newClient(200, false).get("/projects/s");
+            fail("The call should time out");
+        } catch (SocketTimeoutException e) {
+            // Expected
+        }
+        assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+
+    @Test
+    public void measuresRequestLatency() throws IOException {
+        ApiClient client = newClient(2000, false);
+        // Warm up the connection and the JSON parser
+        for (int i = 0; i < 20; i++) {
+            client.get("/projects/s");
+        }
+        int requests = 200;
+        long[] latencies = new long[requests];
+        for (int i = 0; i < requests; i++) {
+            long start = System.nanoTime();
+            client.execute("GET", "/projects/s", NO_HEADERS, null);
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        long p50 = latencies[requests / 2] / 1000;
+        long p99 = latencies[requests * 99 / 100] / 1000;
+        System.out.println("GET latency over " + requests + " requests on " + server.getConnections()
+                + " connection(s): p50 " + p50 + " us, p99 " + p99 + " us");
+
+        assertEquals(1, server.getConnections());
+
+        // Latency added by the API is measured on top of the client overhead
+        server.enqueue(StubServer.Reply.json(200, "{}").delay(100));
+        long start = System.nanoTime();
+        client.get("/projects/s");
+        long delayed = (System.nanoTime() - start) / 1000000;
+        assertTrue(delayed >= 100);
+    }
+}
@@ -0,0 +1,201 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ApiClientTest {
+
+    private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+
+    private StubServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new StubServer();
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        server.close();
+    }
+
+    private ApiClient newClient(int maxRetries, CircuitBreaker breaker) {
+        return new ApiClient(server.getUrl(), "Basic a2V5", 2000, 2000, false, new RetryPolicy(maxRetries, 1, 10),
+                breaker, new SystemStreamLog());
+    }
+
+    private ApiClient newClient(int maxRetries) {
+        return newClient(maxRetries, new CircuitBreaker(0, 0));
+    }
+
+    @Test
+    public void retriesGetOnServerErrors() throws IOException {
+        server.enqueue(StubServer.Reply.json(500, "{}"));
+        server.enqueue(StubServer.Reply.json(503, "{}"));
+        server.enqueue(StubServer.Reply.json(200, "{\"slug\":\"s\"}"));
+
+        JsonNode node = newClient(3).get("/projects/s");
+
+        assertEquals("s", node.get("slug").asText());
+        assertEquals(3, server.getRequests().size());
+    }
+
+    @Test
+    public void stopsAfterMaxRetries() throws IOException {
+        server.setDefaultReply(StubServer.Reply.json(502, "{\"message\":\"bad gateway\"}"));
+        try {
+            newClient(2).get("/projects/s");
+            fail("The call should fail");
+        } catch (ApiClient.ApiException e) {
+            assertEquals(502, e.getStatus());
+            assertEquals("bad gateway", e.getMessage());
+        }
+        assertEquals(3, server.getRequests().size());
+    }
+
+    @Test
+    public void doesNotRetryPostOnServerError() throws IOException {
+        server.enqueue(StubServer.Reply.json(500, "{}"));
+        try {
+            newClient(3).post("/teams/t/projects", ApiClient.MAPPER.createObjectNode());
+            fail("The call should fail");
+        } catch (ApiClient.ApiException e) {
+            assertEquals(500, e.getStatus());
+        }
+        assertEquals(1, server.getRequests().size());
+    }
+
+    @Test
+    public void doesNotRetryPostOnceSent() throws IOException {
+        server.enqueue(StubServer.Reply.disconnect());
+        try {
+            newClient(3).post("/teams/t/projects", ApiClient.MAPPER.createObjectNode());
+            fail("The call should fail");
+        } catch (IOException e) {
+            assertTrue(!(e instanceof ApiClient.ConnectException));
+        }
+        assertEquals(1, server.getRequests().size());
+    }
+
+    @Test
+    public void retriesPostWhenThrottled() throws IOException {
+        server.enqueue(StubServer.Reply.json(429, "{}"));
+        server.enqueue(StubServer.Reply.json(503, "{}").header("Retry-After", "0"));
+        server.enqueue(StubServer.Reply.json(201, "{\"commit_sha\":\"abc\"}"));
+
+        JsonNode node = newClient(3).post("/projects/s/dependency_files", ApiClient.MAPPER.createArrayNode());
+
+        assertEquals("abc", node.get("commit_sha").asText());
+        assertEquals(3, server.getRequests().size());
+    }
+
+    @Test
+    public void postOnceIsNeverRetried() throws IOException {
+        server.enqueue(StubServer.Reply.json(503, "{}").header("Retry-After", "0"));
+        try {
+            newClient(3).postOnce("/teams/t/projects", ApiClient.MAPPER.createObjectNode());
+            fail("The call should fail");
+        } catch (ApiClient.ApiException e) {
+            assertEquals(503, e.getStatus());
+        }
+        assertEquals(1, server.getRequests().size());
+    }
+
+    @Test
+    public void waitsForRetryAfter() throws IOException {
+        server.enqueue(StubServer.Reply.json(503, "{}").header("Retry-After", "1"));
+        ApiClient client = new ApiClient(server.getUrl(), null, 2000, 2000, false, new RetryPolicy(1, 1, 5000),
+                new CircuitBreaker(0, 0), new SystemStreamLog());
+
+        long start = System.currentTimeMillis();
+        client.get("/projects/s");
+
+        assertTrue(System.currentTimeMillis() - start >= 1000);
+        assertEquals(2, server.getRequests().size());
+    }
+
+    @Test
+    public void retriesPostWhenTheConnectionIsRefused() throws IOException {
+        String url = server.getUrl();
+        server.close();
+        CircuitBreaker breaker = new CircuitBreaker(0, 0);
+        ApiClient client = new ApiClient(url, null, 2000, 2000, false, new RetryPolicy(2, 1, 10), breaker,
+                new SystemStreamLog());
+        Metrics metrics = new Metrics("test", "module");
+        Metrics previous = Metrics.attach(metrics);
+        try {
+            client.post("/teams/t/projects", ApiClient.MAPPER.createObjectNode());
+            fail("The call should fail");
+        } catch (ApiClient.ConnectException e) {
+            // Expected
+        } finally {
+            Metrics.detach(previous);
+        }
+        assertEquals(Long.valueOf(2), metrics.getCounters().get("api-retries"));
+    }
+
+    @Test
+    public void circuitOpensThenClosesAfterTrial() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(2, 100);
+        ApiClient client = newClient(0, breaker);
+        server.enqueue(StubServer.Reply.json(500, "{}"));
+        server.enqueue(StubServer.Reply.json(500, "{}"));
+        for (int i = 0; i < 2; i++) {
+            try {
+                client.get("/projects/s");
+                fail("The call should fail");
+            } catch (ApiClient.ApiException e) {
+                // Expected
+            }
+        }
+        try {
+            client.get("/projects/s");
+            fail("The circuit should be open");
+        } catch (CircuitBreaker.OpenCircuitException e) {
+            // Expected
+        }
+        assertEquals(2, server.getRequests().size());
+
+        Thread.sleep(150);
+        client.get("/projects/s");
+        client.get("/projects/s");
+        assertEquals(4, server.getRequests().size());
+    }
+
+    @Test
+    public void malformedResponseSettlesTheTrialCall() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 50);
+        ApiClient client = newClient(0, breaker);
+        server.enqueue(StubServer.Reply.json(500, "{}"));
+        try {
+            client.get("/projects/s");
+            fail("The call should fail");
+        } catch (ApiClient.ApiException e) {
+            // Expected
+        }
+
+        Thread.sleep(80);
+        // The trial call gets a 2xx response that isn't JSON
+        server.enqueue(StubServer.Reply.json(200, "not json"));
+        try {
+            client.get("/projects/s");
+            fail("The response should be rejected");
+        } catch (JsonProcessingException e) {
+            // Expected
+        }
+        // The circuit is closed again, not stuck waiting for the trial call
+        assertEquals(200, client.execute("GET", "/projects/s", NO_HEADERS, null).getStatus());
+    }
+}
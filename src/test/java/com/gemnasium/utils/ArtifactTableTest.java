@@ -0,0 +1,80 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.junit.Test;
+
+public class ArtifactTableTest {
+
+    private static Artifact newArtifact(String artifactId, boolean optional) {
+        DefaultArtifact artifact = new DefaultArtifact("org.example", artifactId, "1.0", "compile", "jar", null,
+                new DefaultArtifactHandler("jar"));
+        artifact.setOptional(optional);
+        return artifact;
+    }
+
+    @Test
+    public void equalDependenciesAreInterned() {
+        ArtifactTable table = new ArtifactTable();
+
+        // Equal but distinct artifacts and parents lists, as built by two modules
+        ObjectNode first = table.getNode(newArtifact("lib", false),
+                new ArrayList<String>(Arrays.asList("org.example:direct")), "1.0");
+        ObjectNode second = table.getNode(newArtifact("lib", false),
+                new ArrayList<String>(Arrays.asList("org.example:direct")), "1.0");
+
+        assertSame(first, second);
+        assertEquals(1, table.size());
+        assertEquals("{\"groupId\":\"org.example\",\"artifactId\":\"lib\",\"type\":\"jar\",\"classifier\":null,"
+                + "\"version\":\"1.0\",\"scope\":\"compile\",\"transitive\":true,\"parents\":[\"org.example:direct\"],"
+                + "\"optional\":false,\"requirement\":\"1.0\"}", first.toString());
+    }
+
+    @Test
+    public void differentDependenciesAreNotInterned() {
+        ArtifactTable table = new ArtifactTable();
+        List<String> parents = Collections.singletonList("org.example:direct");
+        ObjectNode node = table.getNode(newArtifact("lib", false), parents, "1.0");
+
+        ObjectNode optional = table.getNode(newArtifact("lib", true), parents, "1.0");
+        ObjectNode otherParents = table.getNode(newArtifact("lib", false),
+                Arrays.asList("org.example:direct", "org.example:other"), "1.0");
+        ObjectNode direct = table.getNode(newArtifact("lib", false), Collections.<String>emptyList(), "1.0");
+        ObjectNode otherRequirement = table.getNode(newArtifact("lib", false), parents, "[1.0,2.0)");
+
+        assertNotSame(node, optional);
+        assertNotSame(node, otherParents);
+        assertNotSame(node, direct);
+        assertNotSame(node, otherRequirement);
+        assertEquals(5, table.size());
+        assertEquals(true, optional.get("optional").booleanValue());
+        assertEquals(false, direct.get("transitive").booleanValue());
+    }
+
+    @Test
+    public void differentDependenciesShareTheirValues() {
+        ArtifactTable table = new ArtifactTable();
+        List<String> parents = Collections.singletonList("org.example:direct");
+
+        ObjectNode node = table.getNode(newArtifact("lib", false), parents, "1.0");
+        ObjectNode optional = table.getNode(newArtifact("lib", true), parents, "1.0");
+        ObjectNode other = table.getNode(newArtifact("other", false), parents, "1.0");
+
+        assertSame(node.get("parents"), optional.get("parents"));
+        assertSame(node.get("parents"), other.get("parents"));
+        assertSame(node.get("artifactId"), optional.get("artifactId"));
+        assertSame(node.get("groupId"), other.get("groupId"));
+        assertSame(node.get("requirement"), other.get("version"));
+    }
+}
@@ -0,0 +1,63 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void opensAfterConsecutiveFailures() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(2, 60000);
+        breaker.acquire();
+        breaker.recordFailure();
+        breaker.acquire();
+        breaker.recordSuccess();
+        breaker.acquire();
+        breaker.recordFailure();
+        breaker.acquire();
+        breaker.recordFailure();
+        assertOpen(breaker);
+    }
+
+    @Test
+    public void halfOpenAllowsASingleTrialThatClosesOnSuccess() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 50);
+        breaker.acquire();
+        breaker.recordFailure();
+        assertOpen(breaker);
+
+        Thread.sleep(80);
+        breaker.acquire();
+        // Only one trial call at a time
+        assertOpen(breaker);
+        breaker.recordSuccess();
+        breaker.acquire();
+        breaker.recordSuccess();
+        breaker.acquire();
+    }
+
+    @Test
+    public void failedTrialOpensAgain() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(3, 50);
+        for (int i = 0; i < 3; i++) {
+            breaker.acquire();
+            breaker.recordFailure();
+        }
+        assertOpen(breaker);
+
+        Thread.sleep(80);
+        breaker.acquire();
+        breaker.recordFailure();
+        assertOpen(breaker);
+    }
+
+    private static void assertOpen(CircuitBreaker breaker) {
+        try {
+            breaker.acquire();
+            fail("The circuit should be open");
+        } catch (CircuitBreaker.OpenCircuitException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Delta uploads against the local stub: the changes since the cached snapshot of the last upload
+ * are posted to the delta endpoint instead of the whole dependency files.
+ */
+public class DeltaUploadTest {
+
+    private static final String DELTA_PATH = "/projects/s/dependency_files/delta";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StubServer server;
+    private ApiClient client;
+    private UploadCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StubServer();
+        client = new ApiClient(server.getUrl(), "Basic a2V5", 2000, 2000, false, new RetryPolicy(3, 1, 10),
+                new CircuitBreaker(0, 0), new SystemStreamLog());
+        cache = new UploadCache(folder.getRoot(), server.getUrl(), "s", "master", "g:project");
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        server.close();
+    }
+
+    private static List<DependencyFile> getFiles(ArrayNode jsonDependencies) {
+        return Collections.singletonList(new DependencyFile("gemnasium-maven-plugin.json", jsonDependencies));
+    }
+
+    private JsonNode sendDelta(List<DependencyFile> files) throws IOException {
+        List<DependencyDiff> diffs = DependencyDiff.compareFiles(cache.getLastSnapshot(), files);
+        return client.post(DELTA_PATH, DependencyDiff.getDeltaPayload(cache.getLastCommitSha(), diffs));
+    }
+
+    @Test
+    public void sendsOnlyTheChangedDependency() throws IOException {
+        SyntheticProject project = new SyntheticProject(3000, 8, 42);
+        ArrayNode uploaded = ProjectsUtils.getJsonDependencies(project.getArtifacts(),
+                project.getDirectDependencies());
+        List<DependencyFile> uploadedFiles = getFiles(uploaded);
+        cache.store(UploadCache.fingerprint(uploadedFiles), "sha-1", uploadedFiles);
+
+        // A version bump of a single artifact
+        ArrayNode current = uploaded.deepCopy();
+        ((ObjectNode) current.get(1234)).put("version", "99.0.0");
+        server.enqueue(StubServer.Reply.json(201, "{\"commit_sha\":\"sha-2\"}"));
+
+        JsonNode response = sendDelta(getFiles(current));
+
+        assertEquals("sha-2", response.get("commit_sha").asText());
+        StubServer.Request request = server.getRequests().get(0);
+        assertEquals("POST", request.getMethod());
+        assertEquals(DELTA_PATH, request.getPath());
+        JsonNode payload = ApiClient.MAPPER.readTree(request.getBody());
+        assertEquals("sha-1", payload.get("base_commit_sha").asText());
+        assertEquals(1, payload.get("files").size());
+        JsonNode file = payload.get("files").get(0);
+        assertEquals("gemnasium-maven-plugin.json", file.get("path").asText());
+        assertEquals(0, file.get("added").size());
+        assertEquals(0, file.get("removed").size());
+        assertEquals(1, file.get("changed").size());
+        assertEquals(current.get(1234), file.get("changed").get(0));
+
+        // The delta is a small fraction of the full upload
+        ByteArrayOutputStream fullBody = new ByteArrayOutputStream();
+        ProjectsUtils.writeDependencyFiles(getFiles(current), fullBody);
+        assertTrue(request.getBody().length * 100 < fullBody.size());
+    }
+
+    @Test
+    public void sendsAddedAndRemovedDependencies() throws IOException {
+        ArrayNode uploaded = ApiClient.MAPPER.createArrayNode();
+        uploaded.addObject().put("groupId", "g").put("artifactId", "old").put("type", "jar").put("version", "1");
+        List<DependencyFile> uploadedFiles = getFiles(uploaded);
+        cache.store(UploadCache.fingerprint(uploadedFiles), "sha-1", uploadedFiles);
+        ArrayNode current = ApiClient.MAPPER.createArrayNode();
+        current.addObject().put("groupId", "g").put("artifactId", "new").put("type", "jar").put("version", "1");
+
+        sendDelta(getFiles(current));
+
+        JsonNode file = ApiClient.MAPPER.readTree(server.getRequests().get(0).getBody()).get("files").get(0);
+        assertEquals("new", file.get("added").get(0).get("artifactId").asText());
+        assertEquals("g:old:jar", file.get("removed").get(0).asText());
+    }
+
+    @Test
+    public void doesNotRetryTheDeltaOnServerError() throws IOException {
+        List<DependencyFile> files = getFiles(ApiClient.MAPPER.createArrayNode());
+        cache.store(UploadCache.fingerprint(files), "sha-1", files);
+        server.setDefaultReply(StubServer.Reply.json(500, "{\"message\":\"delta rejected\"}"));
+
+        try {
+            sendDelta(files);
+            fail("The delta should fail");
+        } catch (ApiClient.ApiException e) {
+            assertEquals("delta rejected", e.getMessage());
+        }
+        // The commit may have been created, the delta isn't applied twice
+        assertEquals(1, server.getRequests().size());
+    }
+}
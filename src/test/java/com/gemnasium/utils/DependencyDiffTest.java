@@ -0,0 +1,78 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+public class DependencyDiffTest {
+
+    private static ArrayNode newDependencies(String... artifacts) {
+        ArrayNode dependencies = ApiClient.MAPPER.createArrayNode();
+        for (String artifact : artifacts) {
+            String[] gav = artifact.split(":");
+            dependencies.addObject().put("groupId", gav[0]).put("artifactId", gav[1]).put("type", "jar")
+                    .putNull("classifier").put("version", gav[2]);
+        }
+        return dependencies;
+    }
+
+    @Test
+    public void findsAddedRemovedAndChangedDependencies() {
+        ArrayNode previous = newDependencies("g:c:1", "g:a:1", "g:b:1");
+        ArrayNode current = newDependencies("g:d:1", "g:b:2", "g:a:1");
+
+        DependencyDiff diff = DependencyDiff.compare("pom.json", previous, current);
+
+        assertEquals(1, diff.getAdded().size());
+        assertEquals("d", diff.getAdded().get(0).get("artifactId").asText());
+        assertEquals(1, diff.getRemoved().size());
+        assertEquals("c", diff.getRemoved().get(0).get("artifactId").asText());
+        assertEquals(1, diff.getChanged().size());
+        assertEquals("2", diff.getChanged().get(0).get("version").asText());
+        assertEquals(Arrays.asList("+ g:d:jar 1", "- g:c:jar 1", "~ g:b:jar 1 -> 2"), diff.getReport());
+    }
+
+    @Test
+    public void classifiersAreDistinctDependencies() {
+        ArrayNode previous = newDependencies("g:a:1");
+        ArrayNode current = newDependencies("g:a:1", "g:a:1");
+        ((ObjectNode) current.get(1)).put("classifier", "tests");
+
+        DependencyDiff diff = DependencyDiff.compare("pom.json", previous, current);
+
+        assertEquals(1, diff.getAdded().size());
+        assertEquals("g:a:jar:tests", DependencyDiff.getKey(diff.getAdded().get(0)));
+        assertTrue(diff.getChanged().isEmpty());
+    }
+
+    @Test
+    public void identicalFilesHaveNoDiff() {
+        DependencyDiff diff = DependencyDiff.compare("pom.json", newDependencies("g:a:1", "g:b:1"),
+                newDependencies("g:b:1", "g:a:1"));
+        assertTrue(diff.isEmpty());
+    }
+
+    @Test
+    public void removedFilesAreCompared() {
+        Map<String, ArrayNode> snapshot = new LinkedHashMap<String, ArrayNode>();
+        snapshot.put("mod-a/pom.json", newDependencies("g:a:1"));
+        snapshot.put("mod-b/pom.json", newDependencies("g:b:1"));
+
+        ObjectNode payload = DependencyDiff.getDeltaPayload("sha",
+                DependencyDiff.compareFiles(snapshot,
+                        Collections.singletonList(new DependencyFile("mod-a/pom.json", newDependencies("g:a:1")))));
+
+        assertEquals("sha", payload.get("base_commit_sha").asText());
+        assertEquals(1, payload.get("files").size());
+        assertEquals("mod-b/pom.json", payload.get("files").get(0).get("path").asText());
+        assertEquals("g:b:jar", payload.get("files").get(0).get("removed").get(0).asText());
+    }
+}
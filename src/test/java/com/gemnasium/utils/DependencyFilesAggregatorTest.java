@@ -0,0 +1,54 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.gemnasium.Config;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DependencyFilesAggregatorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void groupsFilesByApiCredentialsAndProject() throws Exception {
+        Map<String, Integer> expected = new LinkedHashMap<String, Integer>();
+        expected.put("a", 1);
+        expected.put("b", 1);
+        expected.put("c", 1);
+        DependencyFilesAggregator aggregator = new DependencyFilesAggregator(
+                new ReactorCountdown("send-dependencies", expected));
+        Config first = newConfig("http://api", "key1", "slug");
+        Config otherKey = newConfig("http://api", "key2", "slug");
+
+        assertFalse(aggregator.moduleDone("a", first, newFile("a/"), 1));
+        // A failed module has no file but is counted down
+        assertFalse(aggregator.moduleDone("b", first, null, 1));
+        assertTrue(aggregator.moduleDone("c", otherKey, newFile("c/"), 1));
+
+        assertEquals(2, aggregator.getGroups().size());
+        assertEquals("key1", aggregator.getGroups().get(0).getConfig().getApiKey());
+        assertEquals("key2", aggregator.getGroups().get(1).getConfig().getApiKey());
+        assertEquals(3, aggregator.getDoneModules());
+    }
+
+    private Config newConfig(String baseUrl, String apiKey, String slug) throws Exception {
+        File baseDir = folder.newFolder();
+        return new Config(baseDir, baseUrl, apiKey, "master", slug, "abc", null, null);
+    }
+
+    private static DependencyFile newFile(String path) {
+        ArrayNode dependencies = ApiClient.MAPPER.createArrayNode();
+        dependencies.addObject().put("groupId", "g");
+        return new DependencyFile(path + "gemnasium-maven-plugin.json", dependencies);
+    }
+}
@@ -0,0 +1,76 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.shared.dependency.graph.DependencyNode;
+import org.apache.maven.shared.dependency.graph.internal.DefaultDependencyNode;
+import org.junit.Test;
+
+public class DependencyGraphTest {
+
+    private static Artifact newArtifact(String artifactId, String version) {
+        return new DefaultArtifact("org.example", artifactId, version, "compile", "jar", null,
+                new DefaultArtifactHandler("jar"));
+    }
+
+    private static DefaultDependencyNode addChild(DefaultDependencyNode parent, String artifactId, String version,
+            String premanagedVersion, String versionConstraint) {
+        DefaultDependencyNode node = new DefaultDependencyNode(parent, newArtifact(artifactId, version),
+                premanagedVersion, null, versionConstraint);
+        node.setChildren(new ArrayList<DependencyNode>());
+        parent.getChildren().add(node);
+        return node;
+    }
+
+    @Test
+    public void requirementsAreTheDeclaredVersions() {
+        DefaultDependencyNode root = new DefaultDependencyNode(null, newArtifact("project", "1.0"), null, null, null);
+        root.setChildren(new ArrayList<DependencyNode>());
+        // Managed from 1.0 to 2.0
+        addChild(root, "managed", "2.0", "1.0", "[1.0,)");
+        addChild(root, "range", "1.5", null, "[1.0,2.0)");
+        addChild(root, "plain", "3.0", null, null);
+
+        DependencyGraph graph = DependencyGraph.build(root, new DependencyTrails());
+
+        assertEquals(4, graph.size());
+        assertEquals("1.0", graph.getRequirement(graph.indexOf(newArtifact("managed", "2.0"))));
+        assertEquals("[1.0,2.0)", graph.getRequirement(graph.indexOf(newArtifact("range", "1.5"))));
+        assertEquals("3.0", graph.getRequirement(graph.indexOf(newArtifact("plain", "3.0"))));
+        assertEquals(-1, graph.indexOf(newArtifact("unknown", "1.0")));
+    }
+
+    @Test
+    public void parentsOfADiamondAreTheClosestFirstPath() {
+        DefaultDependencyNode root = new DefaultDependencyNode(null, newArtifact("project", "1.0"), null, null, null);
+        root.setChildren(new ArrayList<DependencyNode>());
+        DefaultDependencyNode left = addChild(root, "left", "1.0", null, null);
+        DefaultDependencyNode right = addChild(root, "right", "1.0", null, null);
+        DefaultDependencyNode shared = addChild(left, "shared", "1.0", null, "[1.0,)");
+        addChild(shared, "leaf", "1.0", null, null);
+        addChild(right, "shared", "1.0", null, "1.0");
+
+        DependencyGraph graph = DependencyGraph.build(root, new DependencyTrails());
+
+        assertEquals(6, graph.size());
+        int leftIndex = graph.indexOf(newArtifact("left", "1.0"));
+        int sharedIndex = graph.indexOf(newArtifact("shared", "1.0"));
+        int leafIndex = graph.indexOf(newArtifact("leaf", "1.0"));
+        // Depth-first: parents come before their children
+        assertTrue(leftIndex < sharedIndex && sharedIndex < leafIndex);
+        assertFalse(graph.isTransitive(leftIndex));
+        assertEquals("[]", graph.getParents(leftIndex).toString());
+        assertTrue(graph.isTransitive(sharedIndex));
+        assertEquals(Arrays.asList("org.example:left"), graph.getParents(sharedIndex));
+        assertEquals("[1.0,)", graph.getRequirement(sharedIndex));
+        assertEquals(Arrays.asList("org.example:left", "org.example:shared"), graph.getParents(leafIndex));
+    }
+}
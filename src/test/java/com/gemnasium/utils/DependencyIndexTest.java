@@ -0,0 +1,162 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DependencyIndexTest {
+
+    private static final String DUMP = "gemnasium-maven-plugin.json";
+    private static final Set<String> DUMPS = Collections.singleton(DUMP);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File root;
+    private File indexDir;
+
+    @Before
+    public void setUp() throws IOException {
+        root = folder.newFolder("modules");
+        indexDir = folder.newFolder("index");
+    }
+
+    // Writes the dump of a module depending on commons-io, directly or through a parent
+    private void writeDump(String module, String version, String... parents) throws IOException {
+        ArrayNode dependencies = ApiClient.MAPPER.createArrayNode();
+        dependencies.addObject().put("groupId", "junit").put("artifactId", "junit").put("version", "4.12")
+                .put("scope", "test").put("transitive", false).putArray("parents");
+        ObjectNode dependency = dependencies.addObject().put("groupId", "commons-io").put("artifactId", "commons-io")
+                .put("version", version).put("scope", "compile").put("transitive", parents.length > 0);
+        ArrayNode parentsNode = dependency.putArray("parents");
+        for (String parent : parents) {
+            parentsNode.add(parent);
+        }
+        File dir = new File(root, module);
+        dir.mkdirs();
+        File dump = new File(dir, DUMP);
+        long previous = dump.lastModified();
+        ApiClient.MAPPER.writeValue(dump, dependencies);
+        // The change is seen even within the file system time resolution
+        dump.setLastModified(Math.max(previous + 2000, dump.lastModified()));
+    }
+
+    private static List<String> describe(List<DependencyIndex.Match> matches) {
+        List<String> descriptions = new ArrayList<String>();
+        for (DependencyIndex.Match match : matches) {
+            descriptions.add(match.getModule() + " " + match.getVersion() + " " + match.getParents());
+        }
+        return descriptions;
+    }
+
+    @Test
+    public void queriesByArtifactAndVersion() throws IOException {
+        writeDump("mod-a", "2.6");
+        writeDump("mod-b", "2.5", "org.example:lib");
+        DependencyIndex index = new DependencyIndex(indexDir);
+
+        DependencyIndex.Update update = index.update(root, DUMPS);
+
+        assertEquals(2, update.getModules());
+        assertEquals(2, update.getUpdated());
+        assertEquals("[mod-a 2.6 [], mod-b 2.5 [org.example:lib]]",
+                describe(index.query("commons-io:commons-io")).toString());
+        assertEquals("[mod-b 2.5 [org.example:lib]]", describe(index.query("commons-io:commons-io:2.5")).toString());
+        assertEquals("[]", describe(index.query("commons-io:commons-io:1.0")).toString());
+        assertEquals("[]", describe(index.query("org.example:unknown")).toString());
+        assertEquals("test", index.query("junit:junit").get(0).getScope());
+    }
+
+    @Test
+    public void updatesOnlyChangedModules() throws IOException {
+        for (int i = 0; i < 8; i++) {
+            writeDump("mod-" + i, "2.6");
+        }
+        DependencyIndex index = new DependencyIndex(indexDir);
+        index.update(root, DUMPS);
+
+        writeDump("mod-3", "2.7");
+        DependencyIndex.Update update = index.update(root, DUMPS);
+
+        assertEquals(1, update.getUpdated());
+        // Scanned by queries until merged
+        assertEquals(1, update.getPending());
+        List<String> matches = describe(index.query("commons-io:commons-io"));
+        assertEquals(8, matches.size());
+        assertEquals("mod-3 2.7 []", matches.get(3));
+        assertEquals("[mod-3 2.7 []]", describe(index.query("commons-io:commons-io:2.7")).toString());
+        assertEquals(7, index.query("commons-io:commons-io:2.6").size());
+
+        // Unchanged dumps aren't read again
+        assertEquals(0, index.update(root, DUMPS).getUpdated());
+    }
+
+    @Test
+    public void removesModules() throws IOException {
+        for (int i = 0; i < 8; i++) {
+            writeDump("mod-" + i, "2.6");
+        }
+        DependencyIndex index = new DependencyIndex(indexDir);
+        index.update(root, DUMPS);
+
+        assertTrue(new File(root, "mod-5/" + DUMP).delete());
+        DependencyIndex.Update update = index.update(root, DUMPS);
+
+        assertEquals(7, update.getModules());
+        assertEquals(1, update.getRemoved());
+        assertEquals(1, update.getPending());
+        assertFalse(describe(index.query("commons-io:commons-io")).contains("mod-5 2.6 []"));
+        assertEquals(7, index.query("commons-io:commons-io").size());
+    }
+
+    @Test
+    public void mergesPendingModules() throws IOException {
+        for (int i = 0; i < 8; i++) {
+            writeDump("mod-" + i, "2.6");
+        }
+        DependencyIndex index = new DependencyIndex(indexDir);
+        index.update(root, DUMPS);
+
+        // More than a quarter of the modules changed
+        writeDump("mod-1", "2.7");
+        writeDump("mod-2", "2.7");
+        writeDump("mod-3", "2.7");
+        DependencyIndex.Update update = index.update(root, DUMPS);
+
+        assertEquals(3, update.getUpdated());
+        assertEquals(0, update.getPending());
+        assertEquals("[mod-1 2.7 [], mod-2 2.7 [], mod-3 2.7 []]",
+                describe(index.query("commons-io:commons-io:2.7")).toString());
+    }
+
+    @Test
+    public void reopensAnExistingIndex() throws IOException {
+        for (int i = 0; i < 8; i++) {
+            writeDump("mod-" + i, "2.6");
+        }
+        new DependencyIndex(indexDir).update(root, DUMPS);
+        writeDump("mod-0", "2.7", "org.example:lib");
+        new DependencyIndex(indexDir).update(root, DUMPS);
+
+        DependencyIndex reopened = new DependencyIndex(indexDir);
+
+        List<String> matches = describe(reopened.query("commons-io:commons-io"));
+        assertEquals(8, matches.size());
+        assertEquals("mod-0 2.7 [org.example:lib]", matches.get(0));
+        assertEquals(0, reopened.update(root, DUMPS).getUpdated());
+    }
+}
@@ -0,0 +1,127 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DependencySnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ObjectNode addDependency(ArrayNode dependencies, String artifactId, String classifier,
+            boolean optional, String... parents) {
+        ObjectNode dependency = dependencies.addObject();
+        dependency.put("groupId", "org.example");
+        dependency.put("artifactId", artifactId);
+        dependency.put("type", "jar");
+        dependency.put("classifier", classifier);
+        dependency.put("version", "1.0");
+        dependency.put("scope", "compile");
+        dependency.put("transitive", parents.length > 0);
+        ArrayNode parentsNode = dependency.putArray("parents");
+        for (String parent : parents) {
+            parentsNode.add(parent);
+        }
+        dependency.put("optional", optional);
+        dependency.put("requirement", parents.length > 0 ? null : "[1.0,2.0)");
+        return dependency;
+    }
+
+    private static ArrayNode newDependencies() {
+        ArrayNode dependencies = ApiClient.MAPPER.createArrayNode();
+        addDependency(dependencies, "direct", null, false);
+        addDependency(dependencies, "direct", "tests", true);
+        addDependency(dependencies, "transitive", null, false, "org.example:direct");
+        addDependency(dependencies, "deep", null, true, "org.example:direct", "org.example:transitive");
+        addDependency(dependencies, "ünïcode", null, false, "org.example:direct", "org.example:transitive");
+        return dependencies;
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        ArrayNode dependencies = newDependencies();
+        Path path = folder.getRoot().toPath().resolve("snapshot.gmsd");
+
+        DependencySnapshot.write(dependencies, path);
+        DependencySnapshot.Reader reader = DependencySnapshot.open(path);
+
+        assertEquals(dependencies, reader.toJson());
+        assertEquals(5, reader.size());
+        assertEquals("tests", reader.getClassifier(1));
+        assertTrue(reader.isOptional(1));
+        assertFalse(reader.isTransitive(1));
+        assertTrue(reader.isTransitive(3));
+        assertEquals(2, reader.getParentCount(3));
+        assertEquals("org.example:transitive", reader.getParent(3, 1));
+        // Parents are interned in the string table
+        assertEquals(reader.getParentIndex(3, 0), reader.getParentIndex(4, 0));
+    }
+
+    @Test
+    public void roundTripOfASyntheticProject() throws IOException {
+        SyntheticProject project = new SyntheticProject(2000, 8, 42);
+        ArrayNode dependencies = ProjectsUtils.getJsonDependencies(project.getArtifacts(),
+                project.getDirectDependencies());
+        Path path = folder.getRoot().toPath().resolve("snapshot.gmsd");
+
+        DependencySnapshot.write(dependencies, path);
+
+        assertEquals(dependencies, DependencySnapshot.open(path).toJson());
+    }
+
+    @Test
+    public void rewritingAShorterSnapshotTruncatesTheFile() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("snapshot.gmsd");
+        DependencySnapshot.write(newDependencies(), path);
+        long size = Files.size(path);
+
+        ArrayNode shorter = ApiClient.MAPPER.createArrayNode();
+        addDependency(shorter, "direct", null, false);
+        DependencySnapshot.write(shorter, path);
+
+        assertTrue(Files.size(path) < size);
+        assertEquals(shorter, DependencySnapshot.open(path).toJson());
+    }
+
+    @Test
+    public void corruptedFilesAreRejected() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("snapshot.gmsd");
+        DependencySnapshot.write(newDependencies(), path);
+        byte[] snapshot = Files.readAllBytes(path);
+
+        assertRejected(Arrays.copyOf(snapshot, 12), "Not a dependency snapshot");
+        assertRejected(Arrays.copyOf(snapshot, snapshot.length - 1), "Corrupted dependency snapshot");
+        assertRejected("{\"dependencies\":[]}".getBytes("UTF-8"), "Not a dependency snapshot");
+        byte[] otherVersion = snapshot.clone();
+        ByteBuffer.wrap(otherVersion).putInt(4, DependencySnapshot.FORMAT_VERSION + 1);
+        assertRejected(otherVersion, "Unsupported dependency snapshot version");
+        byte[] negativeCount = snapshot.clone();
+        ByteBuffer.wrap(negativeCount).putInt(12, -1);
+        assertRejected(negativeCount, "Corrupted dependency snapshot");
+    }
+
+    private void assertRejected(byte[] content, String message) throws IOException {
+        Path path = folder.newFile().toPath();
+        Files.write(path, content);
+        try {
+            DependencySnapshot.open(path);
+            fail("The snapshot should be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DependencyTrailsTest {
+
+    private static final String PROJECT = "com.example:project:jar:1.0";
+
+    private static List<String> trail(String... gavs) {
+        String[] trail = new String[gavs.length + 1];
+        trail[0] = PROJECT;
+        System.arraycopy(gavs, 0, trail, 1, gavs.length);
+        return Arrays.asList(trail);
+    }
+
+    @Test
+    public void directDependenciesHaveNoParents() {
+        DependencyTrails trails = new DependencyTrails();
+
+        assertEquals("[]", trails.getParents(trail("org.example:a:jar:1.0")).toString());
+        assertEquals("[]", trails.getParents(Arrays.asList(PROJECT)).toString());
+    }
+
+    @Test
+    public void sameArtifactAtTheSameDepthThroughDifferentPaths() {
+        DependencyTrails trails = new DependencyTrails();
+
+        List<String> first = trails.getParents(trail("org.example:a:jar:1.0", "org.example:shared:jar:1.0",
+                "org.example:first:jar:1.0"));
+        List<String> second = trails.getParents(trail("org.example:b:jar:1.0", "org.example:shared:jar:1.0",
+                "org.example:second:jar:1.0"));
+
+        assertEquals("[org.example:a, org.example:shared]", first.toString());
+        assertEquals("[org.example:b, org.example:shared]", second.toString());
+    }
+
+    @Test
+    public void samePathsShareTheirChain() {
+        DependencyTrails trails = new DependencyTrails();
+
+        List<String> first = trails.getParents(trail("org.example:a:jar:1.0", "org.example:b:jar:1.0",
+                "org.example:first:jar:1.0"));
+        List<String> second = trails.getParents(trail("org.example:a:jar:1.0", "org.example:b:jar:1.0",
+                "org.example:second:jar:1.0"));
+        List<String> shorter = trails.getParents(trail("org.example:a:jar:1.0", "org.example:b:jar:1.0"));
+        List<String> deeper = trails.getParents(trail("org.example:a:jar:1.0", "org.example:b:jar:1.0",
+                "org.example:first:jar:1.0", "org.example:third:jar:1.0"));
+
+        assertSame(first, second);
+        assertEquals("[org.example:a]", shorter.toString());
+        assertEquals("[org.example:a, org.example:b, org.example:first]", deeper.toString());
+        assertSame(first.get(1), deeper.get(1));
+    }
+}
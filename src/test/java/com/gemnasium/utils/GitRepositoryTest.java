@@ -0,0 +1,107 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GitRepositoryTest {
+
+    private static final String MASTER = "0123456789abcdef0123456789abcdef01234567";
+    private static final String FEATURE = "89abcdef0123456789abcdef0123456789abcdef";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), (content + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void readsTheBranchFromALooseRef() throws IOException {
+        File workTree = folder.newFolder("repo");
+        write(new File(workTree, ".git/HEAD"), "ref: refs/heads/master");
+        write(new File(workTree, ".git/refs/heads/master"), MASTER);
+        // Loose refs take precedence over packed ones
+        write(new File(workTree, ".git/packed-refs"), FEATURE + " refs/heads/master");
+
+        GitRepository repository = GitRepository.read(GitRepository.findWorkTree(new File(workTree, "module")));
+
+        assertEquals(workTree.getAbsoluteFile(), repository.getWorkTree());
+        assertEquals("master", repository.getBranch());
+        assertEquals(MASTER, repository.getRevision());
+    }
+
+    @Test
+    public void readsTheBranchFromPackedRefs() throws IOException {
+        File workTree = folder.newFolder("repo");
+        write(new File(workTree, ".git/HEAD"), "ref: refs/heads/feature/x");
+        write(new File(workTree, ".git/packed-refs"), "# pack-refs with: peeled fully-peeled sorted\n"
+                + MASTER + " refs/heads/master\n"
+                + FEATURE + " refs/heads/feature/x\n"
+                + MASTER + " refs/tags/v1.0\n"
+                + "^" + FEATURE);
+
+        GitRepository repository = GitRepository.read(workTree);
+
+        assertEquals("feature/x", repository.getBranch());
+        assertEquals(FEATURE, repository.getRevision());
+    }
+
+    @Test
+    public void readsADetachedHead() throws IOException {
+        File workTree = folder.newFolder("repo");
+        write(new File(workTree, ".git/HEAD"), FEATURE);
+
+        GitRepository repository = GitRepository.read(workTree);
+
+        assertNull(repository.getBranch());
+        assertEquals(FEATURE, repository.getRevision());
+    }
+
+    @Test
+    public void readsABranchWithoutCommit() throws IOException {
+        File workTree = folder.newFolder("repo");
+        write(new File(workTree, ".git/HEAD"), "ref: refs/heads/master");
+
+        GitRepository repository = GitRepository.read(workTree);
+
+        assertEquals("master", repository.getBranch());
+        assertNull(repository.getRevision());
+    }
+
+    @Test
+    public void readsALinkedWorktree() throws IOException {
+        File main = folder.newFolder("main");
+        write(new File(main, ".git/HEAD"), "ref: refs/heads/master");
+        write(new File(main, ".git/refs/heads/master"), MASTER);
+        write(new File(main, ".git/packed-refs"), FEATURE + " refs/heads/feature");
+        File gitDir = new File(main, ".git/worktrees/linked");
+        write(new File(gitDir, "HEAD"), "ref: refs/heads/feature");
+        write(new File(gitDir, "commondir"), "../..");
+        File workTree = folder.newFolder("linked");
+        write(new File(workTree, ".git"), "gitdir: " + gitDir.getAbsolutePath());
+
+        GitRepository repository = GitRepository.read(GitRepository.findWorkTree(workTree));
+
+        assertEquals("feature", repository.getBranch());
+        // Refs are shared with the main working tree
+        assertEquals(FEATURE, repository.getRevision());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAnInvalidGitFile() throws IOException {
+        File workTree = folder.newFolder("repo");
+        write(new File(workTree, ".git"), "not a git file");
+
+        GitRepository.read(workTree);
+    }
+}
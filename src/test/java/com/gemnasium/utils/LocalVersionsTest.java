@@ -0,0 +1,27 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LocalVersionsTest {
+
+    @Test
+    public void qualifiersOrderedBeforeTheReleaseArePreReleases() {
+        String[] preReleases = { "2.0-alpha-1", "2.0-alpha1", "2.0a1", "2.0-beta", "2.0b2", "2.0-M2", "2.0.M1",
+            "2.0-milestone-3", "2.0-RC1", "2.0.CR2", "2.0-rc", "2.0-SNAPSHOT", "2.0-preview", "17-ea", "2.0.dev3" };
+        for (String version : preReleases) {
+            assertTrue(version, LocalVersions.isPreRelease(version));
+        }
+    }
+
+    @Test
+    public void otherQualifiersAreReleases() {
+        String[] releases = { "2.0", "2.0.1", "2.0.Final", "2.0.RELEASE", "2.0-GA", "31.1-jre", "31.1-android",
+            "2.0-sp1", "1.0-jdk8", "2.0.v20180101", "2.0-b", "9.4.12.v20180830" };
+        for (String version : releases) {
+            assertFalse(version, LocalVersions.isPreRelease(version));
+        }
+    }
+}
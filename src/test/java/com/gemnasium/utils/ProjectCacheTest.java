@@ -0,0 +1,55 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ProjectCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ObjectNode newProject(String name) {
+        return ApiClient.MAPPER.createObjectNode().put("slug", "s").put("name", name);
+    }
+
+    @Test
+    public void credentialsAreCachedApart() throws Exception {
+        File cacheDir = folder.getRoot();
+        new ProjectCache(cacheDir, "https://api", "Basic a2V5MQ==", 60000).put("s", newProject("one"), "\"1\"");
+
+        ProjectCache.Entry entry = new ProjectCache(cacheDir, "https://api", "Basic a2V5MQ==", 60000).get("s");
+        assertEquals("one", entry.getProject().get("name").asText());
+        assertEquals("\"1\"", entry.getEtag());
+        assertNull(new ProjectCache(cacheDir, "https://api", "Basic a2V5Mg==", 60000).get("s"));
+    }
+
+    @Test
+    public void credentialsAreNotWritten() throws Exception {
+        File cacheDir = folder.getRoot();
+        new ProjectCache(cacheDir, "https://api", "Basic a2V5MQ==", 60000).put("s", newProject("one"), null);
+
+        File[] dirs = new File(cacheDir, "projects/https---api").listFiles();
+        assertEquals(1, dirs.length);
+        assertFalse(dirs[0].getName().contains("a2V5MQ"));
+    }
+
+    @Test
+    public void projectsAreRevalidatedWithoutTtl() throws Exception {
+        File cacheDir = folder.getRoot();
+        ProjectCache cache = new ProjectCache(cacheDir, "https://api", "Basic a2V5", 0);
+        cache.put("s", newProject("one"), "\"1\"");
+        assertFalse(cache.isFresh(cache.get("s")));
+
+        ProjectCache cacheWithTtl = new ProjectCache(cacheDir, "https://api", "Basic a2V5", 60000);
+        assertTrue(cacheWithTtl.isFresh(cacheWithTtl.get("s")));
+    }
+}
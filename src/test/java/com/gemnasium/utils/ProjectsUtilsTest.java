@@ -0,0 +1,89 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+/**
+ * The streamed dependency files must be byte-identical to the format built from a JSON tree.
+ */
+public class ProjectsUtilsTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final SyntheticProject project = new SyntheticProject(500, 6, 42);
+
+    // The dependency file content as it was built before it was streamed
+    private static String getTreeContent(ArrayNode jsonDependencies) throws IOException {
+        ObjectNode jsonNode = MAPPER.createObjectNode();
+        jsonNode.put("version", ProjectsUtils.DEPENDENCY_FILE_FORMAT_VERSION);
+        jsonNode.set("dependencies", jsonDependencies);
+        return Base64.getEncoder().encodeToString(MAPPER.writerWithDefaultPrettyPrinter().writeValueAsBytes(jsonNode));
+    }
+
+    private ArrayNode getJsonDependencies(ArtifactTable table) {
+        return ProjectsUtils.getJsonDependencies(project.getArtifacts(), project.getDirectDependencies(),
+                new DependencyTrails(), null, table);
+    }
+
+    @Test
+    public void streamedContentIsTheTreeEncoding() throws IOException {
+        ArrayNode jsonDependencies = getJsonDependencies(null);
+        // Non-ASCII values are encoded in UTF-8
+        jsonDependencies.addObject().put("groupId", "org.exämple").put("artifactId", "日本");
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ProjectsUtils.writeDependencyFileContent(jsonDependencies, os);
+
+        assertEquals(getTreeContent(jsonDependencies), new String(os.toByteArray(), StandardCharsets.US_ASCII));
+        assertEquals(getTreeContent(jsonDependencies), ProjectsUtils.getDependencyFileContent(jsonDependencies));
+    }
+
+    @Test
+    public void sharedNodesContentIsTheTreeEncoding() throws IOException {
+        ArtifactTable table = new ArtifactTable();
+        ArrayNode jsonDependencies = getJsonDependencies(table);
+        // The JSON kept with the shared nodes is written the second time
+        for (int i = 0; i < 2; i++) {
+            assertEquals(getTreeContent(jsonDependencies), ProjectsUtils.getDependencyFileContent(jsonDependencies));
+        }
+        assertEquals(getJsonDependencies(null), jsonDependencies);
+    }
+
+    @Test
+    public void emptyContentIsTheTreeEncoding() throws IOException {
+        ArrayNode jsonDependencies = MAPPER.createArrayNode();
+        assertEquals(getTreeContent(jsonDependencies), ProjectsUtils.getDependencyFileContent(jsonDependencies));
+    }
+
+    @Test
+    public void streamedRequestBodyIsTheTreeEncoding() throws IOException {
+        List<DependencyFile> files = new ArrayList<DependencyFile>();
+        files.add(new DependencyFile("gemnasium-maven-plugin.json", getJsonDependencies(null)));
+        files.add(new DependencyFile("mod-a/gemnasium-maven-plugin.json", getJsonDependencies(new ArtifactTable())));
+        files.add(new DependencyFile("mod-b/gemnasium-maven-plugin.json", MAPPER.createArrayNode()));
+
+        ArrayNode body = MAPPER.createArrayNode();
+        for (DependencyFile file : files) {
+            body.addObject().put("path", file.getPath()).put("content", getTreeContent(file.getJsonDependencies()));
+        }
+        byte[] expected = MAPPER.writeValueAsBytes(body);
+
+        for (int threads = 1; threads <= 4; threads++) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            ProjectsUtils.writeDependencyFiles(files, os, threads);
+            assertArrayEquals("Body written with " + threads + " threads", expected, os.toByteArray());
+        }
+    }
+}
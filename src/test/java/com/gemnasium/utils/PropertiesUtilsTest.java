@@ -0,0 +1,95 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PropertiesUtilsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Properties newProperties(String key, Object value) {
+        Properties properties = new Properties();
+        properties.put(key, value);
+        return properties;
+    }
+
+    @Test
+    public void concurrentUpdatesAreAllKept() throws Exception {
+        final File file = new File(folder.getRoot(), "src/main/resources/gemnasium.properties");
+        PropertiesUtils.update(file, newProperties("projectSlug", "slug"), null);
+        final int threads = 8;
+        final int updates = 20;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                final int thread = i;
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        start.await();
+                        for (int j = 0; j < updates; j++) {
+                            PropertiesUtils.update(file, newProperties("key" + thread, String.valueOf(j)), null);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Properties properties = PropertiesUtils.load(file);
+        assertEquals(threads + 1, properties.size());
+        assertEquals("slug", properties.getProperty("projectSlug"));
+        for (int i = 0; i < threads; i++) {
+            assertEquals(String.valueOf(updates - 1), properties.getProperty("key" + i));
+        }
+        // Temporary files are moved or deleted
+        assertEquals("[gemnasium.properties]", Arrays.toString(file.getParentFile().list()));
+    }
+
+    @Test
+    public void failedUpdatesLeaveTheFileIntact() throws IOException {
+        File file = folder.newFile("gemnasium.properties");
+        PropertiesUtils.update(file, newProperties("projectSlug", "slug"), "Gemnasium configuration");
+        byte[] content = Files.readAllBytes(file.toPath());
+
+        // Fails while the new file is written
+        try {
+            PropertiesUtils.update(file, newProperties("projectBranch", new Object()), "Gemnasium configuration");
+            fail("The update should fail");
+        } catch (ClassCastException e) {
+            // expected
+        }
+
+        assertTrue(Arrays.equals(content, Files.readAllBytes(file.toPath())));
+        assertEquals("[gemnasium.properties]", Arrays.toString(folder.getRoot().list()));
+        // The lock is released
+        PropertiesUtils.update(file, newProperties("projectBranch", "master"), "Gemnasium configuration");
+        assertEquals("master", PropertiesUtils.load(file).getProperty("projectBranch"));
+    }
+}
@@ -0,0 +1,95 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ReactorCountdownTest {
+
+    @Test
+    public void reachedByTheLastExecutionWhateverTheOrder() {
+        Map<String, Integer> expected = new LinkedHashMap<String, Integer>();
+        expected.put("g:a:jar:1", 1);
+        expected.put("g:b:jar:1", 2);
+        expected.put("g:c:jar:1", 1);
+        ReactorCountdown countdown = new ReactorCountdown("send-dependencies", expected);
+
+        assertFalse(countdown.executionDone("g:c:jar:1"));
+        assertFalse(countdown.executionDone("g:b:jar:1"));
+        assertFalse(countdown.executionDone("g:a:jar:1"));
+        assertTrue(countdown.executionDone("g:b:jar:1"));
+        assertEquals(4, countdown.getDone());
+        // Reached once only
+        assertFalse(countdown.executionDone("g:b:jar:1"));
+    }
+
+    @Test
+    public void endedActionRunsWhenTheLastModuleFails() {
+        Map<String, Integer> expected = new LinkedHashMap<String, Integer>();
+        expected.put("g:a:jar:1", 1);
+        expected.put("g:b:jar:1", 1);
+        expected.put("g:c:jar:1", 1);
+        ReactorCountdown countdown = new ReactorCountdown("send-dependencies", expected);
+        final AtomicInteger runs = new AtomicInteger();
+        countdown.setEndedAction(new Runnable() {
+            public void run() {
+                runs.incrementAndGet();
+            }
+        });
+
+        assertFalse(countdown.executionDone("g:a:jar:1"));
+        // Skipped by a resumed build, then failing before running the goal
+        countdown.projectEnded("g:b:jar:1");
+        assertEquals(0, runs.get());
+        countdown.projectEnded("g:c:jar:1");
+        assertEquals(1, runs.get());
+        // Reported once only
+        countdown.projectEnded("g:c:jar:1");
+        assertFalse(countdown.executionDone("g:c:jar:1"));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void endedActionNeedsAnExecution() {
+        Map<String, Integer> expected = new LinkedHashMap<String, Integer>();
+        expected.put("g:a:jar:1", 1);
+        ReactorCountdown countdown = new ReactorCountdown("send-dependencies", expected);
+        final AtomicInteger runs = new AtomicInteger();
+        countdown.setEndedAction(new Runnable() {
+            public void run() {
+                runs.incrementAndGet();
+            }
+        });
+
+        countdown.projectEnded("g:a:jar:1");
+
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void failedExecutionIsCountedOnce() {
+        Map<String, Integer> expected = new LinkedHashMap<String, Integer>();
+        expected.put("g:a:jar:1", 1);
+        expected.put("g:b:jar:1", 1);
+        ReactorCountdown countdown = new ReactorCountdown("send-dependencies", expected);
+        final AtomicInteger runs = new AtomicInteger();
+        countdown.setEndedAction(new Runnable() {
+            public void run() {
+                runs.incrementAndGet();
+            }
+        });
+
+        assertFalse(countdown.executionDone("g:a:jar:1"));
+        // The goal failed the project after counting down
+        assertTrue(countdown.executionDone("g:b:jar:1"));
+        countdown.projectEnded("g:b:jar:1");
+
+        assertEquals(0, runs.get());
+    }
+}
@@ -0,0 +1,54 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+    private final RetryPolicy policy = new RetryPolicy(3, 100, 1000);
+
+    @Test
+    public void backoffIsBoundedByExponentialCap() {
+        for (int retry = 0; retry < 8; retry++) {
+            long cap = Math.min(1000, 100L << retry);
+            for (int i = 0; i < 200; i++) {
+                long delay = policy.getDelay(retry, -1);
+                assertTrue("retry " + retry + " delay " + delay, delay >= 0 && delay <= cap);
+            }
+        }
+    }
+
+    @Test
+    public void retryAfterIsHonoredUpToMaxBackoff() {
+        assertEquals(500, policy.getDelay(0, 500));
+        assertEquals(0, policy.getDelay(2, 0));
+        assertEquals(1000, policy.getDelay(0, 60000));
+    }
+
+    @Test
+    public void idempotentCallsRetryTransientFailures() {
+        assertTrue(policy.isRetryable(new SocketTimeoutException("read timed out"), true));
+        assertTrue(policy.isRetryable(new ApiClient.ApiException(500, "error", -1), true));
+        assertTrue(policy.isRetryable(new ApiClient.ApiException(429, "throttled", -1), true));
+        assertFalse(policy.isRetryable(new ApiClient.ApiException(404, "not found", -1), true));
+        assertFalse(policy.isRetryable(new JsonParseException(null, "malformed"), true));
+        assertFalse(policy.isRetryable(new CircuitBreaker.OpenCircuitException("open"), true));
+    }
+
+    @Test
+    public void nonIdempotentCallsRetryOnlyUnprocessedRequests() {
+        assertTrue(policy.isRetryable(new ApiClient.ConnectException(new IOException("refused")), false));
+        assertTrue(policy.isRetryable(new ApiClient.ApiException(429, "throttled", -1), false));
+        assertTrue(policy.isRetryable(new ApiClient.ApiException(503, "unavailable", 1000), false));
+        assertFalse(policy.isRetryable(new ApiClient.ApiException(503, "unavailable", -1), false));
+        assertFalse(policy.isRetryable(new ApiClient.ApiException(500, "error", -1), false));
+        assertFalse(policy.isRetryable(new SocketTimeoutException("read timed out"), false));
+    }
+}
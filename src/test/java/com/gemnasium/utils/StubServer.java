@@ -0,0 +1,331 @@
+package com.gemnasium.utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local HTTP/1.1 stub of the Gemnasium API, replying with scripted responses and injecting faults:
+ * latency, dropped connections and error statuses. Connections are kept alive, and requests
+ * are recorded with the connection they came on.
+ */
+public class StubServer implements Closeable {
+
+    private final ServerSocket serverSocket;
+    private final ConcurrentLinkedQueue<Reply> replies = new ConcurrentLinkedQueue<Reply>();
+    private final List<Request> requests = Collections.synchronizedList(new ArrayList<Request>());
+    private final List<Socket> sockets = Collections.synchronizedList(new ArrayList<Socket>());
+    private final AtomicInteger connections = new AtomicInteger();
+    private volatile Reply defaultReply = Reply.json(200, "{}");
+
+    public StubServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(new Runnable() {
+            public void run() {
+                accept();
+            }
+        }, "stub-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * A scripted response.
+     */
+    public static class Reply {
+
+        private final int status;
+        private byte[] body;
+        private final Map<String, String> headers = new LinkedHashMap<String, String>();
+        private long delay;
+        private boolean disconnect;
+
+        private Reply(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        public static Reply json(int status, String body) {
+            return new Reply(status, body.getBytes(StandardCharsets.UTF_8)).header("Content-Type", "application/json");
+        }
+
+        /**
+         * @return a reply closing the connection once the request is read, without response
+         */
+        public static Reply disconnect() {
+            Reply reply = new Reply(0, new byte[0]);
+            reply.disconnect = true;
+            return reply;
+        }
+
+        public Reply header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        /**
+         * @return this reply, with its body gzipped
+         */
+        public Reply gzip() {
+            try {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                try (GZIPOutputStream gzip = new GZIPOutputStream(bos)) {
+                    gzip.write(body);
+                }
+                body = bos.toByteArray();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return header("Content-Encoding", "gzip");
+        }
+
+        /**
+         * @param delay Time to wait before responding, in ms.
+         * @return this reply
+         */
+        public Reply delay(long delay) {
+            this.delay = delay;
+            return this;
+        }
+    }
+
+    /**
+     * A recorded request, the body is decoded from the chunked and gzip encodings.
+     */
+    public static class Request {
+
+        private final String method;
+        private final String path;
+        private final Map<String, String> headers;
+        private final byte[] body;
+        private final int connection;
+
+        Request(String method, String path, Map<String, String> headers, byte[] body, int connection) {
+            this.method = method;
+            this.path = path;
+            this.headers = headers;
+            this.body = body;
+            this.connection = connection;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @param name The header name, lower case.
+         * @return the header value, null if missing
+         */
+        public String getHeader(String name) {
+            return headers.get(name);
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getBodyText() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return the number of the connection the request came on, starting at 1
+         */
+        public int getConnection() {
+            return connection;
+        }
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    public void enqueue(Reply reply) {
+        replies.add(reply);
+    }
+
+    /**
+     * @param reply The reply sent when no scripted reply is left.
+     */
+    public void setDefaultReply(Reply reply) {
+        defaultReply = reply;
+    }
+
+    public List<Request> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<Request>(requests);
+        }
+    }
+
+    /**
+     * @return the number of accepted connections
+     */
+    public int getConnections() {
+        return connections.get();
+    }
+
+    public void close() throws IOException {
+        serverSocket.close();
+        synchronized (sockets) {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            sockets.add(socket);
+            final int connection = connections.incrementAndGet();
+            Thread handler = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        serve(socket, connection);
+                    } catch (IOException e) {
+                        // The client closed the connection
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (IOException e) {
+                            // Ignored
+                        }
+                    }
+                }
+            }, "stub-connection-" + connection);
+            handler.setDaemon(true);
+            handler.start();
+        }
+    }
+
+    private void serve(Socket socket, int connection) throws IOException {
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+        while (true) {
+            String requestLine = readLine(in);
+            if (requestLine == null || requestLine.isEmpty()) {
+                return;
+            }
+            String[] parts = requestLine.split(" ");
+            Map<String, String> headers = new LinkedHashMap<String, String>();
+            String line;
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+            }
+            byte[] body = readBody(in, headers);
+            if ("gzip".equalsIgnoreCase(headers.get("content-encoding"))) {
+                body = readFully(new GZIPInputStream(new ByteArrayInputStream(body)));
+            }
+            requests.add(new Request(parts[0], parts[1], headers, body, connection));
+
+            Reply reply = replies.poll();
+            if (reply == null) {
+                reply = defaultReply;
+            }
+            if (reply.delay > 0) {
+                try {
+                    Thread.sleep(reply.delay);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            if (reply.disconnect) {
+                return;
+            }
+            StringBuilder head = new StringBuilder();
+            head.append("HTTP/1.1 ").append(reply.status).append(" Stub\r\n");
+            for (Map.Entry<String, String> header : reply.headers.entrySet()) {
+                head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+            head.append("Content-Length: ").append(reply.body.length).append("\r\n\r\n");
+            // The response is written at once, not to wait for the client delayed ACK
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            response.write(head.toString().getBytes(StandardCharsets.US_ASCII));
+            response.write(reply.body);
+            response.writeTo(out);
+            out.flush();
+        }
+    }
+
+    private static byte[] readBody(InputStream in, Map<String, String> headers) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+            while (true) {
+                String size = readLine(in);
+                int length = Integer.parseInt(size.split(";")[0].trim(), 16);
+                if (length == 0) {
+                    readLine(in);
+                    break;
+                }
+                copy(in, body, length);
+                readLine(in);
+            }
+        } else if (headers.containsKey("content-length")) {
+            copy(in, body, Integer.parseInt(headers.get("content-length")));
+        }
+        return body.toByteArray();
+    }
+
+    private static void copy(InputStream in, OutputStream out, int length) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (length > 0) {
+            int read = in.read(buffer, 0, Math.min(buffer.length, length));
+            if (read < 0) {
+                throw new IOException("Truncated body");
+            }
+            out.write(buffer, 0, read);
+            length -= read;
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int length = line.length();
+                return length > 0 && line.charAt(length - 1) == '\r' ? line.substring(0, length - 1)
+                        : line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+}
@@ -0,0 +1,75 @@
+package com.gemnasium.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.model.Dependency;
+
+/**
+ * Synthetic resolved dependencies of a project, as Maven gives them to the goals:
+ * artifacts with their dependency trail, and the direct dependencies of the project.
+ * Graphs are generated from a seed so that they are the same from one run to another.
+ */
+public class SyntheticProject {
+
+    private static final String[] SCOPES = { "compile", "runtime", "test", "provided" };
+
+    private final List<Artifact> artifacts;
+    private final List<Dependency> directDependencies;
+
+    /**
+     * @param count The number of artifacts.
+     * @param maxDepth The maximum length of the dependency trails, project excluded, at least 2.
+     * @param seed The seed of the graph.
+     */
+    public SyntheticProject(int count, int maxDepth, long seed) {
+        Random random = new Random(seed);
+        String project = "com.example:project:jar:1.0.0";
+        int directs = Math.max(1, Math.min(count, count / 20));
+        artifacts = new ArrayList<Artifact>(count);
+        directDependencies = new ArrayList<Dependency>(directs);
+        List<List<String>> trails = new ArrayList<List<String>>(count);
+        for (int i = 0; i < count; i++) {
+            String groupId = "org.example.group" + (i % 97);
+            String artifactId = "artifact-" + i;
+            String version = (1 + i % 7) + "." + (i % 13) + "." + (i % 3);
+            DefaultArtifact artifact = new DefaultArtifact(groupId, artifactId, version, SCOPES[i % SCOPES.length],
+                    "jar", i % 11 == 0 ? "tests" : null, new DefaultArtifactHandler("jar"));
+            artifact.setOptional(i % 17 == 0);
+
+            List<String> trail;
+            if (i < directs) {
+                trail = new ArrayList<String>(Collections.singletonList(project));
+                Dependency dependency = new Dependency();
+                dependency.setGroupId(groupId);
+                dependency.setArtifactId(artifactId);
+                dependency.setVersion(i % 5 == 0 ? "[" + version + ",)" : version);
+                directDependencies.add(dependency);
+            } else {
+                // Parents are picked among the artifacts not at the maximum depth yet
+                List<String> parentTrail;
+                do {
+                    parentTrail = trails.get(random.nextInt(i));
+                } while (parentTrail.size() > maxDepth);
+                trail = new ArrayList<String>(parentTrail);
+            }
+            trail.add(artifact.getId());
+            trails.add(trail);
+            artifact.setDependencyTrail(trail);
+            artifacts.add(artifact);
+        }
+    }
+
+    public List<Artifact> getArtifacts() {
+        return artifacts;
+    }
+
+    public List<Dependency> getDirectDependencies() {
+        return directDependencies;
+    }
+}
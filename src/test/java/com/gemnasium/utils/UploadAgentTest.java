@@ -0,0 +1,157 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UploadAgentTest {
+
+    private static final String AGENT_AUTHORIZATION = "Basic YWdlbnQta2V5";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StubServer server;
+    private File cacheDir;
+    private UploadSpool spool;
+    private UploadAgent agent;
+    private String address;
+
+    @Before
+    public void startAgent() throws IOException {
+        server = new StubServer();
+        server.setDefaultReply(StubServer.Reply.json(201, "{\"commit_sha\":\"abc\"}"));
+        cacheDir = folder.newFolder("cache");
+        spool = new UploadSpool(new File(cacheDir, "spool"));
+        ApiClient client = new ApiClient(server.getUrl(), AGENT_AUTHORIZATION, 2000, 2000, false,
+                new RetryPolicy(0, 1, 10), new CircuitBreaker(0, 0), new SystemStreamLog());
+        agent = new UploadAgent(0, 50, 2, server.getUrl(), client, spool, cacheDir, new SystemStreamLog());
+        address = "127.0.0.1:" + agent.start();
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        server.close();
+    }
+
+    private ObjectNode newPayload(String apiBaseUrl, String artifactId) {
+        ObjectNode payload = ApiClient.MAPPER.createObjectNode();
+        payload.put("apiBaseUrl", apiBaseUrl);
+        payload.put("projectSlug", "s");
+        payload.put("branch", "master");
+        ObjectNode file = payload.putArray("files").addObject();
+        file.put("path", "gemnasium-maven-plugin.json");
+        file.putArray("dependencies").addObject().put("groupId", "g").put("artifactId", artifactId);
+        return payload;
+    }
+
+    private int getPort() {
+        return Integer.parseInt(address.substring(address.indexOf(':') + 1));
+    }
+
+    @Test
+    public void tokenFileIsOnlyReadableByTheUser() throws Exception {
+        Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        File tokenFile = UploadAgent.getTokenFile(cacheDir, getPort());
+
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile.toPath())));
+        agent.stop();
+        assertFalse(tokenFile.exists());
+    }
+
+    @Test
+    public void uploadsWithTheAgentCredentials() throws Exception {
+        assertEquals(UploadAgent.QUEUED, UploadAgent.send(address, cacheDir, newPayload(server.getUrl(), "a"), 2000));
+        agent.stop();
+
+        List<StubServer.Request> requests = server.getRequests();
+        assertEquals(1, requests.size());
+        assertEquals("/projects/s/dependency_files", requests.get(0).getPath());
+        assertEquals(AGENT_AUTHORIZATION, requests.get(0).getHeader("authorization"));
+        assertEquals("master", requests.get(0).getHeader("x-gms-branch"));
+    }
+
+    @Test
+    public void dropsUploadedFiles() throws Exception {
+        UploadAgent.send(address, cacheDir, newPayload(server.getUrl(), "a"), 2000);
+        Thread.sleep(300);
+        assertEquals(UploadAgent.DUPLICATE,
+                UploadAgent.send(address, cacheDir, newPayload(server.getUrl(), "a"), 2000));
+        agent.stop();
+
+        assertEquals(1, server.getRequests().size());
+    }
+
+    @Test
+    public void rejectsWrongTokens() throws Exception {
+        File otherDir = folder.newFolder("other");
+        Files.write(UploadAgent.getTokenFile(otherDir, getPort()).toPath(), "guess".getBytes(StandardCharsets.UTF_8));
+        try {
+            UploadAgent.send(address, otherDir, newPayload(server.getUrl(), "a"), 2000);
+            fail("The payload should be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("invalid token"));
+        }
+        try {
+            UploadAgent.send(address, folder.newFolder("none"), newPayload(server.getUrl(), "a"), 2000);
+            fail("The payload can't be sent without token");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("No agent token"));
+        }
+        agent.stop();
+        assertEquals(0, server.getRequests().size());
+    }
+
+    @Test
+    public void rejectsOtherApis() throws Exception {
+        try {
+            UploadAgent.send(address, cacheDir, newPayload("https://elsewhere", "a"), 2000);
+            fail("The payload should be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("only sends to"));
+        }
+        agent.stop();
+    }
+
+    @Test
+    public void spoolsFailedBatches() throws Exception {
+        server.setDefaultReply(StubServer.Reply.json(500, "{}"));
+        UploadAgent.send(address, cacheDir, newPayload(server.getUrl(), "a"), 2000);
+        agent.stop();
+
+        UploadSpool.Drain drain = spool.drain();
+        try {
+            List<UploadSpool.Entry> entries = drain.getEntries();
+            assertEquals(1, entries.size());
+            UploadSpool.Entry entry = entries.get(0);
+            assertEquals(server.getUrl(), entry.getApiBaseUrl());
+            assertEquals("/projects/s/dependency_files", entry.getPath());
+            assertEquals("master", entry.getBranch());
+            assertNull(entry.getRevision());
+            JsonNode body = ApiClient.MAPPER.readTree(entry.getBody());
+            assertEquals("gemnasium-maven-plugin.json", body.get(0).get("path").asText());
+        } finally {
+            drain.close();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UploadCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void modulesSharingAProjectAreCachedApart() throws Exception {
+        File cacheDir = folder.getRoot();
+        List<DependencyFile> filesA = newFiles("commons-lang");
+        List<DependencyFile> filesB = newFiles("guava");
+        new UploadCache(cacheDir, "https://api", "slug", "master", "g:mod-a").store(UploadCache.fingerprint(filesA),
+                "sha-a", filesA);
+        new UploadCache(cacheDir, "https://api", "slug", "master", "g:mod-b").store(UploadCache.fingerprint(filesB),
+                "sha-b", filesB);
+
+        UploadCache cacheA = new UploadCache(cacheDir, "https://api", "slug", "master", "g:mod-a");
+        assertEquals("sha-a", cacheA.getCommitSha(UploadCache.fingerprint(filesA)));
+        assertEquals("commons-lang",
+                cacheA.getLastSnapshot().get("gemnasium-maven-plugin.json").get(0).get("artifactId").asText());
+        assertEquals("sha-b", new UploadCache(cacheDir, "https://api", "slug", "master", "g:mod-b")
+                .getCommitSha(UploadCache.fingerprint(filesB)));
+    }
+
+    @Test
+    public void apisAreCachedApart() throws Exception {
+        File cacheDir = folder.getRoot();
+        List<DependencyFile> files = newFiles("commons-lang");
+        new UploadCache(cacheDir, "https://api", "slug", null, "g:mod-a").store(UploadCache.fingerprint(files),
+                "sha", files);
+
+        UploadCache other = new UploadCache(cacheDir, "https://other-api", "slug", null, "g:mod-a");
+        assertNull(other.getCommitSha(UploadCache.fingerprint(files)));
+        assertNull(other.getLastSnapshot());
+    }
+
+    private static List<DependencyFile> newFiles(String artifactId) {
+        ArrayNode dependencies = ApiClient.MAPPER.createArrayNode();
+        dependencies.addObject().put("groupId", "g").put("artifactId", artifactId).put("version", "1");
+        return Collections.singletonList(new DependencyFile("gemnasium-maven-plugin.json", dependencies));
+    }
+}
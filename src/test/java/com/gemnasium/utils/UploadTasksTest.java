@@ -0,0 +1,105 @@
+package com.gemnasium.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.junit.Test;
+
+public class UploadTasksTest {
+
+    // Records the warnings and errors
+    private static class RecordingLog extends SystemStreamLog {
+
+        private final List<String> warnings = new ArrayList<String>();
+        private final List<String> errors = new ArrayList<String>();
+
+        @Override
+        public void warn(CharSequence content) {
+            warnings.add(content.toString());
+        }
+
+        @Override
+        public void error(CharSequence content) {
+            errors.add(content.toString());
+        }
+    }
+
+    private static Callable<Void> newUpload(final CountDownLatch start, final AtomicBoolean done,
+            final String failure) {
+        return new Callable<Void>() {
+            public Void call() throws Exception {
+                start.await();
+                done.set(true);
+                if (failure != null) {
+                    throw new IOException(failure);
+                }
+                return null;
+            }
+        };
+    }
+
+    @Test
+    public void awaitsAllUploadsAndReportsFailures() throws Exception {
+        UploadTasks tasks = new UploadTasks(2);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean first = new AtomicBoolean();
+        AtomicBoolean second = new AtomicBoolean();
+        tasks.submit("s (mod-a)", newUpload(start, first, null));
+        tasks.submit("s (mod-b)", newUpload(start, second, "Connection refused"));
+        start.countDown();
+
+        Map<String, Throwable> failures = tasks.awaitAll();
+
+        assertTrue(first.get());
+        assertTrue(second.get());
+        assertEquals(1, failures.size());
+        assertEquals("Connection refused", failures.get("s (mod-b)").getMessage());
+        // Joined uploads aren't awaited twice
+        assertTrue(tasks.awaitAll().isEmpty());
+    }
+
+    @Test
+    public void awaitsTheRemainingUploadsAtTheEndOfTheBuild() throws Exception {
+        @SuppressWarnings("deprecation")
+        MavenSession session = new MavenSession(null, new DefaultMavenExecutionRequest(),
+                new DefaultMavenExecutionResult(), new ArrayList<MavenProject>());
+        RecordingLog log = new RecordingLog();
+        UploadTasks tasks = new UploadTasks(1);
+        tasks.awaitOnSessionEnd(session, log);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean done = new AtomicBoolean();
+        tasks.submit("s (mod-a)", newUpload(start, done, "Connection refused"));
+
+        // The upload is released once the end of the build is reported
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                start.countDown();
+            }
+        }.start();
+        session.getRequest().getExecutionListener().sessionEnded(null);
+
+        assertTrue(done.get());
+        assertEquals(1, log.warnings.size());
+        assertTrue(log.warnings.get(0).contains("[s (mod-a)]"));
+        assertEquals("[Upload failed for s (mod-a): Connection refused]", log.errors.toString());
+    }
+}